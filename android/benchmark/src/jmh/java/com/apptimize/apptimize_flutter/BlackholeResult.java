@@ -0,0 +1,25 @@
+package com.apptimize.apptimize_flutter;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.flutter.plugin.common.MethodChannel.Result;
+
+/** A `Result` which hands whatever the plugin replies to a JMH `Blackhole`. */
+class BlackholeResult implements Result {
+  Blackhole blackhole;
+
+  @Override
+  public void success(Object result) {
+    blackhole.consume(result);
+  }
+
+  @Override
+  public void error(String errorCode, String errorMessage, Object errorDetails) {
+    blackhole.consume(errorCode);
+  }
+
+  @Override
+  public void notImplemented() {
+    blackhole.consume(this);
+  }
+}
@@ -0,0 +1,103 @@
+package com.apptimize.apptimize_flutter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.flutter.plugin.common.MethodCall;
+
+/** Measures declaring dynamic variables and reading them by name and by handle. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DynamicVariableBenchmark {
+  private static final String[] TYPES = { "string", "integer", "double", "bool", "array.string", "dictionary.integer" };
+
+  @Param({ "10", "100", "1000" })
+  public int declaredVariables;
+
+  private FakeEngine engine;
+  private MethodCall[] declareCalls;
+  private MethodCall[] getByNameCalls;
+  private MethodCall[] getByHandleCalls;
+  private int next = 0;
+  private final BlackholeResult result = new BlackholeResult();
+
+  @Setup
+  public void setUp(Blackhole blackhole) {
+    engine = new FakeEngine().attach();
+    result.blackhole = blackhole;
+
+    declareCalls = new MethodCall[declaredVariables];
+    getByNameCalls = new MethodCall[declaredVariables];
+    getByHandleCalls = new MethodCall[declaredVariables];
+    for (int i = 0; i < declaredVariables; i++) {
+      String name = "variable" + i;
+      String type = TYPES[i % TYPES.length];
+
+      HashMap<String, Object> declareArguments = MethodCallBenchmark.arguments("name", name, "type", type, "defaultValue", defaultValueOf(type), "returnHandle", true);
+      declareCalls[i] = new MethodCall("declareDynamicVariable", declareArguments);
+      Object handle = engine.call("declareDynamicVariable", declareArguments);
+
+      getByNameCalls[i] = new MethodCall("getDynamicVariableValue", MethodCallBenchmark.arguments("name", name, "type", type));
+      getByHandleCalls[i] = new MethodCall("getDynamicVariableValue", MethodCallBenchmark.arguments("handle", handle));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    engine.detach();
+  }
+
+  @Benchmark
+  public void declareDynamicVariable() {
+    engine.plugin.onMethodCall(declareCalls[nextIndex()], result);
+  }
+
+  @Benchmark
+  public void getDynamicVariableValueByName() {
+    engine.plugin.onMethodCall(getByNameCalls[nextIndex()], result);
+  }
+
+  @Benchmark
+  public void getDynamicVariableValueByHandle() {
+    engine.plugin.onMethodCall(getByHandleCalls[nextIndex()], result);
+  }
+
+  private int nextIndex() {
+    int index = next;
+    next = index + 1 < declaredVariables ? index + 1 : 0;
+    return index;
+  }
+
+  private static Object defaultValueOf(String type) {
+    switch (type) {
+      case "string":
+        return "default";
+      case "integer":
+        return 42;
+      case "double":
+        return 4.2;
+      case "bool":
+        return true;
+      case "array.string":
+        return Arrays.asList("a", "b", "c");
+      default:
+        HashMap<String, Integer> dictionary = new HashMap<String, Integer>();
+        dictionary.put("a", 1);
+        dictionary.put("b", 2);
+        return dictionary;
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.apptimize.apptimize_flutter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import io.flutter.plugin.common.StandardMessageCodec;
+
+/** Compares encoding list and dictionary variable values as boxed elements and as typed data. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DynamicVariableEncodingBenchmark {
+  @Param({ "array.integer", "array.double", "array.bool", "dictionary.integer" })
+  public String type;
+
+  @Param({ "10", "100", "1000" })
+  public int size;
+
+  private int typeTag;
+  private Object value;
+
+  @Setup
+  public void setUp() {
+    typeTag = DynamicVariableRegistry.typeTagOf(type);
+
+    ArrayList<Object> list = new ArrayList<Object>(size);
+    HashMap<String, Object> dictionary = new HashMap<String, Object>();
+    for (int i = 0; i < size; i++) {
+      Object element = type.equals("array.double") ? (Object) (i * 0.5) : type.equals("array.bool") ? (Object) (i % 3 == 0) : (Object) i;
+      list.add(element);
+      dictionary.put("key" + i, element);
+    }
+    value = type.startsWith("dictionary.") ? dictionary : list;
+  }
+
+  @Benchmark
+  public Object boxed() {
+    return StandardMessageCodec.INSTANCE.encodeMessage(value);
+  }
+
+  /// Includes converting the value to typed data, as each read does.
+  @Benchmark
+  public Object typed() {
+    return StandardMessageCodec.INSTANCE.encodeMessage(DynamicVariableRegistry.encode(typeTag, value));
+  }
+}
@@ -0,0 +1,70 @@
+package com.apptimize.apptimize_flutter;
+
+import com.apptimize.Apptimize;
+import com.apptimize.ApptimizeTestInfo;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures delivering SDK listener callbacks to several engines, from the listener through
+ * encoding to the messenger of each engine listening to the event.
+ *
+ * The stubbed main thread handler drains events as soon as they are dispatched, so each callback
+ * is delivered in its own message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EventFanOutBenchmark {
+  @Param({ "1", "2", "4", "8" })
+  public int engines;
+
+  private final ArrayList<FakeEngine> attachedEngines = new ArrayList<FakeEngine>();
+  private ApptimizeTestInfo testInfo;
+
+  @Setup
+  public void setUp() {
+    testInfo = new FakeTestInfo(1, 101, 1);
+    for (int i = 0; i < engines; i++) {
+      FakeEngine engine = new FakeEngine().attach();
+      engine.call("setEventSubscribed", MethodCallBenchmark.arguments("event", "ApptimizeEnrolledInExperiment", "subscribed", true));
+      engine.call("setEventSubscribed", MethodCallBenchmark.arguments("event", "ApptimizeTestsProcessed", "subscribed", true));
+      attachedEngines.add(engine);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    for (FakeEngine engine : attachedEngines) {
+      engine.detach();
+    }
+    attachedEngines.clear();
+  }
+
+  @Benchmark
+  public void enrolledInTest() {
+    Apptimize.fireEnrolledInTest(testInfo);
+  }
+
+  /// No engine listens to unenrollments, so the event is skipped before its test info is serialized.
+  @Benchmark
+  public void unsubscribedUnenrolledInTest() {
+    Apptimize.fireUnenrolledInTest(testInfo, Apptimize.UnenrollmentReason.OTHER);
+  }
+
+  @Benchmark
+  public void experimentsProcessed() {
+    Apptimize.fireExperimentsProcessed();
+  }
+}
@@ -0,0 +1,91 @@
+package com.apptimize.apptimize_flutter;
+
+import android.content.Context;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel.Result;
+
+/**
+ * Stands in for a Flutter engine with a plugin instance attached to it. Messages sent to Dart are
+ * counted and discarded, and messages from Dart can be delivered to the plugin's channels.
+ */
+class FakeEngine implements BinaryMessenger {
+  final ApptimizeFlutterPlugin plugin = new ApptimizeFlutterPlugin();
+  final FlutterPlugin.FlutterPluginBinding binding = new FlutterPlugin.FlutterPluginBinding(new Context(), this);
+
+  private final HashMap<String, BinaryMessageHandler> handlers = new HashMap<String, BinaryMessageHandler>();
+
+  long sentMessages = 0;
+  long sentBytes = 0;
+
+  FakeEngine attach() {
+    plugin.onAttachedToEngine(binding);
+    return this;
+  }
+
+  void detach() {
+    plugin.onDetachedFromEngine(binding);
+  }
+
+  /// Calls `method` on the plugin as Dart would and returns the value it replied with.
+  Object call(String method, Object arguments) {
+    ReplyResult result = new ReplyResult();
+    plugin.onMethodCall(new MethodCall(method, arguments), result);
+    if (result.errorCode != null) {
+      throw new IllegalStateException(method + " failed with " + result.errorCode);
+    }
+    return result.value;
+  }
+
+  /// Delivers `message` to the handler of `channel` as Dart would.
+  void receive(String channel, ByteBuffer message, BinaryReply reply) {
+    handlers.get(channel).onMessage(message, reply);
+  }
+
+  @Override
+  public void send(String channel, ByteBuffer message) {
+    sentMessages++;
+    // Like Flutter's messenger, the message is everything before the buffer's position.
+    sentBytes += message.position();
+  }
+
+  @Override
+  public void send(String channel, ByteBuffer message, BinaryReply callback) {
+    send(channel, message);
+  }
+
+  @Override
+  public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+    if (handler != null) {
+      handlers.put(channel, handler);
+    } else {
+      handlers.remove(channel);
+    }
+  }
+
+  /// A `Result` remembering what the plugin replied.
+  static final class ReplyResult implements Result {
+    Object value;
+    String errorCode;
+
+    @Override
+    public void success(Object result) {
+      value = result;
+    }
+
+    @Override
+    public void error(String errorCode, String errorMessage, Object errorDetails) {
+      this.errorCode = errorCode;
+    }
+
+    @Override
+    public void notImplemented() {
+      errorCode = "NOT_IMPLEMENTED";
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package com.apptimize.apptimize_flutter;
+
+import com.apptimize.ApptimizeTestInfo;
+import com.apptimize.ApptimizeTestType;
+
+import java.util.Date;
+
+/** A fixed `ApptimizeTestInfo` resembling one the SDK reports for a code block test. */
+class FakeTestInfo implements ApptimizeTestInfo {
+  private final long testId;
+  private final long variantId;
+  private final long cycle;
+
+  FakeTestInfo(long testId, long variantId, long cycle) {
+    this.testId = testId;
+    this.variantId = variantId;
+    this.cycle = cycle;
+  }
+
+  @Override public String getTestName() { return "Test " + testId; }
+  @Override public String getEnrolledVariantName() { return "Variant " + variantId; }
+  @Override public Long getTestId() { return testId; }
+  @Override public Long getEnrolledVariantId() { return variantId; }
+  @Override public Date getTestStartedDate() { return new Date(1600000000000L + testId * 86400000L); }
+  @Override public Date getTestEnrolledDate() { return new Date(1600000000000L + testId * 86400000L + 3600000L); }
+  @Override public Long getCycle() { return cycle; }
+  @Override public Long getCurrentPhase() { return 1L; }
+  @Override public Long getParticipationPhase() { return 1L; }
+  @Override public boolean userHasParticipated() { return true; }
+  @Override public String getCustomerUserId() { return "customer-user"; }
+  @Override public String getAnonymousUserId() { return "anonymous-user"; }
+  @Override public ApptimizeTestType getApptimizeTestType() { return ApptimizeTestType.CODE_BLOCK; }
+}
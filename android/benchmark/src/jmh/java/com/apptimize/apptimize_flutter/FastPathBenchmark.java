@@ -0,0 +1,95 @@
+package com.apptimize.apptimize_flutter;
+
+import com.apptimize.Apptimize;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+/**
+ * Compares the hot reads through the method channel, including decoding the call and encoding the
+ * reply, with the same reads through the fast path channel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FastPathBenchmark {
+  @Param({ "isFeatureFlagOn", "getUserAttribute", "getDynamicVariableValue" })
+  public String read;
+
+  private FakeEngine engine;
+  private ByteBuffer methodChannelRequest;
+  private ByteBuffer fastPathRequest;
+  private BinaryMessenger.BinaryReply reply;
+
+  @Setup
+  public void setUp(final Blackhole blackhole) {
+    Apptimize.setFeatureFlagOn("flag", true);
+    Apptimize.setUserAttribute("attribute", "value");
+
+    engine = new FakeEngine().attach();
+    int variableHandle = (Integer) engine.call("declareDynamicVariable", MethodCallBenchmark.arguments("name", "variable", "type", "string", "defaultValue", "default", "returnHandle", true));
+
+    MethodCall call;
+    fastPathRequest = ByteBuffer.allocateDirect(6).order(ByteOrder.LITTLE_ENDIAN);
+    switch (read) {
+      case "isFeatureFlagOn":
+        call = new MethodCall(read, MethodCallBenchmark.arguments("featureFlagName", "flag"));
+        fastPathRequest.put(FastPathChannel.OP_IS_FEATURE_FLAG_ON);
+        fastPathRequest.putInt((Integer) engine.call("registerFastPathName", MethodCallBenchmark.arguments("name", "flag")));
+        break;
+      case "getUserAttribute":
+        call = new MethodCall(read, MethodCallBenchmark.arguments("type", "string", "attributeName", "attribute"));
+        fastPathRequest.put(FastPathChannel.OP_GET_USER_ATTRIBUTE);
+        fastPathRequest.put(FastPathChannel.ATTRIBUTE_STRING);
+        fastPathRequest.putInt((Integer) engine.call("registerFastPathName", MethodCallBenchmark.arguments("name", "attribute")));
+        break;
+      default:
+        call = new MethodCall(read, MethodCallBenchmark.arguments("handle", variableHandle));
+        fastPathRequest.put(FastPathChannel.OP_GET_DYNAMIC_VARIABLE_VALUE);
+        fastPathRequest.putInt(variableHandle);
+        break;
+    }
+    fastPathRequest.flip();
+
+    methodChannelRequest = StandardMethodCodec.INSTANCE.encodeMethodCall(call);
+    methodChannelRequest.flip();
+
+    reply = new BinaryMessenger.BinaryReply() {
+      @Override
+      public void reply(ByteBuffer reply) {
+        blackhole.consume(reply);
+      }
+    };
+  }
+
+  @TearDown
+  public void tearDown() {
+    engine.detach();
+  }
+
+  @Benchmark
+  public void methodChannel() {
+    engine.receive(EngineConnection.CHANNEL_NAME, methodChannelRequest.duplicate(), reply);
+  }
+
+  @Benchmark
+  public void fastPath() {
+    engine.receive(FastPathChannel.CHANNEL_NAME, fastPathRequest.duplicate(), reply);
+  }
+}
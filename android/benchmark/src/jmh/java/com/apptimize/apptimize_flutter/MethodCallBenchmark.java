@@ -0,0 +1,115 @@
+package com.apptimize.apptimize_flutter;
+
+import com.apptimize.Apptimize;
+import com.apptimize.ApptimizeTestInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.flutter.plugin.common.MethodCall;
+
+/** Measures `onMethodCall` for a representative call of each kind of method. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MethodCallBenchmark {
+  @Param({
+      "getCustomerUserId",
+      "getMetadataState",
+      "isFeatureFlagOn",
+      "areFeatureFlagsOn",
+      "getDynamicVariableValue",
+      "getUserAttribute",
+      "setUserAttribute",
+      "track",
+      "runTest",
+      "getApptimizeTestInfo",
+      "getVariants",
+      "unknownMethod"
+  })
+  public String method;
+
+  private FakeEngine engine;
+  private MethodCall call;
+  private final BlackholeResult result = new BlackholeResult();
+
+  @Setup
+  public void setUp(Blackhole blackhole) {
+    ArrayList<ApptimizeTestInfo> tests = new ArrayList<ApptimizeTestInfo>();
+    HashMap<Long, java.util.Map<String, Object>> variants = new HashMap<Long, java.util.Map<String, Object>>();
+    for (int i = 0; i < 20; i++) {
+      tests.add(new FakeTestInfo(i, 100 + i, 1));
+      HashMap<String, Object> variant = new HashMap<String, Object>();
+      variant.put("experimentId", (long) i);
+      variant.put("experimentName", "Test " + i);
+      variant.put("variantId", 100L + i);
+      variant.put("variantName", "Variant " + i);
+      variants.put(100L + i, variant);
+    }
+    Apptimize.setTestInfo(tests);
+    Apptimize.setVariants(variants);
+    Apptimize.setFeatureFlagOn("flag3", true);
+    Apptimize.setUserAttribute("attribute", "value");
+
+    engine = new FakeEngine().attach();
+    engine.call("declareDynamicVariable", arguments("name", "variable", "type", "string", "defaultValue", "default"));
+    result.blackhole = blackhole;
+
+    call = new MethodCall(method, argumentsFor(method));
+  }
+
+  @TearDown
+  public void tearDown() {
+    engine.detach();
+  }
+
+  @Benchmark
+  public void onMethodCall() {
+    engine.plugin.onMethodCall(call, result);
+  }
+
+  private static Object argumentsFor(String method) {
+    switch (method) {
+      case "isFeatureFlagOn":
+        return arguments("featureFlagName", "flag3");
+      case "areFeatureFlagsOn":
+        return arguments("featureFlagNames", Arrays.asList("flag0", "flag1", "flag2", "flag3", "flag4", "flag5", "flag6", "flag7"));
+      case "getDynamicVariableValue":
+        return arguments("name", "variable", "type", "string");
+      case "getUserAttribute":
+        return arguments("type", "string", "attributeName", "attribute");
+      case "setUserAttribute":
+        return arguments("type", "string", "attributeName", "attribute", "attributeValue", "value");
+      case "track":
+        return arguments("eventName", "event");
+      case "runTest":
+        return arguments("testName", "Test 1", "codeBlocks", Arrays.asList("variation1", "variation2"));
+      case "getApptimizeTestInfo":
+      case "getVariants":
+        return arguments("format", "compact");
+      default:
+        return null;
+    }
+  }
+
+  static HashMap<String, Object> arguments(Object... keysAndValues) {
+    HashMap<String, Object> arguments = new HashMap<String, Object>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      arguments.put((String) keysAndValues[i], keysAndValues[i + 1]);
+    }
+    return arguments;
+  }
+}
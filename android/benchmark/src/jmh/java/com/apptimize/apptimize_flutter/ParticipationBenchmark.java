@@ -0,0 +1,60 @@
+package com.apptimize.apptimize_flutter;
+
+import com.apptimize.Apptimize;
+import com.apptimize.ApptimizeTestInfo;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures a test participating over and over, as it does when run from list items or animations,
+ * under each participation policy. The same few tests keep participating, so every policy but
+ * `All` filters nearly all participations before their test info is serialized.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParticipationBenchmark {
+  private static final int TEST_COUNT = 8;
+
+  @Param({ "All", "First", "Windowed" })
+  public String policy;
+
+  private FakeEngine engine;
+  private final ApptimizeTestInfo[] tests = new ApptimizeTestInfo[TEST_COUNT];
+  private int next = 0;
+
+  @Setup
+  public void setUp() {
+    for (int i = 0; i < TEST_COUNT; i++) {
+      tests[i] = new FakeTestInfo(i, 100 + i, 1);
+    }
+
+    HashMap<String, Object> options = new HashMap<String, Object>();
+    options.put("participationPolicy", policy);
+    engine = new FakeEngine().attach();
+    engine.call("startApptimize", MethodCallBenchmark.arguments("appKey", "benchmark", "options", options));
+    engine.call("setEventSubscribed", MethodCallBenchmark.arguments("event", "ApptimizeParticipatedInExperiment", "subscribed", true));
+  }
+
+  @TearDown
+  public void tearDown() {
+    engine.detach();
+  }
+
+  @Benchmark
+  public void testRun() {
+    Apptimize.fireTestRun(tests[next], Apptimize.IsFirstTestRun.NO);
+    next = (next + 1) % TEST_COUNT;
+  }
+}
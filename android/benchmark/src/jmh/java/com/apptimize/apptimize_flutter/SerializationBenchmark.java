@@ -0,0 +1,46 @@
+package com.apptimize.apptimize_flutter;
+
+import com.apptimize.ApptimizeTestInfo;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Measures serializing test info for Dart and formatting its dates. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SerializationBenchmark {
+  private ApptimizeTestInfo testInfo;
+  private Date date;
+
+  @Setup
+  public void setUp() {
+    testInfo = new FakeTestInfo(1, 101, 1);
+    date = new Date(1600000000000L);
+  }
+
+  /// Serializes the same test info repeatedly, as events for an unchanged test do.
+  @Benchmark
+  public Object serializeApptimizeTestInfo() {
+    return ApptimizeFlutterPlugin.serializeApptimizeTestInfo(testInfo);
+  }
+
+  /// Serializes test info without the memoization, as for a test seen for the first time.
+  @Benchmark
+  public Object createSerializedApptimizeTestInfo() {
+    return ApptimizeFlutterPlugin.createSerializedApptimizeTestInfo(testInfo);
+  }
+
+  @Benchmark
+  public String toIso8601Date() {
+    return ApptimizeFlutterPlugin.toIso8601Date(date);
+  }
+}
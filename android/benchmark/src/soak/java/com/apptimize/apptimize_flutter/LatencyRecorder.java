@@ -0,0 +1,112 @@
+package com.apptimize.apptimize_flutter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Matches events received by each engine with the SDK callbacks which caused them, and records the
+ * time in between.
+ *
+ * Events of a kind reach an engine in the order their callbacks fired, so each received event is
+ * matched with the oldest unmatched callback of its kind. Events which only carry the latest state
+ * may be coalesced by the plugin, so receiving one matches every earlier callback of its kind, and
+ * its latency is measured from the oldest. Events the plugin drops are never matched; the events
+ * of that kind received later are then measured from an earlier callback, so their latencies are
+ * an upper bound.
+ */
+class LatencyRecorder {
+  private static final HashSet<String> COALESCED_EVENTS = new HashSet<String>(Arrays.asList(
+      "ApptimizeTestsProcessed",
+      "ApptimizeMetadataStateChanged"
+  ));
+
+  private final HashMap<String, ConcurrentLinkedQueue<Long>>[] pendingByEngine;
+  private long[] samples = new long[1024];
+  private int sampleCount = 0;
+  private long[] allSamples = new long[1024];
+  private int allSampleCount = 0;
+
+  @SuppressWarnings("unchecked")
+  LatencyRecorder(int engines) {
+    pendingByEngine = new HashMap[engines];
+    for (int i = 0; i < engines; i++) {
+      pendingByEngine[i] = new HashMap<String, ConcurrentLinkedQueue<Long>>();
+    }
+  }
+
+  /// Records that a callback causing `event` fired. Called on the SDK thread.
+  void fired(String event) {
+    long now = System.nanoTime();
+    for (HashMap<String, ConcurrentLinkedQueue<Long>> pending : pendingByEngine) {
+      pendingOf(pending, event).add(now);
+    }
+  }
+
+  /// Records that engine `engine` received `event` at `receivedNanos`. Called on the collector
+  /// thread.
+  void received(int engine, String event, long receivedNanos) {
+    ConcurrentLinkedQueue<Long> pending;
+    synchronized (pendingByEngine[engine]) {
+      pending = pendingByEngine[engine].get(event);
+    }
+    if (pending == null) return;
+
+    Long firedNanos = pollFiredBefore(pending, receivedNanos);
+    if (firedNanos == null) return;
+    if (COALESCED_EVENTS.contains(event)) {
+      while (pollFiredBefore(pending, receivedNanos) != null) {}
+    }
+    addSample(receivedNanos - firedNanos);
+  }
+
+  /// Returns the percentiles 50, 99 and 100 of the latencies recorded since the last call, in
+  /// nanoseconds, or null if there were none.
+  synchronized long[] takeIntervalPercentiles() {
+    long[] percentiles = percentiles(samples, sampleCount);
+    sampleCount = 0;
+    return percentiles;
+  }
+
+  /// Returns the percentiles 50, 99 and 100 of every latency recorded, in nanoseconds.
+  synchronized long[] totalPercentiles() {
+    return percentiles(allSamples, allSampleCount);
+  }
+
+  synchronized long totalCount() {
+    return allSampleCount;
+  }
+
+  private synchronized void addSample(long latency) {
+    if (sampleCount == samples.length) samples = Arrays.copyOf(samples, sampleCount * 2);
+    samples[sampleCount++] = latency;
+    if (allSampleCount == allSamples.length) allSamples = Arrays.copyOf(allSamples, allSampleCount * 2);
+    allSamples[allSampleCount++] = latency;
+  }
+
+  private static Long pollFiredBefore(ConcurrentLinkedQueue<Long> pending, long receivedNanos) {
+    Long firedNanos = pending.peek();
+    if (firedNanos == null || firedNanos > receivedNanos) return null;
+    return pending.poll();
+  }
+
+  private ConcurrentLinkedQueue<Long> pendingOf(HashMap<String, ConcurrentLinkedQueue<Long>> pending, String event) {
+    synchronized (pending) {
+      ConcurrentLinkedQueue<Long> queue = pending.get(event);
+      if (queue == null) {
+        queue = new ConcurrentLinkedQueue<Long>();
+        pending.put(event, queue);
+      }
+      return queue;
+    }
+  }
+
+  private static long[] percentiles(long[] values, int count) {
+    if (count == 0) return null;
+
+    long[] sorted = Arrays.copyOf(values, count);
+    Arrays.sort(sorted);
+    return new long[] { sorted[(count - 1) / 2], sorted[(int) ((count - 1) * 0.99)], sorted[count - 1] };
+  }
+}
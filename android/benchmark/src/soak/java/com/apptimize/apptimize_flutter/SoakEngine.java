@@ -0,0 +1,97 @@
+package com.apptimize.apptimize_flutter;
+
+import android.content.Context;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel.Result;
+
+/**
+ * Stands in for a Flutter engine during a soak run. Messages sent to Dart are timestamped and
+ * handed to the harness's collector, which decodes them off the main thread.
+ */
+class SoakEngine implements BinaryMessenger {
+  /// A message as it was sent to Dart.
+  static final class Delivery {
+    final SoakEngine engine;
+    final long receivedNanos;
+    final ByteBuffer message;
+
+    Delivery(SoakEngine engine, long receivedNanos, ByteBuffer message) {
+      this.engine = engine;
+      this.receivedNanos = receivedNanos;
+      this.message = message;
+    }
+  }
+
+  final int index;
+  final ApptimizeFlutterPlugin plugin = new ApptimizeFlutterPlugin();
+  final FlutterPlugin.FlutterPluginBinding binding = new FlutterPlugin.FlutterPluginBinding(new Context(), this);
+  final AtomicLong sentMessages = new AtomicLong();
+  final AtomicLong sentBytes = new AtomicLong();
+  private final ConcurrentLinkedQueue<Delivery> deliveries;
+
+  SoakEngine(int index, ConcurrentLinkedQueue<Delivery> deliveries) {
+    this.index = index;
+    this.deliveries = deliveries;
+  }
+
+  /// Attaches the plugin and listens to every event, as a Dart side listening to every stream.
+  /// Must be called on the main thread.
+  void attach() {
+    plugin.onAttachedToEngine(binding);
+    for (String event : EngineConnection.SUBSCRIBABLE_EVENTS) {
+      HashMap<String, Object> arguments = new HashMap<String, Object>();
+      arguments.put("event", event);
+      arguments.put("subscribed", true);
+      call("setEventSubscribed", arguments);
+    }
+  }
+
+  void detach() {
+    plugin.onDetachedFromEngine(binding);
+  }
+
+  /// Calls `method` on the plugin as Dart would and returns the value it replied with.
+  Object call(String method, Object arguments) {
+    final Object[] reply = new Object[1];
+    plugin.onMethodCall(new MethodCall(method, arguments), new Result() {
+      public void success(Object result) {
+        reply[0] = result;
+      }
+
+      public void error(String errorCode, String errorMessage, Object errorDetails) {
+        throw new IllegalStateException(errorCode + ": " + errorMessage);
+      }
+
+      public void notImplemented() {
+        throw new IllegalStateException("Not implemented");
+      }
+    });
+    return reply[0];
+  }
+
+  @Override
+  public void send(String channel, ByteBuffer message) {
+    long now = System.nanoTime();
+    ByteBuffer copy = message.duplicate();
+    copy.flip();
+    sentMessages.incrementAndGet();
+    sentBytes.addAndGet(copy.remaining());
+    deliveries.add(new Delivery(this, now, copy));
+  }
+
+  @Override
+  public void send(String channel, ByteBuffer message, BinaryReply callback) {
+    send(channel, message);
+  }
+
+  @Override
+  public void setMessageHandler(String channel, BinaryMessageHandler handler) {}
+}
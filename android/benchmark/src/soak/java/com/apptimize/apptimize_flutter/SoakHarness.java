@@ -0,0 +1,345 @@
+package com.apptimize.apptimize_flutter;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.apptimize.SimulatedSdk;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+/**
+ * Drives the plugin with a simulated Apptimize SDK firing thousands of callbacks per second into
+ * several engines, and reports event latency, queue growth and heap usage over time.
+ *
+ * The main thread is simulated by a looper thread, which handles the plugin's method calls and
+ * drains its event queue as on a device. The SDK fires its callbacks on its own thread: a steady
+ * stream of test runs, storms of unenrollments and enrollments whenever the customer user id
+ * changes, and periodic metadata refreshes.
+ *
+ * Options are given as `--name=value`:
+ *
+ *   --engines=4                  engines attached to the plugin
+ *   --rate=2000                  test runs per second
+ *   --userSwitchInterval=1000    milliseconds between customer user id changes, 0 for none
+ *   --metadataRefreshInterval=5000  milliseconds between metadata refreshes, 0 for none
+ *   --experiments=20             experiments the user is enrolled in
+ *   --variants=3                 variants per experiment
+ *   --variables=10               dynamic variables set by each variant
+ *   --variableCache=true         whether engines mirror dynamic variables
+ *   --duration=30                seconds to run
+ *   --reportInterval=1000        milliseconds between reports
+ */
+public class SoakHarness {
+  private static final Map<SimulatedSdk.Callback, String> EVENTS = new EnumMap<SimulatedSdk.Callback, String>(SimulatedSdk.Callback.class);
+  static {
+    EVENTS.put(SimulatedSdk.Callback.INITIALIZED, "ApptimizeInitialized");
+    EVENTS.put(SimulatedSdk.Callback.ENROLLED, "ApptimizeEnrolledInExperiment");
+    EVENTS.put(SimulatedSdk.Callback.UNENROLLED, "ApptimizeUnenrolledInExperiment");
+    EVENTS.put(SimulatedSdk.Callback.TEST_RUN, "ApptimizeParticipatedInExperiment");
+    EVENTS.put(SimulatedSdk.Callback.EXPERIMENTS_PROCESSED, "ApptimizeTestsProcessed");
+    EVENTS.put(SimulatedSdk.Callback.METADATA_STATE_CHANGED, "ApptimizeMetadataStateChanged");
+  }
+
+  private final Map<String, String> options;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final ConcurrentLinkedQueue<SoakEngine.Delivery> deliveries = new ConcurrentLinkedQueue<SoakEngine.Delivery>();
+  private final ArrayList<SoakEngine> engines = new ArrayList<SoakEngine>();
+  private final AtomicLong firedCallbacks = new AtomicLong();
+  private final AtomicLong receivedEvents = new AtomicLong();
+  private volatile boolean isRunning = true;
+  private LatencyRecorder latencies;
+
+  SoakHarness(Map<String, String> options) {
+    this.options = options;
+  }
+
+  public static void main(String[] args) throws Exception {
+    HashMap<String, String> options = new HashMap<String, String>();
+    for (String arg : args) {
+      if (!arg.startsWith("--") || !arg.contains("=")) throw new IllegalArgumentException("Expected --name=value: " + arg);
+      options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+    }
+    new SoakHarness(options).run();
+    System.exit(0);
+  }
+
+  void run() throws Exception {
+    int engineCount = intOption("engines", 4);
+    int rate = intOption("rate", 2000);
+    int userSwitchInterval = intOption("userSwitchInterval", 1000);
+    int metadataRefreshInterval = intOption("metadataRefreshInterval", 5000);
+    int experimentCount = intOption("experiments", 20);
+    int variantCount = intOption("variants", 3);
+    final int variableCount = intOption("variables", 10);
+    final boolean isVariableCacheEnabled = Boolean.parseBoolean(stringOption("variableCache", "true"));
+    int duration = intOption("duration", 30);
+    int reportInterval = intOption("reportInterval", 1000);
+
+    startMainThread();
+    latencies = new LatencyRecorder(engineCount);
+    startCollector();
+
+    for (int i = 0; i < engineCount; i++) {
+      engines.add(new SoakEngine(i, deliveries));
+    }
+    onMainThread(new Callable<Void>() {
+      public Void call() {
+        for (SoakEngine engine : engines) {
+          engine.attach();
+          for (int i = 0; i < variableCount; i++) {
+            HashMap<String, Object> arguments = new HashMap<String, Object>();
+            arguments.put("name", "variable" + i);
+            arguments.put("type", i % 2 == 0 ? "integer" : "string");
+            arguments.put("defaultValue", i % 2 == 0 ? (Object) 0 : (Object) "default");
+            arguments.put("returnHandle", true);
+            engine.call("declareDynamicVariable", arguments);
+          }
+          HashMap<String, Object> arguments = new HashMap<String, Object>();
+          arguments.put("enabled", isVariableCacheEnabled);
+          engine.call("setDynamicVariableCacheEnabled", arguments);
+        }
+        return null;
+      }
+    });
+
+    SimulatedSdk sdk = SimulatedSdk.install(experiments(experimentCount, variantCount, variableCount), new SimulatedSdk.Observer() {
+      public void onCallback(SimulatedSdk.Callback callback) {
+        firedCallbacks.incrementAndGet();
+        latencies.fired(EVENTS.get(callback));
+      }
+    });
+
+    System.out.println(String.format("Soak run: %d engines, %d test runs/s, user switch every %d ms, metadata refresh every %d ms, %d experiments x %d variants, %d variables, variable cache %s, %d s",
+        engineCount, rate, userSwitchInterval, metadataRefreshInterval, experimentCount, variantCount, variableCount, isVariableCacheEnabled ? "on" : "off", duration));
+    System.out.println(String.format("%7s %9s %9s %8s %9s %8s %8s %8s %7s %7s %8s %9s %7s",
+        "time_s", "fired/s", "events/s", "msgs/s", "kb/s", "p50_ms", "p99_ms", "max_ms", "queued", "looper", "dropped", "coalesced", "heap_mb"));
+
+    long start = System.nanoTime();
+    long end = start + duration * 1000000000L;
+    long nextReport = start + reportInterval * 1000000L;
+    long nextUserSwitch = userSwitchInterval > 0 ? start + userSwitchInterval * 1000000L : Long.MAX_VALUE;
+    long nextMetadataRefresh = metadataRefreshInterval > 0 ? start + metadataRefreshInterval * 1000000L : Long.MAX_VALUE;
+    long testRuns = 0;
+    int userSwitches = 0;
+    Report previous = new Report(start);
+    long peakQueued = 0;
+    long peakHeap = 0;
+
+    while (System.nanoTime() < end) {
+      long now = System.nanoTime();
+
+      long dueTestRuns = (now - start) * rate / 1000000000L;
+      if (dueTestRuns > testRuns) {
+        sdk.runTests((int) (dueTestRuns - testRuns));
+        testRuns = dueTestRuns;
+      }
+
+      if (now >= nextUserSwitch) {
+        final String userId = "user-" + (++userSwitches);
+        mainHandler.post(new Runnable() {
+          public void run() {
+            HashMap<String, Object> arguments = new HashMap<String, Object>();
+            arguments.put("customerUserId", userId);
+            engines.get(0).call("setCustomerUserId", arguments);
+          }
+        });
+        nextUserSwitch += userSwitchInterval * 1000000L;
+      }
+
+      if (now >= nextMetadataRefresh) {
+        sdk.refreshMetadata();
+        nextMetadataRefresh += metadataRefreshInterval * 1000000L;
+      }
+
+      if (now >= nextReport) {
+        Report report = new Report(now);
+        report.print(previous, start, latencies.takeIntervalPercentiles());
+        peakQueued = Math.max(peakQueued, report.queued);
+        peakHeap = Math.max(peakHeap, report.heapBytes);
+        previous = report;
+        nextReport += reportInterval * 1000000L;
+      }
+
+      Thread.sleep(0, 200000);
+    }
+
+    sdk.shutdown();
+    Thread.sleep(200);
+    isRunning = false;
+
+    Report last = new Report(System.nanoTime());
+    long[] total = latencies.totalPercentiles();
+    System.out.println();
+    System.out.println(String.format("Callbacks fired: %d, events received: %d, latency samples: %d, user switches: %d",
+        last.fired, last.received, latencies.totalCount(), userSwitches));
+    System.out.println(String.format("Messages sent: %d, bytes sent: %d, events dropped: %d, coalesced: %d",
+        last.messages, last.bytes, last.dropped, last.coalesced));
+    if (total != null) {
+      System.out.println(String.format("Latency p50 %.2f ms, p99 %.2f ms, max %.2f ms", total[0] / 1e6, total[1] / 1e6, total[2] / 1e6));
+    }
+    System.out.println(String.format("Peak queued events: %d, peak heap: %.1f MB", peakQueued, peakHeap / 1048576.0));
+
+    Looper.getMainLooper().quitSafely();
+  }
+
+  /// A snapshot of the counters at one point in time.
+  private final class Report {
+    final long nanos;
+    final long fired;
+    final long received;
+    final long messages;
+    final long bytes;
+    final long queued;
+    final long dropped;
+    final long coalesced;
+    final long heapBytes;
+    final int looperQueue;
+
+    Report(long nanos) {
+      this.nanos = nanos;
+      this.fired = firedCallbacks.get();
+      this.received = receivedEvents.get();
+      long messages = 0;
+      long bytes = 0;
+      for (SoakEngine engine : engines) {
+        messages += engine.sentMessages.get();
+        bytes += engine.sentBytes.get();
+      }
+      this.messages = messages;
+      this.bytes = bytes;
+
+      Map<?, ?> stats = (Map<?, ?>) engines.get(0).call("getEventDispatchStats", null);
+      this.queued = ((Number) stats.get("queued")).longValue();
+      this.dropped = ((Number) stats.get("dropped")).longValue();
+      this.coalesced = ((Number) stats.get("coalesced")).longValue();
+
+      Runtime runtime = Runtime.getRuntime();
+      this.heapBytes = runtime.totalMemory() - runtime.freeMemory();
+      this.looperQueue = Looper.getMainLooper().getQueueSize();
+    }
+
+    void print(Report previous, long start, long[] percentiles) {
+      double seconds = (nanos - previous.nanos) / 1e9;
+      System.out.println(String.format("%7.1f %9.0f %9.0f %8.0f %9.1f %8s %8s %8s %7d %7d %8d %9d %7.1f",
+          (nanos - start) / 1e9,
+          (fired - previous.fired) / seconds,
+          (received - previous.received) / seconds,
+          (messages - previous.messages) / seconds,
+          (bytes - previous.bytes) / seconds / 1024,
+          millis(percentiles, 0),
+          millis(percentiles, 1),
+          millis(percentiles, 2),
+          queued,
+          looperQueue,
+          dropped,
+          coalesced,
+          heapBytes / 1048576.0));
+    }
+  }
+
+  private static String millis(long[] percentiles, int index) {
+    return percentiles != null ? String.format("%.2f", percentiles[index] / 1e6) : "-";
+  }
+
+  private static List<SimulatedSdk.Experiment> experiments(int experimentCount, int variantCount, int variableCount) {
+    ArrayList<SimulatedSdk.Experiment> experiments = new ArrayList<SimulatedSdk.Experiment>();
+    for (int e = 0; e < experimentCount; e++) {
+      ArrayList<SimulatedSdk.Variant> variants = new ArrayList<SimulatedSdk.Variant>();
+      for (int v = 0; v < variantCount; v++) {
+        HashMap<String, Object> variables = new HashMap<String, Object>();
+        // Each variable is set by one experiment, so that enrollment changes move its value.
+        for (int i = e; i < variableCount; i += experimentCount) {
+          variables.put("variable" + i, i % 2 == 0 ? (Object) (v * 100 + i) : (Object) ("variant " + v));
+        }
+        variants.add(new SimulatedSdk.Variant(1000L * e + v, "Variant " + v, variables));
+      }
+      experiments.add(new SimulatedSdk.Experiment(e, "Experiment " + e, variants));
+    }
+    return experiments;
+  }
+
+  private void startMainThread() throws InterruptedException {
+    final CountDownLatch prepared = new CountDownLatch(1);
+    Thread mainThread = new Thread(new Runnable() {
+      public void run() {
+        Looper.prepareMainLooper();
+        prepared.countDown();
+        Looper.loop();
+      }
+    }, "main");
+    mainThread.setDaemon(true);
+    mainThread.start();
+    prepared.await();
+  }
+
+  /// Decodes the messages engines received, off the main thread, and matches their events with the
+  /// callbacks which caused them.
+  private void startCollector() {
+    Thread collector = new Thread(new Runnable() {
+      public void run() {
+        while (isRunning) {
+          SoakEngine.Delivery delivery = deliveries.poll();
+          if (delivery == null) {
+            try {
+              Thread.sleep(1);
+            } catch (InterruptedException e) {
+              return;
+            }
+            continue;
+          }
+          collect(delivery);
+        }
+      }
+    }, "SoakCollector");
+    collector.setDaemon(true);
+    collector.start();
+  }
+
+  private void collect(SoakEngine.Delivery delivery) {
+    ByteBuffer message = delivery.message;
+    MethodCall call = StandardMethodCodec.INSTANCE.decodeMethodCall(message);
+    if (call.method.equals(EventDispatcher.BATCH_METHOD)) {
+      List<?> events = (List<?>) ((Map<?, ?>) call.arguments).get("events");
+      for (Object event : events) {
+        received(delivery, (String) ((Map<?, ?>) event).get("method"));
+      }
+    } else {
+      received(delivery, call.method);
+    }
+  }
+
+  private void received(SoakEngine.Delivery delivery, String event) {
+    if (!EVENTS.containsValue(event)) return;
+    if (delivery.engine.index == 0) receivedEvents.incrementAndGet();
+    latencies.received(delivery.engine.index, event, delivery.receivedNanos);
+  }
+
+  private <T> T onMainThread(Callable<T> callable) throws Exception {
+    FutureTask<T> task = new FutureTask<T>(callable);
+    mainHandler.post(task);
+    return task.get();
+  }
+
+  private int intOption(String name, int defaultValue) {
+    String value = options.get(name);
+    return value != null ? Integer.parseInt(value) : defaultValue;
+  }
+
+  private String stringOption(String name, String defaultValue) {
+    String value = options.get(name);
+    return value != null ? value : defaultValue;
+  }
+}
@@ -0,0 +1,54 @@
+package android.content;
+
+import android.content.pm.PackageManager;
+import android.content.res.AssetManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Stub of `android.content.Context`. The plugin passes it on to Apptimize and keeps its persisted
+ * snapshot in the files directory, which is a new temporary directory unless the
+ * `apptimize.filesDir` system property names one to keep across runs.
+ */
+public class Context {
+  private static final AssetManager assets = new AssetManager();
+  private static final PackageManager packageManager = new PackageManager();
+  private static File filesDir;
+
+  public Context getApplicationContext() {
+    return this;
+  }
+
+  public String getPackageName() {
+    return "com.apptimize.benchmark";
+  }
+
+  public PackageManager getPackageManager() {
+    return packageManager;
+  }
+
+  public AssetManager getAssets() {
+    return assets;
+  }
+
+  public File getFilesDir() {
+    return sharedFilesDir();
+  }
+
+  private static synchronized File sharedFilesDir() {
+    if (filesDir == null && System.getProperty("apptimize.filesDir") != null) {
+      filesDir = new File(System.getProperty("apptimize.filesDir"));
+      filesDir.mkdirs();
+    }
+    if (filesDir == null) {
+      try {
+        filesDir = Files.createTempDirectory("apptimize-benchmark").toFile();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return filesDir;
+  }
+}
@@ -0,0 +1,8 @@
+package android.content.pm;
+
+import android.os.Bundle;
+
+/** Stub of `android.content.pm.ApplicationInfo`. */
+public class ApplicationInfo {
+  public Bundle metaData;
+}
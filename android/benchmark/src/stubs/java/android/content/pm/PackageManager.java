@@ -0,0 +1,23 @@
+package android.content.pm;
+
+import android.os.Bundle;
+
+/**
+ * Stub of `android.content.pm.PackageManager`. Every package has the same manifest metadata, which
+ * benchmarks fill in through `metaData`.
+ */
+public class PackageManager {
+  public static final int GET_META_DATA = 0x80;
+
+  public static final Bundle metaData = new Bundle();
+
+  public static class NameNotFoundException extends Exception {
+    private static final long serialVersionUID = 1L;
+  }
+
+  public ApplicationInfo getApplicationInfo(String packageName, int flags) throws NameNotFoundException {
+    ApplicationInfo info = new ApplicationInfo();
+    info.metaData = (flags & GET_META_DATA) != 0 ? metaData : null;
+    return info;
+  }
+}
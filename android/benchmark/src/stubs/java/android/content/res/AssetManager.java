@@ -0,0 +1,19 @@
+package android.content.res;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stub of `android.content.res.AssetManager`. Assets are read from the directory the
+ * `apptimize.assetsDir` system property names, and there are none if it is not set.
+ */
+public class AssetManager {
+  public InputStream open(String fileName) throws IOException {
+    String assetsDir = System.getProperty("apptimize.assetsDir");
+    if (assetsDir == null) throw new FileNotFoundException(fileName);
+    return new FileInputStream(new File(assetsDir, fileName));
+  }
+}
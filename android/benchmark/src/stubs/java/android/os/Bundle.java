@@ -0,0 +1,29 @@
+package android.os;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Stub of `android.os.Bundle`, keeping its values in a map. */
+public class Bundle {
+  private final ConcurrentHashMap<String, Object> values = new ConcurrentHashMap<String, Object>();
+
+  public Set<String> keySet() {
+    return values.keySet();
+  }
+
+  public Object get(String key) {
+    return values.get(key);
+  }
+
+  public void putString(String key, String value) {
+    values.put(key, value);
+  }
+
+  public void putInt(String key, int value) {
+    values.put(key, value);
+  }
+
+  public void putBoolean(String key, boolean value) {
+    values.put(key, value);
+  }
+}
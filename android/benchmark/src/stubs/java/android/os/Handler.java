@@ -0,0 +1,31 @@
+package android.os;
+
+/**
+ * Stub of `android.os.Handler`. Posted runnables run on the main looper's thread while it loops,
+ * and right away on the posting thread otherwise, ignoring delays, so that benchmarks measure the
+ * work itself rather than the frame interval.
+ */
+public class Handler {
+  private final Looper looper;
+
+  public Handler(Looper looper) {
+    this.looper = looper;
+  }
+
+  public final boolean post(Runnable r) {
+    return postDelayed(r, 0);
+  }
+
+  public final boolean postDelayed(Runnable r, long delayMillis) {
+    if (looper.isLooping()) {
+      looper.enqueue(r, delayMillis);
+    } else {
+      r.run();
+    }
+    return true;
+  }
+
+  public final void removeCallbacks(Runnable r) {
+    looper.remove(r);
+  }
+}
@@ -0,0 +1,108 @@
+package android.os;
+
+import java.util.Iterator;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stub of `android.os.Looper` with a single main looper.
+ *
+ * Until a thread calls `prepareMainLooper` and `loop`, work posted to the main looper runs right
+ * away on the posting thread, which is what benchmarks want. Once the loop runs, work is queued and
+ * run on the looping thread in order, honoring delays, like on a device.
+ */
+public final class Looper {
+  private static final Looper mainLooper = new Looper();
+
+  private final DelayQueue<Task> queue = new DelayQueue<Task>();
+  private final AtomicLong nextSequence = new AtomicLong();
+  private volatile Thread thread = null;
+  private volatile boolean isQuitting = false;
+
+  private static final class Task implements Delayed {
+    final Runnable runnable;
+    final long whenNanos;
+    final long sequence;
+
+    Task(Runnable runnable, long whenNanos, long sequence) {
+      this.runnable = runnable;
+      this.whenNanos = whenNanos;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(whenNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      Task task = (Task) other;
+      if (whenNanos != task.whenNanos) return whenNanos < task.whenNanos ? -1 : 1;
+      return Long.compare(sequence, task.sequence);
+    }
+  }
+
+  private Looper() {}
+
+  public static Looper getMainLooper() {
+    return mainLooper;
+  }
+
+  public static Looper myLooper() {
+    return mainLooper;
+  }
+
+  public static void prepareMainLooper() {
+    mainLooper.thread = Thread.currentThread();
+  }
+
+  /// Runs the main looper's queue on the calling thread until `quitSafely` is called.
+  public static void loop() {
+    Looper looper = mainLooper;
+    while (!looper.isQuitting || !looper.queue.isEmpty()) {
+      try {
+        Task task = looper.queue.poll(10, TimeUnit.MILLISECONDS);
+        if (task != null) task.runnable.run();
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  public Thread getThread() {
+    return thread;
+  }
+
+  public boolean isCurrentThread() {
+    return thread == Thread.currentThread();
+  }
+
+  public void quitSafely() {
+    isQuitting = true;
+  }
+
+  /// The number of runnables waiting to run on the looper, including delayed ones.
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  boolean isLooping() {
+    return thread != null;
+  }
+
+  void enqueue(Runnable runnable, long delayMillis) {
+    queue.add(new Task(runnable, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis), nextSequence.getAndIncrement()));
+  }
+
+  void remove(Runnable runnable) {
+    Iterator<Task> iterator = queue.iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().runnable == runnable) {
+        iterator.remove();
+      }
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package com.apptimize;
+
+import android.content.Context;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Stub of the Apptimize SDK's `Apptimize`, keeping its state in memory.
+ *
+ * Besides the SDK's API, the stub has hooks for benchmarks to set the state the SDK would have
+ * downloaded and to fire the SDK's listeners. `SimulatedSdk` drives these hooks like the SDK would.
+ */
+public class Apptimize {
+  public enum ApptimizeMetadataStateFlags { AVAILABLE, UP_TO_DATE, REFRESHING }
+
+  public enum UnenrollmentReason { CUSTOMER_USER_ID_CHANGED, EXPERIMENT_STOPPED, EXPERIMENT_WINNER_SELECTED, VARIANT_CHANGED, OTHER, REASON_UNKNOWN }
+
+  public enum IsFirstTestRun { YES, NO }
+
+  public interface MetadataStateChangedListener {
+    void onMetadataStateChanged(EnumSet<ApptimizeMetadataStateFlags> state);
+    void onApptimizeForegrounded(boolean willRefreshMetadata);
+  }
+
+  public interface OnExperimentsProcessedListener {
+    void onExperimentsProcessed();
+  }
+
+  public interface OnApptimizeInitializedListener {
+    void onApptimizeInitialized();
+  }
+
+  public interface OnTestEnrollmentChangedListener {
+    void onEnrolledInTest(ApptimizeTestInfo testInfo);
+    void onUnenrolledInTest(ApptimizeTestInfo testInfo, UnenrollmentReason reason);
+  }
+
+  public interface OnTestRunListener {
+    void onTestRun(ApptimizeTestInfo testInfo, IsFirstTestRun isFirstTestRun);
+  }
+
+  private static final CopyOnWriteArrayList<MetadataStateChangedListener> metadataStateChangedListeners = new CopyOnWriteArrayList<MetadataStateChangedListener>();
+  private static final CopyOnWriteArrayList<OnExperimentsProcessedListener> experimentsProcessedListeners = new CopyOnWriteArrayList<OnExperimentsProcessedListener>();
+  private static volatile OnApptimizeInitializedListener initializedListener;
+  private static volatile OnTestEnrollmentChangedListener testEnrollmentChangedListener;
+  private static volatile OnTestRunListener testRunListener;
+
+  private static volatile EnumSet<ApptimizeMetadataStateFlags> metadataState = EnumSet.of(ApptimizeMetadataStateFlags.AVAILABLE, ApptimizeMetadataStateFlags.UP_TO_DATE);
+  private static volatile Map<String, ApptimizeTestInfo> testInfo = new HashMap<String, ApptimizeTestInfo>();
+  private static volatile Map<String, ApptimizeInstantUpdateOrWinnerInfo> winnerInfo = new HashMap<String, ApptimizeInstantUpdateOrWinnerInfo>();
+  private static volatile Map<Long, Map<String, Object>> variants = new HashMap<Long, Map<String, Object>>();
+  private static final Set<String> featureFlagsOn = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private static final ConcurrentHashMap<String, Object> userAttributes = new ConcurrentHashMap<String, Object>();
+  private static volatile String customerUserId;
+  private static volatile String pilotTargetingId;
+  private static volatile boolean isOffline;
+
+  // SDK API
+
+  public static void addMetadataStateChangedListener(MetadataStateChangedListener listener) { metadataStateChangedListeners.add(listener); }
+  public static void removeMetadataStateChangedListener(MetadataStateChangedListener listener) { metadataStateChangedListeners.remove(listener); }
+  public static void addOnExperimentsProcessedListener(OnExperimentsProcessedListener listener) { experimentsProcessedListeners.add(listener); }
+  public static void removeOnExperimentsProcessedListener(OnExperimentsProcessedListener listener) { experimentsProcessedListeners.remove(listener); }
+  public static void setOnApptimizeInitializedListener(OnApptimizeInitializedListener listener) { initializedListener = listener; }
+  public static void setOnTestEnrollmentChangedListener(OnTestEnrollmentChangedListener listener) { testEnrollmentChangedListener = listener; }
+  public static void setOnTestRunListener(OnTestRunListener listener) { testRunListener = listener; }
+
+  public static void setup(Context context, String appKey) {}
+  public static void setup(Context context, String appKey, ApptimizeOptions options) {}
+  public static void disable() {}
+  public static String getVersion() { return "stub"; }
+
+  public static void setCustomerUserId(String userId) {
+    customerUserId = userId;
+    SimulatedSdk sdk = SimulatedSdk.current();
+    if (sdk != null) sdk.onCustomerUserIdChanged(userId);
+  }
+
+  public static String getCustomerUserId() { return customerUserId; }
+  public static String getApptimizeAnonUserId() { return "anonymous-user"; }
+  public static void setPilotTargetingId(String id) { pilotTargetingId = id; }
+  public static String getPilotTargetingId() { return pilotTargetingId; }
+  public static void setOffline(boolean offline) { isOffline = offline; }
+  public static boolean isOffline() { return isOffline; }
+  public static EnumSet<ApptimizeMetadataStateFlags> getMetadataState() { return EnumSet.copyOf(metadataState); }
+
+  public static void track(String eventName) {}
+  public static void track(String eventName, double value) {}
+
+  public static void runTest(String testName, ApptimizeTest test) { test.baseline(); }
+  public static void runTest(String testName, ApptimizeTest test, ApptimizeOptions options) { test.baseline(); }
+  public static boolean isFeatureFlagOn(String name) { return featureFlagsOn.contains(name); }
+
+  public static Map<String, ApptimizeTestInfo> getTestInfo() { return new HashMap<String, ApptimizeTestInfo>(testInfo); }
+  public static Map<String, ApptimizeInstantUpdateOrWinnerInfo> getInstantUpdateOrWinnerInfo() { return new HashMap<String, ApptimizeInstantUpdateOrWinnerInfo>(winnerInfo); }
+  public static Map<Long, Map<String, Object>> getVariants() { return new HashMap<Long, Map<String, Object>>(variants); }
+  public static void forceVariant(long variantId) {}
+  public static void clearForcedVariant(long variantId) {}
+  public static void clearAllForcedVariants() {}
+
+  public static void setUserAttribute(String name, String value) { userAttributes.put(name, value); }
+  public static void setUserAttribute(String name, int value) { userAttributes.put(name, value); }
+  public static void setUserAttribute(String name, double value) { userAttributes.put(name, value); }
+  public static void setUserAttribute(String name, boolean value) { userAttributes.put(name, value); }
+  public static void clearUserAttribute(String name) { userAttributes.remove(name); }
+  public static void clearAllUserAttributes() { userAttributes.clear(); }
+  public static String getUserAttributeString(String name) { return attribute(name, String.class); }
+  public static Integer getUserAttributeInteger(String name) { return attribute(name, Integer.class); }
+  public static Double getUserAttributeDouble(String name) { return attribute(name, Double.class); }
+  public static Boolean getUserAttributeBoolean(String name) { return attribute(name, Boolean.class); }
+
+  private static <T> T attribute(String name, Class<T> type) {
+    Object value = userAttributes.get(name);
+    return type.isInstance(value) ? type.cast(value) : null;
+  }
+
+  // Benchmark hooks
+
+  public static void setMetadataState(EnumSet<ApptimizeMetadataStateFlags> state) {
+    metadataState = state;
+    for (MetadataStateChangedListener listener : metadataStateChangedListeners) {
+      listener.onMetadataStateChanged(EnumSet.copyOf(state));
+    }
+  }
+
+  public static void setTestInfo(List<ApptimizeTestInfo> tests) {
+    HashMap<String, ApptimizeTestInfo> byName = new HashMap<String, ApptimizeTestInfo>();
+    for (ApptimizeTestInfo test : tests) {
+      byName.put(test.getTestName(), test);
+    }
+    testInfo = byName;
+  }
+
+  public static void setInstantUpdateOrWinnerInfo(Map<String, ApptimizeInstantUpdateOrWinnerInfo> info) {
+    winnerInfo = new HashMap<String, ApptimizeInstantUpdateOrWinnerInfo>(info);
+  }
+
+  public static void setVariants(Map<Long, Map<String, Object>> allVariants) {
+    variants = new HashMap<Long, Map<String, Object>>(allVariants);
+  }
+
+  public static void setFeatureFlagOn(String name, boolean on) {
+    if (on) {
+      featureFlagsOn.add(name);
+    } else {
+      featureFlagsOn.remove(name);
+    }
+  }
+
+  public static void fireExperimentsProcessed() {
+    for (OnExperimentsProcessedListener listener : experimentsProcessedListeners) {
+      listener.onExperimentsProcessed();
+    }
+  }
+
+  public static void fireInitialized() {
+    OnApptimizeInitializedListener listener = initializedListener;
+    if (listener != null) listener.onApptimizeInitialized();
+  }
+
+  public static void fireEnrolledInTest(ApptimizeTestInfo test) {
+    OnTestEnrollmentChangedListener listener = testEnrollmentChangedListener;
+    if (listener != null) listener.onEnrolledInTest(test);
+  }
+
+  public static void fireUnenrolledInTest(ApptimizeTestInfo test, UnenrollmentReason reason) {
+    OnTestEnrollmentChangedListener listener = testEnrollmentChangedListener;
+    if (listener != null) listener.onUnenrolledInTest(test, reason);
+  }
+
+  public static void fireTestRun(ApptimizeTestInfo test, IsFirstTestRun isFirstTestRun) {
+    OnTestRunListener listener = testRunListener;
+    if (listener != null) listener.onTestRun(test, isFirstTestRun);
+  }
+}
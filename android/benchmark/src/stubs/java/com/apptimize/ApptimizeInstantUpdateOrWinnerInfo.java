@@ -0,0 +1,13 @@
+package com.apptimize;
+
+/** Stub of the Apptimize SDK's `ApptimizeInstantUpdateOrWinnerInfo`. */
+public interface ApptimizeInstantUpdateOrWinnerInfo {
+  String getWinningTestName();
+  Long getWinningTestId();
+  String getInstantUpdateName();
+  Long getInstantUpdateId();
+  String getWinningVariantName();
+  Long getWinningVariantId();
+  String getCustomerUserId();
+  String getAnonymousUserId();
+}
@@ -0,0 +1,18 @@
+package com.apptimize;
+
+/** Stub of the Apptimize SDK's `ApptimizeOptions`. Options are accepted and ignored. */
+public class ApptimizeOptions {
+  public enum LogLevel { VERBOSE, DEBUG, INFO, WARNING, ERROR, OFF }
+
+  public enum ServerRegion { DEFAULT, EUCS }
+
+  public ApptimizeOptions setupInBackground(boolean value) { return this; }
+  public ApptimizeOptions setIsDevicePairingEnabled(boolean value) { return this; }
+  public ApptimizeOptions setUpdateMetadataTimeout(long value) { return this; }
+  public ApptimizeOptions setThirdPartyEventImportingEnabled(boolean value) { return this; }
+  public ApptimizeOptions setThirdPartyEventExportingEnabled(boolean value) { return this; }
+  public ApptimizeOptions setForceVariantsShowWinnersAndInstantUpdates(boolean value) { return this; }
+  public ApptimizeOptions setIsRefreshingMetadataOnSetup(boolean value) { return this; }
+  public ApptimizeOptions setLogLevel(LogLevel value) { return this; }
+  public ApptimizeOptions setServerRegion(ServerRegion value) { return this; }
+}
@@ -0,0 +1,6 @@
+package com.apptimize;
+
+/** Stub of the Apptimize SDK's `ApptimizeTest`. */
+public abstract class ApptimizeTest {
+  public abstract void baseline();
+}
@@ -0,0 +1,20 @@
+package com.apptimize;
+
+import java.util.Date;
+
+/** Stub of the Apptimize SDK's `ApptimizeTestInfo`. */
+public interface ApptimizeTestInfo {
+  String getTestName();
+  String getEnrolledVariantName();
+  Long getTestId();
+  Long getEnrolledVariantId();
+  Date getTestStartedDate();
+  Date getTestEnrolledDate();
+  Long getCycle();
+  Long getCurrentPhase();
+  Long getParticipationPhase();
+  boolean userHasParticipated();
+  String getCustomerUserId();
+  String getAnonymousUserId();
+  ApptimizeTestType getApptimizeTestType();
+}
@@ -0,0 +1,9 @@
+package com.apptimize;
+
+/** Stub of the Apptimize SDK's `ApptimizeTestType`. */
+public enum ApptimizeTestType {
+  VISUAL,
+  CODE_BLOCK,
+  DYNAMIC_VARIABLES,
+  FEATURE_FLAG
+}
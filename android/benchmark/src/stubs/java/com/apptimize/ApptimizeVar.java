@@ -0,0 +1,76 @@
+package com.apptimize;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stub of the Apptimize SDK's `ApptimizeVar`. Variables have the value of the variant
+ * `SimulatedSdk` enrolled the user in, or else their default value.
+ */
+public class ApptimizeVar<T> {
+  private final String name;
+  private final T defaultValue;
+
+  private ApptimizeVar(String name, T defaultValue) {
+    this.name = name;
+    this.defaultValue = defaultValue;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  @SuppressWarnings("unchecked")
+  public T value() {
+    Object value = SimulatedSdk.variableValue(name);
+    return value != null ? (T) value : defaultValue;
+  }
+
+  public static ApptimizeVar<String> createString(String name, String defaultValue) {
+    return new ApptimizeVar<String>(name, defaultValue);
+  }
+
+  public static ApptimizeVar<Boolean> createBoolean(String name, Boolean defaultValue) {
+    return new ApptimizeVar<Boolean>(name, defaultValue);
+  }
+
+  public static ApptimizeVar<Integer> createInteger(String name, Integer defaultValue) {
+    return new ApptimizeVar<Integer>(name, defaultValue);
+  }
+
+  public static ApptimizeVar<Double> createDouble(String name, Double defaultValue) {
+    return new ApptimizeVar<Double>(name, defaultValue);
+  }
+
+  public static ApptimizeVar<List<String>> createListOfStrings(String name, List<String> defaultValue) {
+    return new ApptimizeVar<List<String>>(name, defaultValue);
+  }
+
+  public static ApptimizeVar<List<Boolean>> createListOfBooleans(String name, List<Boolean> defaultValue) {
+    return new ApptimizeVar<List<Boolean>>(name, defaultValue);
+  }
+
+  public static ApptimizeVar<List<Integer>> createListOfIntegers(String name, List<Integer> defaultValue) {
+    return new ApptimizeVar<List<Integer>>(name, defaultValue);
+  }
+
+  public static ApptimizeVar<List<Double>> createListOfDoubles(String name, List<Double> defaultValue) {
+    return new ApptimizeVar<List<Double>>(name, defaultValue);
+  }
+
+  public static ApptimizeVar<Map<String, String>> createMapOfStrings(String name, Map<String, String> defaultValue) {
+    return new ApptimizeVar<Map<String, String>>(name, defaultValue);
+  }
+
+  public static ApptimizeVar<Map<String, Boolean>> createMapOfBooleans(String name, Map<String, Boolean> defaultValue) {
+    return new ApptimizeVar<Map<String, Boolean>>(name, defaultValue);
+  }
+
+  public static ApptimizeVar<Map<String, Integer>> createMapOfIntegers(String name, Map<String, Integer> defaultValue) {
+    return new ApptimizeVar<Map<String, Integer>>(name, defaultValue);
+  }
+
+  public static ApptimizeVar<Map<String, Double>> createMapOfDoubles(String name, Map<String, Double> defaultValue) {
+    return new ApptimizeVar<Map<String, Double>>(name, defaultValue);
+  }
+}
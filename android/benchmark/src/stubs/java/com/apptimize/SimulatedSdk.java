@@ -0,0 +1,205 @@
+package com.apptimize;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stand-in for the Apptimize SDK's behavior, driving the `Apptimize` stub without a network.
+ *
+ * Users are bucketed into a variant of every configured experiment by a hash of their user id.
+ * Changing the customer user id unenrolls the user from every experiment and enrolls them again,
+ * as the SDK does. Callbacks are fired on a single SDK thread, like the SDK's own threads, so that
+ * bursts reach the plugin's listeners concurrently with the main thread.
+ */
+public final class SimulatedSdk {
+  /// The SDK callbacks the simulation fires.
+  public enum Callback { INITIALIZED, ENROLLED, UNENROLLED, TEST_RUN, EXPERIMENTS_PROCESSED, METADATA_STATE_CHANGED }
+
+  /// Notified right before each callback is fired, for example to measure how long its event takes
+  /// to reach Dart.
+  public interface Observer {
+    void onCallback(Callback callback);
+  }
+
+  public static final class Variant {
+    final long id;
+    final String name;
+    final Map<String, Object> variables;
+
+    /// `variables` are the dynamic variable values users in this variant see, by variable name.
+    public Variant(long id, String name, Map<String, Object> variables) {
+      this.id = id;
+      this.name = name;
+      this.variables = variables;
+    }
+  }
+
+  public static final class Experiment {
+    final long id;
+    final String name;
+    final List<Variant> variants;
+
+    public Experiment(long id, String name, List<Variant> variants) {
+      this.id = id;
+      this.name = name;
+      this.variants = variants;
+    }
+  }
+
+  private static volatile SimulatedSdk current = null;
+
+  private final List<Experiment> experiments;
+  private final Observer observer;
+  private final ExecutorService sdkThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "SimulatedSdk");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  // Only accessed on the SDK thread.
+  private final ArrayList<ApptimizeTestInfo> enrolledTests = new ArrayList<ApptimizeTestInfo>();
+  private final HashMap<Long, Long> participationCycles = new HashMap<Long, Long>();
+  private long nextTestRun = 0;
+
+  private final ConcurrentHashMap<String, Object> variableValues = new ConcurrentHashMap<String, Object>();
+
+  private SimulatedSdk(List<Experiment> experiments, Observer observer) {
+    this.experiments = new ArrayList<Experiment>(experiments);
+    this.observer = observer;
+  }
+
+  /// Starts simulating `experiments` for the anonymous user. Apptimize reports itself initialized,
+  /// enrolls the user and processes experiments, as after a setup with fresh metadata.
+  public static SimulatedSdk install(List<Experiment> experiments, Observer observer) {
+    final SimulatedSdk sdk = new SimulatedSdk(experiments, observer);
+    current = sdk;
+
+    Map<Long, Map<String, Object>> variants = new HashMap<Long, Map<String, Object>>();
+    for (Experiment experiment : experiments) {
+      for (Variant variant : experiment.variants) {
+        HashMap<String, Object> info = new HashMap<String, Object>();
+        info.put("experimentId", experiment.id);
+        info.put("experimentName", experiment.name);
+        info.put("experimentType", "code-block");
+        info.put("variantId", variant.id);
+        info.put("variantName", variant.name);
+        variants.put(variant.id, info);
+      }
+    }
+    Apptimize.setVariants(variants);
+
+    sdk.sdkThread.execute(new Runnable() {
+      public void run() {
+        sdk.fire(Callback.INITIALIZED);
+        Apptimize.fireInitialized();
+        sdk.enroll(Apptimize.getApptimizeAnonUserId());
+        sdk.fire(Callback.METADATA_STATE_CHANGED);
+        Apptimize.setMetadataState(EnumSet.of(Apptimize.ApptimizeMetadataStateFlags.AVAILABLE, Apptimize.ApptimizeMetadataStateFlags.UP_TO_DATE));
+      }
+    });
+    return sdk;
+  }
+
+  public void shutdown() throws InterruptedException {
+    sdkThread.shutdown();
+    sdkThread.awaitTermination(10, TimeUnit.SECONDS);
+    if (current == this) current = null;
+  }
+
+  static SimulatedSdk current() {
+    return current;
+  }
+
+  /// The value of dynamic variable `name` for the current user, or null to use its default value.
+  static Object variableValue(String name) {
+    SimulatedSdk sdk = current;
+    return sdk != null ? sdk.variableValues.get(name) : null;
+  }
+
+  /// Called by `Apptimize.setCustomerUserId`. The storm of callbacks is fired on the SDK thread.
+  void onCustomerUserIdChanged(final String userId) {
+    sdkThread.execute(new Runnable() {
+      public void run() {
+        for (ApptimizeTestInfo test : enrolledTests) {
+          fire(Callback.UNENROLLED);
+          Apptimize.fireUnenrolledInTest(test, Apptimize.UnenrollmentReason.CUSTOMER_USER_ID_CHANGED);
+        }
+        enroll(userId != null ? userId : Apptimize.getApptimizeAnonUserId());
+      }
+    });
+  }
+
+  /// Runs `count` tests the user is enrolled in, in turn, as code block tests running in the app.
+  public void runTests(final int count) {
+    sdkThread.execute(new Runnable() {
+      public void run() {
+        if (enrolledTests.isEmpty()) return;
+
+        for (int i = 0; i < count; i++) {
+          ApptimizeTestInfo test = enrolledTests.get((int) (nextTestRun++ % enrolledTests.size()));
+          Long participatedCycle = participationCycles.put(test.getTestId(), test.getCycle());
+          fire(Callback.TEST_RUN);
+          Apptimize.fireTestRun(test, test.getCycle().equals(participatedCycle) ? Apptimize.IsFirstTestRun.NO : Apptimize.IsFirstTestRun.YES);
+        }
+      }
+    });
+  }
+
+  /// Refreshes the metadata: the state goes through refreshing to up to date, and experiments are
+  /// processed again.
+  public void refreshMetadata() {
+    sdkThread.execute(new Runnable() {
+      public void run() {
+        fire(Callback.METADATA_STATE_CHANGED);
+        Apptimize.setMetadataState(EnumSet.of(Apptimize.ApptimizeMetadataStateFlags.AVAILABLE, Apptimize.ApptimizeMetadataStateFlags.REFRESHING));
+        fire(Callback.METADATA_STATE_CHANGED);
+        Apptimize.setMetadataState(EnumSet.of(Apptimize.ApptimizeMetadataStateFlags.AVAILABLE, Apptimize.ApptimizeMetadataStateFlags.UP_TO_DATE));
+        fire(Callback.EXPERIMENTS_PROCESSED);
+        Apptimize.fireExperimentsProcessed();
+      }
+    });
+  }
+
+  private void enroll(String userId) {
+    enrolledTests.clear();
+    participationCycles.clear();
+    HashMap<String, Object> values = new HashMap<String, Object>();
+    for (Experiment experiment : experiments) {
+      if (experiment.variants.isEmpty()) continue;
+
+      Variant variant = experiment.variants.get(bucket(userId, experiment));
+      values.putAll(variant.variables);
+      enrolledTests.add(new SimulatedTestInfo(experiment.id, experiment.name, variant.id, variant.name, userId));
+    }
+    variableValues.clear();
+    variableValues.putAll(values);
+    Apptimize.setTestInfo(Collections.unmodifiableList(new ArrayList<ApptimizeTestInfo>(enrolledTests)));
+
+    for (ApptimizeTestInfo test : enrolledTests) {
+      fire(Callback.ENROLLED);
+      Apptimize.fireEnrolledInTest(test);
+    }
+    fire(Callback.EXPERIMENTS_PROCESSED);
+    Apptimize.fireExperimentsProcessed();
+  }
+
+  private void fire(Callback callback) {
+    if (observer != null) observer.onCallback(callback);
+  }
+
+  private static int bucket(String userId, Experiment experiment) {
+    int hash = (userId + ":" + experiment.id).hashCode() & 0x7fffffff;
+    return hash % experiment.variants.size();
+  }
+}
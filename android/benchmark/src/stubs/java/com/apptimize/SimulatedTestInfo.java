@@ -0,0 +1,37 @@
+package com.apptimize;
+
+import java.util.Date;
+
+/** The test info of a user enrolled in a simulated experiment. */
+final class SimulatedTestInfo implements ApptimizeTestInfo {
+  private static final long STARTED_MILLIS = 1600000000000L;
+
+  private final long testId;
+  private final String testName;
+  private final long variantId;
+  private final String variantName;
+  private final String userId;
+  private final Date enrolledDate = new Date();
+
+  SimulatedTestInfo(long testId, String testName, long variantId, String variantName, String userId) {
+    this.testId = testId;
+    this.testName = testName;
+    this.variantId = variantId;
+    this.variantName = variantName;
+    this.userId = userId;
+  }
+
+  @Override public String getTestName() { return testName; }
+  @Override public String getEnrolledVariantName() { return variantName; }
+  @Override public Long getTestId() { return testId; }
+  @Override public Long getEnrolledVariantId() { return variantId; }
+  @Override public Date getTestStartedDate() { return new Date(STARTED_MILLIS); }
+  @Override public Date getTestEnrolledDate() { return enrolledDate; }
+  @Override public Long getCycle() { return 1L; }
+  @Override public Long getCurrentPhase() { return 1L; }
+  @Override public Long getParticipationPhase() { return 1L; }
+  @Override public boolean userHasParticipated() { return true; }
+  @Override public String getCustomerUserId() { return userId; }
+  @Override public String getAnonymousUserId() { return Apptimize.getApptimizeAnonUserId(); }
+  @Override public ApptimizeTestType getApptimizeTestType() { return ApptimizeTestType.CODE_BLOCK; }
+}
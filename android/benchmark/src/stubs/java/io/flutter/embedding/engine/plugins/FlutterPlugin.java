@@ -0,0 +1,43 @@
+package io.flutter.embedding.engine.plugins;
+
+import android.content.Context;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+/** Stub of Flutter's `FlutterPlugin`. */
+public interface FlutterPlugin {
+  void onAttachedToEngine(FlutterPluginBinding binding);
+
+  void onDetachedFromEngine(FlutterPluginBinding binding);
+
+  interface FlutterAssets {
+    String getAssetFilePathByName(String assetFileName);
+  }
+
+  class FlutterPluginBinding {
+    private final Context applicationContext;
+    private final BinaryMessenger binaryMessenger;
+
+    public FlutterPluginBinding(Context applicationContext, BinaryMessenger binaryMessenger) {
+      this.applicationContext = applicationContext;
+      this.binaryMessenger = binaryMessenger;
+    }
+
+    public Context getApplicationContext() {
+      return applicationContext;
+    }
+
+    public BinaryMessenger getBinaryMessenger() {
+      return binaryMessenger;
+    }
+
+    /// Resolves asset names like Flutter does, to paths under `flutter_assets`.
+    public FlutterAssets getFlutterAssets() {
+      return new FlutterAssets() {
+        public String getAssetFilePathByName(String assetFileName) {
+          return "flutter_assets/" + assetFileName;
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,4 @@
+package io.flutter.embedding.engine.plugins.activity;
+
+/** Stub of Flutter's `ActivityPluginBinding`. */
+public interface ActivityPluginBinding {}
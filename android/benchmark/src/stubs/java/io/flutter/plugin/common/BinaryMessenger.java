@@ -0,0 +1,20 @@
+package io.flutter.plugin.common;
+
+import java.nio.ByteBuffer;
+
+/** Stub of Flutter's `BinaryMessenger`. Benchmarks provide implementations standing in for engines. */
+public interface BinaryMessenger {
+  void send(String channel, ByteBuffer message);
+
+  void send(String channel, ByteBuffer message, BinaryReply callback);
+
+  void setMessageHandler(String channel, BinaryMessageHandler handler);
+
+  interface BinaryMessageHandler {
+    void onMessage(ByteBuffer message, BinaryReply reply);
+  }
+
+  interface BinaryReply {
+    void reply(ByteBuffer reply);
+  }
+}
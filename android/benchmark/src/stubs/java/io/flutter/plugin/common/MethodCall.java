@@ -0,0 +1,38 @@
+package io.flutter.plugin.common;
+
+import java.util.Map;
+
+/** Stub of Flutter's `MethodCall`, with the same argument accessors. */
+public final class MethodCall {
+  public final String method;
+  public final Object arguments;
+
+  public MethodCall(String method, Object arguments) {
+    this.method = method;
+    this.arguments = arguments;
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> T arguments() {
+    return (T) arguments;
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> T argument(String key) {
+    if (arguments == null) {
+      return null;
+    } else if (arguments instanceof Map) {
+      return (T) ((Map<?, ?>) arguments).get(key);
+    }
+    throw new ClassCastException();
+  }
+
+  public boolean hasArgument(String key) {
+    if (arguments == null) {
+      return false;
+    } else if (arguments instanceof Map) {
+      return ((Map<?, ?>) arguments).containsKey(key);
+    }
+    throw new ClassCastException();
+  }
+}
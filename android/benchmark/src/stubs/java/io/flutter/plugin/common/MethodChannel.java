@@ -0,0 +1,68 @@
+package io.flutter.plugin.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stub of Flutter's `MethodChannel`. Calls from Dart are decoded and handed to the handler, and
+ * calls to Dart are encoded and sent through the messenger without waiting for a reply.
+ */
+public class MethodChannel {
+  private final BinaryMessenger messenger;
+  private final String name;
+  private final MethodCodec codec;
+
+  public MethodChannel(BinaryMessenger messenger, String name) {
+    this(messenger, name, StandardMethodCodec.INSTANCE);
+  }
+
+  public MethodChannel(BinaryMessenger messenger, String name, MethodCodec codec) {
+    this.messenger = messenger;
+    this.name = name;
+    this.codec = codec;
+  }
+
+  public void invokeMethod(String method, Object arguments) {
+    messenger.send(name, codec.encodeMethodCall(new MethodCall(method, arguments)));
+  }
+
+  public void setMethodCallHandler(final MethodCallHandler handler) {
+    if (handler == null) {
+      messenger.setMessageHandler(name, null);
+      return;
+    }
+
+    messenger.setMessageHandler(name, new BinaryMessenger.BinaryMessageHandler() {
+      @Override
+      public void onMessage(ByteBuffer message, final BinaryMessenger.BinaryReply reply) {
+        handler.onMethodCall(codec.decodeMethodCall(message), new Result() {
+          @Override
+          public void success(Object result) {
+            reply.reply(codec.encodeSuccessEnvelope(result));
+          }
+
+          @Override
+          public void error(String errorCode, String errorMessage, Object errorDetails) {
+            reply.reply(codec.encodeErrorEnvelope(errorCode, errorMessage, errorDetails));
+          }
+
+          @Override
+          public void notImplemented() {
+            reply.reply(null);
+          }
+        });
+      }
+    });
+  }
+
+  public interface MethodCallHandler {
+    void onMethodCall(MethodCall call, Result result);
+  }
+
+  public interface Result {
+    void success(Object result);
+
+    void error(String errorCode, String errorMessage, Object errorDetails);
+
+    void notImplemented();
+  }
+}
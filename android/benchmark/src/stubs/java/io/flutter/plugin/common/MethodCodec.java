@@ -0,0 +1,14 @@
+package io.flutter.plugin.common;
+
+import java.nio.ByteBuffer;
+
+/** Stub of Flutter's `MethodCodec`. */
+public interface MethodCodec {
+  ByteBuffer encodeMethodCall(MethodCall methodCall);
+
+  MethodCall decodeMethodCall(ByteBuffer methodCall);
+
+  ByteBuffer encodeSuccessEnvelope(Object result);
+
+  ByteBuffer encodeErrorEnvelope(String errorCode, String errorMessage, Object errorDetails);
+}
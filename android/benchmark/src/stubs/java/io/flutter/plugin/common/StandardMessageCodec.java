@@ -0,0 +1,267 @@
+package io.flutter.plugin.common;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stub of Flutter's `StandardMessageCodec`, writing the same wire format so that benchmarks see
+ * realistic payload sizes and encoding costs.
+ */
+public class StandardMessageCodec implements MessageCodec<Object> {
+  public static final StandardMessageCodec INSTANCE = new StandardMessageCodec();
+
+  private static final Charset UTF8 = Charset.forName("UTF8");
+
+  private static final byte NULL = 0;
+  private static final byte TRUE = 1;
+  private static final byte FALSE = 2;
+  private static final byte INT = 3;
+  private static final byte LONG = 4;
+  private static final byte DOUBLE = 6;
+  private static final byte STRING = 7;
+  private static final byte BYTE_ARRAY = 8;
+  private static final byte INT_ARRAY = 9;
+  private static final byte LONG_ARRAY = 10;
+  private static final byte DOUBLE_ARRAY = 11;
+  private static final byte LIST = 12;
+  private static final byte MAP = 13;
+
+  /// A `ByteArrayOutputStream` whose buffer can be copied out without another copy.
+  static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+    byte[] buffer() {
+      return buf;
+    }
+  }
+
+  @Override
+  public ByteBuffer encodeMessage(Object message) {
+    if (message == null) {
+      return null;
+    }
+    ExposedByteArrayOutputStream stream = new ExposedByteArrayOutputStream();
+    writeValue(stream, message);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(stream.size());
+    buffer.put(stream.buffer(), 0, stream.size());
+    return buffer;
+  }
+
+  @Override
+  public Object decodeMessage(ByteBuffer message) {
+    if (message == null) {
+      return null;
+    }
+    message.order(ByteOrder.nativeOrder());
+    return readValue(message);
+  }
+
+  protected static final void writeSize(ByteArrayOutputStream stream, int value) {
+    if (value < 254) {
+      stream.write(value);
+    } else if (value <= 0xffff) {
+      stream.write(254);
+      writeChar(stream, value);
+    } else {
+      stream.write(255);
+      writeInt(stream, value);
+    }
+  }
+
+  protected static final void writeChar(ByteArrayOutputStream stream, int value) {
+    stream.write(value);
+    stream.write(value >>> 8);
+  }
+
+  protected static final void writeInt(ByteArrayOutputStream stream, int value) {
+    stream.write(value);
+    stream.write(value >>> 8);
+    stream.write(value >>> 16);
+    stream.write(value >>> 24);
+  }
+
+  protected static final void writeLong(ByteArrayOutputStream stream, long value) {
+    for (int i = 0; i < 8; i++) {
+      stream.write((int) (value >>> (8 * i)));
+    }
+  }
+
+  protected static final void writeDouble(ByteArrayOutputStream stream, double value) {
+    writeLong(stream, Double.doubleToLongBits(value));
+  }
+
+  protected static final void writeBytes(ByteArrayOutputStream stream, byte[] bytes) {
+    writeSize(stream, bytes.length);
+    stream.write(bytes, 0, bytes.length);
+  }
+
+  protected static final void writeAlignment(ByteArrayOutputStream stream, int alignment) {
+    int mod = stream.size() % alignment;
+    if (mod != 0) {
+      for (int i = 0; i < alignment - mod; i++) {
+        stream.write(0);
+      }
+    }
+  }
+
+  protected void writeValue(ByteArrayOutputStream stream, Object value) {
+    if (value == null || value.equals(null)) {
+      stream.write(NULL);
+    } else if (value instanceof Boolean) {
+      stream.write(((Boolean) value).booleanValue() ? TRUE : FALSE);
+    } else if (value instanceof Number) {
+      if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+        stream.write(INT);
+        writeInt(stream, ((Number) value).intValue());
+      } else if (value instanceof Long) {
+        stream.write(LONG);
+        writeLong(stream, (long) value);
+      } else if (value instanceof Float || value instanceof Double) {
+        stream.write(DOUBLE);
+        writeAlignment(stream, 8);
+        writeDouble(stream, ((Number) value).doubleValue());
+      } else {
+        throw new IllegalArgumentException("Unsupported Number type: " + value.getClass());
+      }
+    } else if (value instanceof CharSequence) {
+      stream.write(STRING);
+      writeBytes(stream, value.toString().getBytes(UTF8));
+    } else if (value instanceof byte[]) {
+      stream.write(BYTE_ARRAY);
+      writeBytes(stream, (byte[]) value);
+    } else if (value instanceof int[]) {
+      stream.write(INT_ARRAY);
+      int[] array = (int[]) value;
+      writeSize(stream, array.length);
+      writeAlignment(stream, 4);
+      for (int n : array) {
+        writeInt(stream, n);
+      }
+    } else if (value instanceof long[]) {
+      stream.write(LONG_ARRAY);
+      long[] array = (long[]) value;
+      writeSize(stream, array.length);
+      writeAlignment(stream, 8);
+      for (long n : array) {
+        writeLong(stream, n);
+      }
+    } else if (value instanceof double[]) {
+      stream.write(DOUBLE_ARRAY);
+      double[] array = (double[]) value;
+      writeSize(stream, array.length);
+      writeAlignment(stream, 8);
+      for (double d : array) {
+        writeDouble(stream, d);
+      }
+    } else if (value instanceof List) {
+      stream.write(LIST);
+      List<?> list = (List<?>) value;
+      writeSize(stream, list.size());
+      for (Object o : list) {
+        writeValue(stream, o);
+      }
+    } else if (value instanceof Map) {
+      stream.write(MAP);
+      Map<?, ?> map = (Map<?, ?>) value;
+      writeSize(stream, map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        writeValue(stream, entry.getKey());
+        writeValue(stream, entry.getValue());
+      }
+    } else {
+      throw new IllegalArgumentException("Unsupported value: " + value);
+    }
+  }
+
+  protected static final int readSize(ByteBuffer buffer) {
+    int value = buffer.get() & 0xff;
+    if (value < 254) {
+      return value;
+    } else if (value == 254) {
+      return buffer.getChar();
+    }
+    return buffer.getInt();
+  }
+
+  protected static final byte[] readBytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[readSize(buffer)];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  protected static final void readAlignment(ByteBuffer buffer, int alignment) {
+    int mod = buffer.position() % alignment;
+    if (mod != 0) {
+      buffer.position(buffer.position() + alignment - mod);
+    }
+  }
+
+  protected final Object readValue(ByteBuffer buffer) {
+    return readValueOfType(buffer.get(), buffer);
+  }
+
+  protected Object readValueOfType(byte type, ByteBuffer buffer) {
+    switch (type) {
+      case NULL:
+        return null;
+      case TRUE:
+        return true;
+      case FALSE:
+        return false;
+      case INT:
+        return buffer.getInt();
+      case LONG:
+        return buffer.getLong();
+      case DOUBLE:
+        readAlignment(buffer, 8);
+        return buffer.getDouble();
+      case STRING:
+        return new String(readBytes(buffer), UTF8);
+      case BYTE_ARRAY:
+        return readBytes(buffer);
+      case INT_ARRAY: {
+        int[] array = new int[readSize(buffer)];
+        readAlignment(buffer, 4);
+        buffer.asIntBuffer().get(array);
+        buffer.position(buffer.position() + 4 * array.length);
+        return array;
+      }
+      case LONG_ARRAY: {
+        long[] array = new long[readSize(buffer)];
+        readAlignment(buffer, 8);
+        buffer.asLongBuffer().get(array);
+        buffer.position(buffer.position() + 8 * array.length);
+        return array;
+      }
+      case DOUBLE_ARRAY: {
+        double[] array = new double[readSize(buffer)];
+        readAlignment(buffer, 8);
+        buffer.asDoubleBuffer().get(array);
+        buffer.position(buffer.position() + 8 * array.length);
+        return array;
+      }
+      case LIST: {
+        int size = readSize(buffer);
+        List<Object> list = new ArrayList<Object>(size);
+        for (int i = 0; i < size; i++) {
+          list.add(readValue(buffer));
+        }
+        return list;
+      }
+      case MAP: {
+        int size = readSize(buffer);
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        for (int i = 0; i < size; i++) {
+          map.put(readValue(buffer), readValue(buffer));
+        }
+        return map;
+      }
+      default:
+        throw new IllegalArgumentException("Message corrupted");
+    }
+  }
+}
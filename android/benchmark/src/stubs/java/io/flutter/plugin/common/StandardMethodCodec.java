@@ -0,0 +1,58 @@
+package io.flutter.plugin.common;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** Stub of Flutter's `StandardMethodCodec`, writing the same wire format. */
+public final class StandardMethodCodec implements MethodCodec {
+  public static final StandardMethodCodec INSTANCE = new StandardMethodCodec(StandardMessageCodec.INSTANCE);
+
+  private final StandardMessageCodec messageCodec;
+
+  public StandardMethodCodec(StandardMessageCodec messageCodec) {
+    this.messageCodec = messageCodec;
+  }
+
+  @Override
+  public ByteBuffer encodeMethodCall(MethodCall methodCall) {
+    StandardMessageCodec.ExposedByteArrayOutputStream stream = new StandardMessageCodec.ExposedByteArrayOutputStream();
+    messageCodec.writeValue(stream, methodCall.method);
+    messageCodec.writeValue(stream, methodCall.arguments);
+    return toBuffer(stream);
+  }
+
+  @Override
+  public MethodCall decodeMethodCall(ByteBuffer methodCall) {
+    methodCall.order(ByteOrder.nativeOrder());
+    Object method = messageCodec.readValue(methodCall);
+    Object arguments = messageCodec.readValue(methodCall);
+    if (method instanceof String && !methodCall.hasRemaining()) {
+      return new MethodCall((String) method, arguments);
+    }
+    throw new IllegalArgumentException("Method call corrupted");
+  }
+
+  @Override
+  public ByteBuffer encodeSuccessEnvelope(Object result) {
+    StandardMessageCodec.ExposedByteArrayOutputStream stream = new StandardMessageCodec.ExposedByteArrayOutputStream();
+    stream.write(0);
+    messageCodec.writeValue(stream, result);
+    return toBuffer(stream);
+  }
+
+  @Override
+  public ByteBuffer encodeErrorEnvelope(String errorCode, String errorMessage, Object errorDetails) {
+    StandardMessageCodec.ExposedByteArrayOutputStream stream = new StandardMessageCodec.ExposedByteArrayOutputStream();
+    stream.write(1);
+    messageCodec.writeValue(stream, errorCode);
+    messageCodec.writeValue(stream, errorMessage);
+    messageCodec.writeValue(stream, errorDetails instanceof Throwable ? String.valueOf(errorDetails) : errorDetails);
+    return toBuffer(stream);
+  }
+
+  private static ByteBuffer toBuffer(StandardMessageCodec.ExposedByteArrayOutputStream stream) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(stream.size());
+    buffer.put(stream.buffer(), 0, stream.size());
+    return buffer;
+  }
+}
@@ -0,0 +1,90 @@
+package com.apptimize.apptimize_flutter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.apptimize.ApptimizeTestInfo;
+import com.apptimize.ApptimizeTestType;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class ApptimizeFlutterPluginTest {
+  private static final long DAY = 24 * 60 * 60 * 1000L;
+
+  private final DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm'Z'");
+
+  public ApptimizeFlutterPluginTest() {
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+  }
+
+  @Test
+  public void formatsDatesLikeSimpleDateFormat() {
+    // Steps by a prime number of minutes over 1583 to 9999, across leap years and month ends.
+    long end = 253402300799999L; // 9999-12-31T23:59:59.999Z
+    for (long millis = -12212553600000L; millis <= end; millis += 7919 * 60 * 1000L + 13) {
+      assertIso8601Date(millis);
+    }
+    assertIso8601Date(end);
+  }
+
+  @Test
+  public void formatsDatesBeforeTheGregorianReformInTheJulianCalendar() {
+    assertEquals("1582-10-15T00:00Z", ApptimizeFlutterPlugin.toIso8601Date(new Date(-12219292800000L)));
+    assertEquals("1582-10-04T00:00Z", ApptimizeFlutterPlugin.toIso8601Date(new Date(-12219292800000L - DAY)));
+    assertIso8601Date(-12219292800000L - 400 * 366 * DAY);
+  }
+
+  @Test
+  public void formatsYearsPast9999LikeSimpleDateFormat() {
+    assertIso8601Date(253402300800000L);
+    assertIso8601Date(253402300800000L + 100 * 366 * DAY);
+  }
+
+  @Test
+  public void reusesSerializedTestInfoOnlyForEqualValues() {
+    TestInfo testInfo = new TestInfo();
+    testInfo.enrolledDate = 1709635320000L;
+    Map serialized = ApptimizeFlutterPlugin.serializeApptimizeTestInfo(testInfo);
+
+    assertSame(serialized, ApptimizeFlutterPlugin.serializeApptimizeTestInfo(testInfo));
+
+    testInfo.enrolledDate += 60 * 60 * 1000L;
+    Map reenrolled = ApptimizeFlutterPlugin.serializeApptimizeTestInfo(testInfo);
+    assertNotSame(serialized, reenrolled);
+    assertEquals("2024-03-05T11:42Z", reenrolled.get("testEnrolledDate"));
+
+    testInfo.anonymousUserId = "other-anonymous-user";
+    assertEquals("other-anonymous-user", ApptimizeFlutterPlugin.serializeApptimizeTestInfo(testInfo).get("anonymousUserId"));
+  }
+
+  private void assertIso8601Date(long millis) {
+    assertEquals(format.format(new Date(millis)), ApptimizeFlutterPlugin.toIso8601Date(new Date(millis)));
+  }
+
+  /// A test info whose enrolled date and anonymous user id can change.
+  private static final class TestInfo implements ApptimizeTestInfo {
+    long enrolledDate;
+    String anonymousUserId = "anonymous-user";
+
+    @Override public String getTestName() { return "Test 7"; }
+    @Override public String getEnrolledVariantName() { return "Variant 9"; }
+    @Override public Long getTestId() { return 7L; }
+    @Override public Long getEnrolledVariantId() { return 9L; }
+    @Override public Date getTestStartedDate() { return new Date(1709600000000L); }
+    @Override public Date getTestEnrolledDate() { return new Date(enrolledDate); }
+    @Override public Long getCycle() { return 1L; }
+    @Override public Long getCurrentPhase() { return 1L; }
+    @Override public Long getParticipationPhase() { return 1L; }
+    @Override public boolean userHasParticipated() { return true; }
+    @Override public String getCustomerUserId() { return "customer-user"; }
+    @Override public String getAnonymousUserId() { return anonymousUserId; }
+    @Override public ApptimizeTestType getApptimizeTestType() { return ApptimizeTestType.CODE_BLOCK; }
+  }
+}
@@ -0,0 +1,75 @@
+package com.apptimize.apptimize_flutter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+import org.junit.Test;
+
+public class EventReplayTest {
+  private static final BinaryMessenger MESSENGER = new BinaryMessenger() {
+    @Override
+    public void send(String channel, ByteBuffer message) {
+    }
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {
+    }
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+    }
+  };
+
+  @Test
+  public void replaysEventsRecordedBetweenAttachingAndSubscribing() throws Exception {
+    EventReplay replay = new EventReplay();
+    replay.recordSticky("ApptimizeMetadataStateChanged");
+    EngineConnection engine = new EngineConnection(MESSENGER);
+    // Fired by the native start after the engine attached, before Dart listens to them.
+    replay.recordSticky("ApptimizeInitialized");
+    replay.recordSticky("ApptimizeMetadataStateChanged");
+
+    long sequence = replay.subscribe(engine, "ApptimizeInitialized");
+
+    assertTrue(engine.isSubscribed("ApptimizeInitialized"));
+    assertEquals(1, replay.entriesBefore("ApptimizeInitialized", sequence).size());
+    assertEquals(1, replay.entriesBefore("ApptimizeMetadataStateChanged", replay.subscribe(engine, "ApptimizeMetadataStateChanged")).size());
+  }
+
+  @Test
+  public void doesNotReplayEventsRecordedAfterSubscribing() throws Exception {
+    EventReplay replay = new EventReplay();
+    EngineConnection engine = new EngineConnection(MESSENGER);
+
+    long sequence = replay.subscribe(engine, "ApptimizeEnrolledInExperiment");
+    replay.recordEnrollment("ApptimizeEnrolledInExperiment", null, null);
+    replay.recordSticky("ApptimizeInitialized");
+
+    assertEquals(0, replay.entriesBefore("ApptimizeEnrolledInExperiment", sequence).size());
+  }
+
+  @Test
+  public void replaysEnrollmentsOldestFirst() throws Exception {
+    EventReplay replay = new EventReplay();
+    EngineConnection engine = new EngineConnection(MESSENGER);
+    for (int i = 0; i < EventReplay.ENROLLMENT_CAPACITY + 3; i++) {
+      replay.recordEnrollment(i % 2 == 0 ? "ApptimizeEnrolledInExperiment" : "ApptimizeUnenrolledInExperiment", null, null);
+    }
+
+    long sequence = replay.subscribe(engine, "ApptimizeEnrolledInExperiment");
+
+    long previous = -1;
+    int count = 0;
+    for (EventReplay.Entry entry : replay.entriesBefore("ApptimizeEnrolledInExperiment", sequence)) {
+      assertTrue(entry.sequence > previous);
+      assertEquals("ApptimizeEnrolledInExperiment", entry.method);
+      previous = entry.sequence;
+      count++;
+    }
+    assertEquals(EventReplay.ENROLLMENT_CAPACITY / 2, count);
+  }
+}
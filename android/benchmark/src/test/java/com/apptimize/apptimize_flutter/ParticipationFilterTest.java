@@ -0,0 +1,106 @@
+package com.apptimize.apptimize_flutter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ParticipationFilterTest {
+  private static final long MILLIS = 1000000L;
+
+  @Test
+  public void allSendsEveryParticipation() {
+    ParticipationFilter filter = new ParticipationFilter();
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(filter.shouldSend(7, i));
+    }
+    assertEquals(0, filter.filteredCount());
+  }
+
+  @Test
+  public void firstSendsOnlyTheFirstParticipationInEachTest() {
+    ParticipationFilter filter = new ParticipationFilter();
+    filter.setPolicy(ParticipationFilter.POLICY_FIRST, ParticipationFilter.DEFAULT_WINDOW_MILLIS);
+
+    assertTrue(filter.shouldSend(7, 0));
+    assertFalse(filter.shouldSend(7, 1));
+    assertFalse(filter.shouldSend(7, 10000 * MILLIS));
+    assertTrue(filter.shouldSend(0, 2));
+    assertTrue(filter.shouldSend(-7, 3));
+    assertFalse(filter.shouldSend(0, 4));
+    assertEquals(3, filter.filteredCount());
+  }
+
+  @Test
+  public void windowedSendsOneParticipationPerWindow() {
+    ParticipationFilter filter = new ParticipationFilter();
+    filter.setPolicy(ParticipationFilter.POLICY_WINDOWED, 100);
+
+    assertTrue(filter.shouldSend(7, 0));
+    assertFalse(filter.shouldSend(7, 99 * MILLIS));
+    assertTrue(filter.shouldSend(8, 99 * MILLIS));
+    assertTrue(filter.shouldSend(7, 100 * MILLIS));
+    // The window starts at the last participation sent, not the last one filtered.
+    assertFalse(filter.shouldSend(7, 150 * MILLIS));
+    assertTrue(filter.shouldSend(7, 200 * MILLIS));
+    assertEquals(2, filter.filteredCount());
+  }
+
+  @Test
+  public void windowsTooLongForNanosecondsNeverEnd() {
+    ParticipationFilter filter = new ParticipationFilter();
+    filter.setPolicy(ParticipationFilter.POLICY_WINDOWED, Long.MAX_VALUE / 1000);
+
+    assertTrue(filter.shouldSend(7, 0));
+    assertFalse(filter.shouldSend(7, Long.MAX_VALUE / 2));
+    assertEquals(Long.MAX_VALUE / 1000, filter.getWindowMillis());
+  }
+
+  @Test
+  public void resetMakesTheNextParticipationNew() {
+    ParticipationFilter filter = new ParticipationFilter();
+    filter.setPolicy(ParticipationFilter.POLICY_FIRST, ParticipationFilter.DEFAULT_WINDOW_MILLIS);
+
+    assertTrue(filter.shouldSend(7, 0));
+    filter.reset(7);
+    filter.reset(8);
+    assertTrue(filter.shouldSend(7, 1));
+    assertFalse(filter.shouldSend(7, 2));
+    assertTrue(filter.shouldSend(8, 3));
+  }
+
+  @Test
+  public void growingKeepsEveryTest() {
+    ParticipationFilter filter = new ParticipationFilter();
+    filter.setPolicy(ParticipationFilter.POLICY_FIRST, ParticipationFilter.DEFAULT_WINDOW_MILLIS);
+
+    // Ids a multiple of the table size apart, so that many of them collide before growing.
+    for (long testId = 0; testId < 1000; testId++) {
+      assertTrue(filter.shouldSend(testId * 16, testId));
+    }
+    for (long testId = 0; testId < 1000; testId++) {
+      assertFalse(filter.shouldSend(testId * 16, 1000 + testId));
+    }
+    assertEquals(1000, filter.filteredCount());
+
+    filter.reset(500 * 16);
+    assertTrue(filter.shouldSend(500 * 16, 2000));
+  }
+
+  @Test
+  public void settingThePolicyClearsEveryTest() {
+    ParticipationFilter filter = new ParticipationFilter();
+    filter.setPolicy(ParticipationFilter.POLICY_FIRST, ParticipationFilter.DEFAULT_WINDOW_MILLIS);
+    assertTrue(filter.shouldSend(7, 0));
+    assertFalse(filter.shouldSend(7, 1));
+
+    filter.setPolicy(ParticipationFilter.POLICY_FIRST, ParticipationFilter.DEFAULT_WINDOW_MILLIS);
+    assertTrue(filter.shouldSend(7, 2));
+
+    filter.setPolicy(ParticipationFilter.POLICY_ALL, ParticipationFilter.DEFAULT_WINDOW_MILLIS);
+    assertTrue(filter.shouldSend(7, 3));
+    assertTrue(filter.shouldSend(7, 4));
+  }
+}
@@ -0,0 +1,33 @@
+package com.apptimize.apptimize_flutter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+public class SnapshotWriterTest {
+  private static final long MINUTE = 60 * 1000;
+
+  @Test
+  public void writesDatesToTheMinuteLikeTheMapFormat() {
+    long minute = 1709635320000L; // 2024-03-05T10:42Z
+
+    assertArrayEquals(encodeDate(minute), encodeDate(minute + 59999));
+    assertEquals("2024-03-05T10:42Z", ApptimizeFlutterPlugin.toIso8601Date(new Date(minute + 59999)));
+  }
+
+  @Test
+  public void truncatesDatesBeforeTheEpochDownwards() {
+    assertArrayEquals(encodeDate(-MINUTE), encodeDate(-1));
+    assertEquals("1969-12-31T23:59Z", ApptimizeFlutterPlugin.toIso8601Date(new Date(-1)));
+  }
+
+  private static byte[] encodeDate(long millis) {
+    SnapshotWriter writer = new SnapshotWriter(SnapshotWriter.KIND_WINNER_INFO);
+    writer.beginRecord("k");
+    writer.writeDate(SnapshotWriter.WINNER_INFO_START_DATE, new Date(millis));
+    return writer.toByteArray();
+  }
+}
@@ -0,0 +1,81 @@
+package com.apptimize.apptimize_flutter;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Starts Apptimize natively, before the Flutter engine runs any Dart code, so that SDK setup and
+ * the metadata download overlap with engine and isolate startup. Call one of the `start` methods
+ * from `Application.onCreate`. A later `Apptimize.startApptimize` call from Dart with the same app
+ * key then joins this startup, applying only its participation options.
+ *
+ * `start(Context)` reads the app key and options from the application's manifest metadata, using
+ * the names and values of Dart's `ApptimizeOptions`:
+ *
+ *   <meta-data android:name="com.apptimize.flutter.appKey" android:value="..." />
+ *   <meta-data android:name="com.apptimize.flutter.logLevel" android:value="Debug" />
+ *
+ * Options must have the type Dart sends them with, for example `true` rather than `"true"` for
+ * bool options. Errors are logged rather than thrown.
+ */
+public final class ApptimizeFlutterInitializer {
+  static final String META_DATA_PREFIX = "com.apptimize.flutter.";
+
+  private static final String TAG = "ApptimizeFlutterPlugin";
+
+  private ApptimizeFlutterInitializer() {
+  }
+
+  /// Starts Apptimize with the app key and options in the application's manifest metadata. Missing
+  /// or invalid metadata is logged and Apptimize is not started, as this runs while the application
+  /// is created.
+  public static void start(Context context) {
+    Bundle metaData;
+    try {
+      metaData = context.getPackageManager().getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA).metaData;
+    } catch (PackageManager.NameNotFoundException e) {
+      Log.e(TAG, "Could not read the application's <meta-data>, not starting Apptimize", e);
+      return;
+    }
+
+    HashMap<String, Object> options = new HashMap<String, Object>();
+    String appKey = null;
+    if (metaData != null) {
+      for (String key : metaData.keySet()) {
+        if (!key.startsWith(META_DATA_PREFIX)) continue;
+
+        String name = key.substring(META_DATA_PREFIX.length());
+        if (name.equals("appKey")) {
+          appKey = String.valueOf(metaData.get(key));
+        } else {
+          options.put(name, metaData.get(key));
+        }
+      }
+    }
+    if (appKey == null) {
+      Log.e(TAG, "Missing <meta-data> " + META_DATA_PREFIX + "appKey, not starting Apptimize");
+      return;
+    }
+
+    start(context, appKey, options);
+  }
+
+  /// Starts Apptimize with `appKey` and `options`, keyed by the names of Dart's `ApptimizeOptions`.
+  /// An option of the wrong type is logged and Apptimize is not started.
+  public static void start(Context context, String appKey, Map<String, Object> options) {
+    try {
+      ArrayList<String> ignoredOptions = ApptimizeFlutterPlugin.startApptimize(context.getApplicationContext(), appKey, options);
+      if (!ignoredOptions.isEmpty()) {
+        Log.w(TAG, "Apptimize was already started, ignoring options " + ignoredOptions);
+      }
+    } catch (InvalidPluginArgumentException e) {
+      Log.e(TAG, "Not starting Apptimize", e);
+    }
+  }
+}
@@ -1,7 +1,6 @@
 package com.apptimize.apptimize_flutter;
 
 import android.content.Context;
-import android.util.Log;
 
 import com.apptimize.Apptimize;
 import com.apptimize.ApptimizeInstantUpdateOrWinnerInfo;
@@ -14,11 +13,14 @@ import com.apptimize.ApptimizeVar;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -32,17 +34,6 @@ import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
 
-class InvalidPluginArgumentException extends Exception {
-  public InvalidPluginArgumentException(String argument, String value) {
-    super("Invalid ApptimizeFlutterPlugin argument value '" + value + "' for '" + argument + "'");
-  }
-}
-class MissingPluginArgumentException extends Exception {
-  public MissingPluginArgumentException(String argument) {
-    super("Missing ApptimizeFlutterPlugin argument '" + argument + "'");
-  }
-}
-
 /** ApptimizeFlutterPlugin */
 public class ApptimizeFlutterPlugin implements FlutterPlugin, MethodCallHandler, ActivityAware {
   /// The MethodChannel that will the communication between Flutter and native Android
@@ -50,50 +41,120 @@ public class ApptimizeFlutterPlugin implements FlutterPlugin, MethodCallHandler,
   /// This local reference serves to register the plugin with the Flutter Engine and unregister it
   /// when the Flutter Engine is detached from the Activity
   private MethodChannel channel;
+  private EngineConnection engine;
   private Context context = null;
 
   private static boolean isOffline = false;
-  private static final String TAG = "ApptimizeFlutterPlugin";
-  private static ConcurrentHashMap<String, Object> declaredApptimizeVariables = new ConcurrentHashMap<String, Object>();
-  private static CopyOnWriteArrayList<MethodChannel> allChannels = new CopyOnWriteArrayList<>();
+  private static final DynamicVariableRegistry declaredApptimizeVariables = new DynamicVariableRegistry();
+  private static final DynamicVariableManifest dynamicVariableManifest = new DynamicVariableManifest();
+  private static final PersistedSnapshot persistedSnapshot = new PersistedSnapshot(declaredApptimizeVariables);
+  private static CopyOnWriteArrayList<EngineConnection> allEngines = new CopyOnWriteArrayList<>();
+  private static volatile boolean isBackgroundDispatchEnabled = false;
+  private static CopyOnWriteArrayList<EngineConnection> dynamicVariableCacheEngines = new CopyOnWriteArrayList<>();
+  private static final HashMap<Integer, Object> pushedDynamicVariableValues = new HashMap<Integer, Object>();
+  private static long dynamicVariableSnapshotVersion = 0;
+  private static BackgroundDispatcher backgroundDispatcher = null;
+  private static final PluginMetrics pluginMetrics = new PluginMetrics();
+  private static final EventDispatcher eventDispatcher = new EventDispatcher(pluginMetrics);
+  private static final EventReplay eventReplay = new EventReplay();
+  private static final ParticipationFilter participationFilter = new ParticipationFilter();
+  private static final TestInfoTracker testInfoTracker = new TestInfoTracker();
+  /// Methods which may change which tests the user is enrolled in. Enrollment changes the SDK
+  /// reports itself, and participations, invalidate the test info from its listeners.
+  private static final Set<String> TEST_INFO_CHANGING_METHODS = new HashSet<String>(Arrays.asList(
+      "startApptimize",
+      "disable",
+      "setCustomerUserId",
+      "setPilotTargetingId",
+      "setUserAttribute",
+      "setUserAttributes",
+      "removeUserAttribute",
+      "removeAllUserAttributes",
+      "forceVariant",
+      "clearForcedVariant",
+      "clearAllForcedVariants"
+  ));
+  private static final int MAX_SERIALIZED_TEST_INFO_CACHE_SIZE = 256;
+  private static final ConcurrentHashMap<TestInfoKey, HashMap> serializedTestInfoCache = new ConcurrentHashMap<TestInfoKey, HashMap>();
+  private static final FeatureFlagSubscriptions featureFlagSubscriptions = new FeatureFlagSubscriptions();
+  private static final UserAttributeMirror writtenUserAttributes = new UserAttributeMirror();
+  private static final StartupPipeline startupPipeline = new StartupPipeline(new Runnable() {
+    public void run() {
+      eventReplay.recordSticky("ApptimizeStartupTiming");
+      if (eventDispatcher.hasSubscribers("ApptimizeStartupTiming", allEngines)) {
+        eventDispatcher.dispatchLatest("ApptimizeStartupTiming", startupPipeline.getTimestamps(), allEngines);
+      }
+    }
+  });
+
+  /// Only set on the SDK while it is needed, see `updateTestRunListener`.
+  private static final Apptimize.OnTestRunListener testRunListener = new Apptimize.OnTestRunListener() {
+    @Override
+    public void onTestRun(ApptimizeTestInfo apptimizeTestInfo, Apptimize.IsFirstTestRun isFirstTestRun) {
+      testInfoTracker.invalidate();
+      if (!eventDispatcher.hasSubscribers("ApptimizeParticipatedInExperiment", allEngines)) return;
+      if (!participationFilter.shouldSend(apptimizeTestInfo.getTestId(), System.nanoTime())) return;
+
+      HashMap arguments = new HashMap();
+      arguments.put("testInfo", serializeApptimizeTestInfo(apptimizeTestInfo));
+      arguments.put("firstParticipation", isFirstTestRun == Apptimize.IsFirstTestRun.YES);
+      eventDispatcher.dispatch("ApptimizeParticipatedInExperiment", arguments, allEngines);
+    }
+  };
+  private static boolean isTestRunListenerSet = false;
+  private static volatile boolean isTestInfoTracked = false;
 
   static {
     Apptimize.addMetadataStateChangedListener(new Apptimize.MetadataStateChangedListener() {
       @Override
       public void onMetadataStateChanged(EnumSet<Apptimize.ApptimizeMetadataStateFlags> enumSet) {
-        HashMap arguments = new HashMap();
-        arguments.put("isAvailable", enumSet.contains(Apptimize.ApptimizeMetadataStateFlags.AVAILABLE));
-        arguments.put("isUpToDate", enumSet.contains(Apptimize.ApptimizeMetadataStateFlags.UP_TO_DATE));
-        arguments.put("isRefreshing", enumSet.contains(Apptimize.ApptimizeMetadataStateFlags.REFRESHING));
-        for (MethodChannel channel : allChannels) {
-          channel.invokeMethod("ApptimizeMetadataStateChanged", arguments, null);
+        if (enumSet.contains(Apptimize.ApptimizeMetadataStateFlags.UP_TO_DATE)) {
+          startupPipeline.recordPhase(StartupPipeline.PHASE_METADATA_UP_TO_DATE);
         }
+        testInfoTracker.invalidate();
+        eventReplay.recordSticky("ApptimizeMetadataStateChanged");
+        if (!eventDispatcher.hasSubscribers("ApptimizeMetadataStateChanged", allEngines)) return;
+
+        eventDispatcher.dispatchLatest("ApptimizeMetadataStateChanged", serializeMetadataState(enumSet), allEngines);
       }
 
       @Override
       public void onApptimizeForegrounded(boolean b) {
+        if (!eventDispatcher.hasSubscribers("ApptimizeResumed", allEngines)) return;
+
         HashMap arguments = new HashMap();
         arguments.put("willRefreshMetadata", b);
-        for (MethodChannel channel : allChannels) {
-          channel.invokeMethod("ApptimizeResumed", arguments, null);
-        }
+        eventDispatcher.dispatch("ApptimizeResumed", arguments, allEngines);
       }
     });
 
     Apptimize.addOnExperimentsProcessedListener(new Apptimize.OnExperimentsProcessedListener() {
       @Override
       public void onExperimentsProcessed() {
-        for (MethodChannel channel : allChannels) {
-          channel.invokeMethod("ApptimizeTestsProcessed", null, null);
+        startupPipeline.recordPhase(StartupPipeline.PHASE_EXPERIMENTS_PROCESSED);
+        serializedTestInfoCache.clear();
+        testInfoTracker.invalidate();
+        HashMap persistedValueChanges = persistedSnapshot.replace();
+        eventReplay.recordSticky("ApptimizeTestsProcessed");
+        if (eventDispatcher.hasSubscribers("ApptimizeTestsProcessed", allEngines)) {
+          eventDispatcher.dispatchLatest("ApptimizeTestsProcessed", null, allEngines);
+        }
+        if (persistedValueChanges != null && eventDispatcher.hasSubscribers("ApptimizePersistedValuesChanged", allEngines)) {
+          eventDispatcher.dispatchState("ApptimizePersistedValuesChanged", persistedValueChanges, allEngines);
         }
+        pushChangedDynamicVariableValues();
+        pushChangedFeatureFlags();
+        savePersistedSnapshot();
       }
     });
 
     Apptimize.setOnApptimizeInitializedListener(new Apptimize.OnApptimizeInitializedListener() {
       @Override
       public void onApptimizeInitialized() {
-        for (MethodChannel channel : allChannels) {
-          channel.invokeMethod("ApptimizeInitialized", null, null);
+        startupPipeline.recordPhase(StartupPipeline.PHASE_INITIALIZED);
+        eventReplay.recordSticky("ApptimizeInitialized");
+        if (eventDispatcher.hasSubscribers("ApptimizeInitialized", allEngines)) {
+          eventDispatcher.dispatch("ApptimizeInitialized", null, allEngines);
         }
       }
     });
@@ -101,50 +162,91 @@ public class ApptimizeFlutterPlugin implements FlutterPlugin, MethodCallHandler,
     Apptimize.setOnTestEnrollmentChangedListener(new Apptimize.OnTestEnrollmentChangedListener() {
       @Override
       public void onEnrolledInTest(ApptimizeTestInfo apptimizeTestInfo) {
-        HashMap arguments = new HashMap();
-        arguments.put("testInfo", serializeApptimizeTestInfo(apptimizeTestInfo));
-        for (MethodChannel channel : allChannels) {
-          channel.invokeMethod("ApptimizeEnrolledInExperiment", arguments, null);
+        testInfoTracker.invalidate();
+        eventReplay.recordEnrollment("ApptimizeEnrolledInExperiment", apptimizeTestInfo, null);
+        participationFilter.reset(apptimizeTestInfo.getTestId());
+        if (eventDispatcher.hasSubscribers("ApptimizeEnrolledInExperiment", allEngines)) {
+          eventDispatcher.dispatch("ApptimizeEnrolledInExperiment", enrollmentArguments(apptimizeTestInfo, null), allEngines);
         }
+        pushChangedDynamicVariableValues();
+        pushChangedFeatureFlags();
       }
 
       @Override
       public void onUnenrolledInTest(ApptimizeTestInfo apptimizeTestInfo, Apptimize.UnenrollmentReason unenrollmentReason) {
-        HashMap arguments = new HashMap();
-        arguments.put("testInfo", serializeApptimizeTestInfo(apptimizeTestInfo));
-        arguments.put("unenrollmentReason", serializeUnenrollmentReason(unenrollmentReason));
-        for (MethodChannel channel : allChannels) {
-          channel.invokeMethod("ApptimizeUnenrolledInExperiment", arguments, null);
+        testInfoTracker.invalidate();
+        eventReplay.recordEnrollment("ApptimizeUnenrolledInExperiment", apptimizeTestInfo, unenrollmentReason);
+        participationFilter.reset(apptimizeTestInfo.getTestId());
+        if (eventDispatcher.hasSubscribers("ApptimizeUnenrolledInExperiment", allEngines)) {
+          eventDispatcher.dispatch("ApptimizeUnenrolledInExperiment", enrollmentArguments(apptimizeTestInfo, unenrollmentReason), allEngines);
         }
+        pushChangedDynamicVariableValues();
+        pushChangedFeatureFlags();
       }
     });
+  }
 
-    Apptimize.setOnTestRunListener(new Apptimize.OnTestRunListener() {
-      @Override
-      public void onTestRun(ApptimizeTestInfo apptimizeTestInfo, Apptimize.IsFirstTestRun isFirstTestRun) {
-        HashMap arguments = new HashMap();
-        arguments.put("testInfo", serializeApptimizeTestInfo(apptimizeTestInfo));
-        arguments.put("firstParticipation", isFirstTestRun == Apptimize.IsFirstTestRun.YES);
-        for (MethodChannel channel : allChannels) {
-          channel.invokeMethod("ApptimizeParticipatedInExperiment", arguments, null);
-        }
+  private static HashMap<String, Object> getEventDispatchStats() {
+    HashMap<String, Object> stats = eventDispatcher.getStats();
+    stats.put("filteredParticipations", participationFilter.filteredCount());
+    return stats;
+  }
+
+  /// Sets the SDK's test run listener while an engine listens to participation events or test info
+  /// changes are tracked, and clears it otherwise. Participations are by far the most frequent SDK
+  /// callback, and nothing else needs them.
+  private static synchronized void updateTestRunListener() {
+    boolean isNeeded = isTestInfoTracked || EventDispatcher.isAnySubscribed(allEngines, "ApptimizeParticipatedInExperiment");
+    if (isNeeded == isTestRunListenerSet) return;
+
+    Apptimize.setOnTestRunListener(isNeeded ? testRunListener : null);
+    isTestRunListenerSet = isNeeded;
+  }
+
+  /// Sends `engine` the `event` events recorded before `sequence`, when it first listens to them.
+  /// State events are rebuilt from the current state. The replayed events are queued like any
+  /// state event, so they reach Dart in a single `ApptimizeEventBatch` message and are never
+  /// dropped, as they are only replayed once.
+  private static void replayEvents(EngineConnection engine, String event, long sequence) {
+    for (EventReplay.Entry entry : eventReplay.entriesBefore(event, sequence)) {
+      Object arguments = null;
+      if (entry.testInfo != null) {
+        arguments = enrollmentArguments(entry.testInfo, entry.unenrollmentReason);
+      } else if (event.equals("ApptimizeMetadataStateChanged")) {
+        arguments = serializeMetadataState(Apptimize.getMetadataState());
+      } else if (event.equals("ApptimizeStartupTiming")) {
+        arguments = startupPipeline.getTimestamps();
       }
-    });
+      eventDispatcher.dispatchState(event, arguments, engine.singleTarget);
+    }
   }
 
   @Override
   public void onAttachedToEngine(@NonNull FlutterPluginBinding flutterPluginBinding) {
-    channel = new MethodChannel(flutterPluginBinding.getBinaryMessenger(), "apptimize_flutter");
+    engine = new EngineConnection(flutterPluginBinding.getBinaryMessenger());
+    channel = engine.channel;
     channel.setMethodCallHandler(this);
+    engine.setFastPathHandler(new FastPathChannel(declaredApptimizeVariables, pluginMetrics));
     context = flutterPluginBinding.getApplicationContext();
-    allChannels.add(channel);
+    // Loaded before Dart can read anything, so that no read is answered with the SDK's defaults
+    // while the snapshot is still loading. The file only holds the values Dart read, so it is small.
+    persistedSnapshot.load(context.getFilesDir());
+    dynamicVariableManifest.load(context.getAssets(),
+        flutterPluginBinding.getFlutterAssets().getAssetFilePathByName(DynamicVariableManifest.ASSET_NAME));
+    allEngines.add(engine);
   }
 
   @Override
   public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
     channel.setMethodCallHandler(null);
-    allChannels.remove(channel);
+    engine.setFastPathHandler(null);
+    allEngines.remove(engine);
+    dynamicVariableCacheEngines.remove(engine);
+    featureFlagSubscriptions.unsubscribeAll(engine);
+    updateTestRunListener();
+    savePersistedSnapshot();
     channel = null;
+    engine = null;
   }
 
   @Override
@@ -164,333 +266,709 @@ public class ApptimizeFlutterPlugin implements FlutterPlugin, MethodCallHandler,
   }
 
   @Override
-  public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
-    Object resultValue = null;
+  public void onMethodCall(@NonNull final MethodCall call, @NonNull final Result result) {
+    boolean isBackgroundCall = isBackgroundDispatchEnabled && !call.method.equals("setBackgroundDispatchEnabled");
+    if (isBackgroundCall || BackgroundDispatcher.isAlwaysBackgroundMethod(call.method) || isBlockingRunTestAsync(call)) {
+      final Result mainThreadResult = getBackgroundDispatcher().onMainThread(result);
+      getBackgroundDispatcher().dispatch(call.method, new Runnable() {
+        public void run() {
+          replyToMethodCall(call, mainThreadResult);
+        }
+      });
+      return;
+    }
+
+    replyToMethodCall(call, result);
+  }
+
+  /// `runTestAsync` runs on the platform thread while metadata is available, as the test is then
+  /// selected right away. Otherwise Apptimize may wait for metadata, so it is run in the background.
+  private static boolean isBlockingRunTestAsync(@NonNull MethodCall call) {
+    if (!call.method.equals("runTestAsync")) return false;
+
+    EnumSet<Apptimize.ApptimizeMetadataStateFlags> metadataState = Apptimize.getMetadataState();
+    return metadataState == null || !metadataState.contains(Apptimize.ApptimizeMetadataStateFlags.AVAILABLE);
+  }
+
+  private static synchronized BackgroundDispatcher getBackgroundDispatcher() {
+    if (backgroundDispatcher == null) {
+      backgroundDispatcher = new BackgroundDispatcher();
+    }
+    return backgroundDispatcher;
+  }
 
+  /// Persists the values Dart read so far on the serial background thread.
+  private static void savePersistedSnapshot() {
+    getBackgroundDispatcher().dispatch("persistSnapshot", new Runnable() {
+      public void run() {
+        persistedSnapshot.save();
+      }
+    });
+  }
+
+  private void replyToMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+    long startNanos = System.nanoTime();
     try {
-      switch (call.method) {
-        case "startApptimize":
-          startApptimize(call);
-          break;
+      Object resultValue = handleMethodCall(call);
+      pluginMetrics.recordCall(call.method, startNanos, null);
+      result.success(resultValue);
+    }
+    catch (UnknownPluginMethodException e) {
+      pluginMetrics.recordCall(call.method, startNanos, "NOT_IMPLEMENTED");
+      result.notImplemented();
+    }
+    catch (InvalidPluginArgumentException e) {
+      pluginMetrics.recordCall(call.method, startNanos, "INVALID_ARGUMENT");
+      result.error("INVALID_ARGUMENT", e.getMessage(), e);
+    }
+    catch (MissingPluginArgumentException e) {
+      pluginMetrics.recordCall(call.method, startNanos, "ARGUMENT_MISSING");
+      result.error("ARGUMENT_MISSING", e.getMessage(), e);
+    }
+    catch (Exception e) {
+      pluginMetrics.recordCall(call.method, startNanos, "UNKNOWN");
+      result.error("UNKNOWN", e.getMessage(), e);
+    }
+  }
 
-        case "setCustomerUserId":
-          guardArgumentPresent(call, "customerUserId");
-          String customerUserId = call.argument("customerUserId");
-          Apptimize.setCustomerUserId(customerUserId);
-          break;
+  private Object handleMethodCall(@NonNull MethodCall call) throws Exception {
+    Object resultValue = null;
 
-        case "getCustomerUserId":
-          resultValue = Apptimize.getCustomerUserId();
-          break;
+    switch (call.method) {
+      case "startApptimize":
+        resultValue = startApptimize(call);
+        break;
 
-        case "getApptimizeAnonUserId":
-          resultValue = Apptimize.getApptimizeAnonUserId();
-          break;
+      case "setCustomerUserId":
+        guardArgumentPresent(call, "customerUserId");
+        String customerUserId = call.argument("customerUserId");
+        Apptimize.setCustomerUserId(customerUserId);
+        writtenUserAttributes.clear();
+        break;
 
-        case "disable":
-          Apptimize.disable();
-          break;
+      case "getCustomerUserId":
+        resultValue = Apptimize.getCustomerUserId();
+        break;
 
-        case "setOffline":
-          guardArgumentPresent(call, "isOffline");
-          Boolean isOffline = call.argument("isOffline");
-          Apptimize.setOffline(isOffline);
-          break;
+      case "getApptimizeAnonUserId":
+        resultValue = Apptimize.getApptimizeAnonUserId();
+        break;
 
-        case "getOffline":
-          resultValue = Apptimize.isOffline();
-          break;
+      case "disable":
+        Apptimize.disable();
+        break;
 
-        case "getMetadataState":
-          EnumSet<Apptimize.ApptimizeMetadataStateFlags> metadataState = Apptimize.getMetadataState();
-          HashMap metadataStateResult = new HashMap();
-          metadataStateResult.put("isAvailable", metadataState.contains(Apptimize.ApptimizeMetadataStateFlags.AVAILABLE));
-          metadataStateResult.put("isUpToDate", metadataState.contains(Apptimize.ApptimizeMetadataStateFlags.UP_TO_DATE));
-          metadataStateResult.put("isRefreshing", metadataState.contains(Apptimize.ApptimizeMetadataStateFlags.REFRESHING));
-          resultValue = metadataStateResult;
-          break;
+      case "setOffline":
+        guardArgumentPresent(call, "isOffline");
+        Boolean isOffline = call.argument("isOffline");
+        Apptimize.setOffline(isOffline);
+        break;
 
-        case "track":
-          guardArgumentPresent(call, "eventName");
-          String eventName = call.argument("eventName");
-          Object value = null;
+      case "getOffline":
+        resultValue = Apptimize.isOffline();
+        break;
 
-          if (call.hasArgument("value")) {
-            value = call.argument("value");
-          }
+      case "getMetadataState":
+        resultValue = serializeMetadataState(Apptimize.getMetadataState());
+        break;
 
-          if (value != null) {
-            Apptimize.track(eventName, (double)value);
-          } else {
-            Apptimize.track(eventName);
-          }
-          break;
+      case "track":
+        guardArgumentPresent(call, "eventName");
+        String eventName = call.argument("eventName");
+        Object value = null;
 
-        case "getLibraryVersion":
-          String version = Apptimize.getVersion();
-          resultValue = version + " (Android)";
-          break;
+        if (call.hasArgument("value")) {
+          value = call.argument("value");
+        }
 
-        case "setPilotTargetingId":
-          guardArgumentPresent(call, "pilotTargetingId");
-          String pilotTargetingId = call.argument("pilotTargetingId");
-          Apptimize.setPilotTargetingId(pilotTargetingId);
-          break;
+        if (value != null) {
+          Apptimize.track(eventName, (double)value);
+        } else {
+          Apptimize.track(eventName);
+        }
+        break;
 
-        case "getPilotTargetingId":
-          resultValue = Apptimize.getPilotTargetingId();
-          break;
+      case "trackBatch":
+        resultValue = trackBatch(call);
+        break;
 
-        case "runTest":
-          resultValue = runTest(call);
-          break;
+      case "getLibraryVersion":
+        String version = Apptimize.getVersion();
+        resultValue = version + " (Android)";
+        break;
 
-        case "isFeatureFlagOn":
-          guardArgumentPresent(call, "featureFlagName");
-          String isFeatureFlagOn = call.argument("featureFlagName");
-          resultValue = Apptimize.isFeatureFlagOn(isFeatureFlagOn);
-          break;
+      case "setPilotTargetingId":
+        guardArgumentPresent(call, "pilotTargetingId");
+        String pilotTargetingId = call.argument("pilotTargetingId");
+        Apptimize.setPilotTargetingId(pilotTargetingId);
+        break;
 
-        case "getApptimizeTestInfo":
-          Map<String, ApptimizeTestInfo> testInfo = Apptimize.getTestInfo();
-          HashMap testInfoResult = new HashMap();
-          for (Map.Entry<String, ApptimizeTestInfo> entry : testInfo.entrySet()) {
-            testInfoResult.put(entry.getKey(), serializeApptimizeTestInfo(entry.getValue()));
-          }
-          resultValue = testInfoResult;
-          break;
+      case "getPilotTargetingId":
+        resultValue = Apptimize.getPilotTargetingId();
+        break;
 
-        case "getInstantUpdateAndWinnerInfo":
-          Map<String, ApptimizeInstantUpdateOrWinnerInfo> winnerInfo = Apptimize.getInstantUpdateOrWinnerInfo();
-          HashMap winnerInfoResult = new HashMap();
-          for (Map.Entry<String, ApptimizeInstantUpdateOrWinnerInfo> entry : winnerInfo.entrySet()) {
-            winnerInfoResult.put(entry.getKey(), serializeApptimizeInstantUpdateOrWinnerInfo(entry.getValue()));
-          }
-          resultValue = winnerInfoResult;
-          break;
+      case "runTest":
+      case "runTestAsync":
+        resultValue = runTest(call);
+        break;
 
-        case "setUserAttribute": {
-          guardArgumentPresent(call, "type");
-          guardArgumentPresent(call, "attributeName");
-          guardArgumentPresent(call, "attributeValue");
-
-          String type = call.argument("type");
-          String attributeName = call.argument("attributeName");
-          Object attributeValue = call.argument("attributeValue");
-
-          switch (type) {
-            case "string":
-              Apptimize.setUserAttribute(attributeName, (String) attributeValue);
-              break;
-            case "int":
-              Apptimize.setUserAttribute(attributeName, (int) attributeValue);
-              break;
-            case "double":
-              Apptimize.setUserAttribute(attributeName, (double) attributeValue);
-              break;
-            case "bool":
-              Apptimize.setUserAttribute(attributeName, (Boolean) attributeValue);
-              break;
-            default:
-              throw new InvalidPluginArgumentException("type", type);
-          }
+      case "isFeatureFlagOn":
+        guardArgumentPresent(call, "featureFlagName");
+        String isFeatureFlagOn = call.argument("featureFlagName");
+        resultValue = isFeatureFlagOn(isFeatureFlagOn);
+        break;
+
+      case "areFeatureFlagsOn": {
+        Object subscriptionId = call.argument("subscriptionId");
+        if (subscriptionId instanceof Integer) {
+          FeatureFlagSubscriptions.Subscription subscription = featureFlagSubscriptions.get(engine, (Integer) subscriptionId);
+          if (subscription == null) throw new InvalidPluginArgumentException("subscriptionId", subscriptionId.toString());
+          resultValue = FeatureFlagSubscriptions.evaluate(subscription.names);
           break;
         }
 
-        case "removeUserAttribute": {
-          guardArgumentPresent(call, "attributeName");
-          String attributeName = call.argument("attributeName");
-          Apptimize.clearUserAttribute(attributeName);
-          break;
+        guardArgumentPresent(call, "featureFlagNames");
+        List<String> featureFlagNames = call.argument("featureFlagNames");
+        if (featureFlagNames == null) throw new MissingPluginArgumentException("featureFlagNames");
+        resultValue = FeatureFlagSubscriptions.evaluate(featureFlagNames);
+        break;
+      }
+
+      case "subscribeFeatureFlags": {
+        guardArgumentPresent(call, "featureFlagNames");
+        List<String> featureFlagNames = call.argument("featureFlagNames");
+        if (featureFlagNames == null) throw new MissingPluginArgumentException("featureFlagNames");
+        FeatureFlagSubscriptions.Subscription subscription = featureFlagSubscriptions.subscribe(engine, featureFlagNames);
+        HashMap subscriptionResult = new HashMap();
+        subscriptionResult.put("subscriptionId", subscription.id);
+        subscriptionResult.put("bits", subscription.bits);
+        resultValue = subscriptionResult;
+        break;
+      }
+
+      case "unsubscribeFeatureFlags": {
+        guardArgumentPresent(call, "subscriptionId");
+        Integer subscriptionId = call.argument("subscriptionId");
+        if (subscriptionId != null) {
+          featureFlagSubscriptions.unsubscribe(engine, subscriptionId);
         }
+        break;
+      }
 
-        case "removeAllUserAttributes":
-          Apptimize.clearAllUserAttributes();
+      case "getApptimizeTestInfo":
+        Map<String, ApptimizeTestInfo> testInfo = Apptimize.getTestInfo();
+        if (testInfo != null && isCompactFormatRequested(call)) {
+          resultValue = encodeApptimizeTestInfo(testInfo);
           break;
+        }
+        HashMap testInfoResult = new HashMap();
+        for (Map.Entry<String, ApptimizeTestInfo> entry : testInfo.entrySet()) {
+          testInfoResult.put(entry.getKey(), serializeApptimizeTestInfo(entry.getValue()));
+        }
+        resultValue = testInfoResult;
+        break;
 
-        case "getUserAttribute": {
-          guardArgumentPresent(call, "type");
-          guardArgumentPresent(call, "attributeName");
-          String type = call.argument("type");
-          String attributeName = call.argument("attributeName");
-
-          switch (type) {
-            case "string":
-              resultValue = Apptimize.getUserAttributeString(attributeName);
-              break;
-            case "int":
-              resultValue = Apptimize.getUserAttributeInteger(attributeName);
-              // To ensure consistent behaviour with iOS, return default values.
-              if (resultValue == null) { resultValue = 0; }
-              break;
-            case "double":
-              resultValue = Apptimize.getUserAttributeDouble(attributeName);
-              // To ensure consistent behaviour with iOS, return default values.
-              if (resultValue == null) { resultValue = 0.0; }
-              break;
-            case "bool":
-              resultValue = Apptimize.getUserAttributeBoolean(attributeName);
-              // To ensure consistent behaviour with iOS, return default values.
-              if (resultValue == null) resultValue = false;
-              break;
-            default:
-              throw new InvalidPluginArgumentException("type", type);
+      case "getApptimizeTestInfoChanges": {
+        if (!isTestInfoTracked) {
+          // Participations change test info, so the tracker needs the test run listener from now on.
+          isTestInfoTracked = true;
+          updateTestRunListener();
+          testInfoTracker.invalidate();
+        }
+        Object sinceVersion = call.argument("sinceVersion");
+        TestInfoTracker.Changes changes = testInfoTracker.changesSince(sinceVersion instanceof Number ? ((Number) sinceVersion).longValue() : 0);
+        if (changes == null) break;
+
+        HashMap changesResult = new HashMap();
+        changesResult.put("version", changes.version);
+        if (changes.isFullSnapshot) {
+          changesResult.put("full", true);
+        }
+        if (!changes.changed.isEmpty() || changes.isFullSnapshot) {
+          if (isCompactFormatRequested(call)) {
+            changesResult.put("changed", encodeApptimizeTestInfo(changes.changed));
+          } else {
+            HashMap changed = new HashMap();
+            for (Map.Entry<String, ApptimizeTestInfo> entry : changes.changed.entrySet()) {
+              changed.put(entry.getKey(), serializeApptimizeTestInfo(entry.getValue()));
+            }
+            changesResult.put("changed", changed);
           }
+        }
+        if (!changes.removed.isEmpty()) {
+          changesResult.put("removed", changes.removed);
+        }
+        resultValue = changesResult;
+        break;
+      }
+
+      case "getInstantUpdateAndWinnerInfo":
+        Map<String, ApptimizeInstantUpdateOrWinnerInfo> winnerInfo = Apptimize.getInstantUpdateOrWinnerInfo();
+        if (winnerInfo != null && isCompactFormatRequested(call)) {
+          resultValue = encodeApptimizeInstantUpdateOrWinnerInfo(winnerInfo);
           break;
         }
+        HashMap winnerInfoResult = new HashMap();
+        for (Map.Entry<String, ApptimizeInstantUpdateOrWinnerInfo> entry : winnerInfo.entrySet()) {
+          winnerInfoResult.put(entry.getKey(), serializeApptimizeInstantUpdateOrWinnerInfo(entry.getValue()));
+        }
+        resultValue = winnerInfoResult;
+        break;
 
-        case "forceVariant": {
-          guardArgumentPresent(call, "variantId");
+      case "setUserAttribute": {
+        guardArgumentPresent(call, "type");
+        guardArgumentPresent(call, "attributeName");
+        guardArgumentPresent(call, "attributeValue");
+
+        String type = call.argument("type");
+        String attributeName = call.argument("attributeName");
+        Object attributeValue = call.argument("attributeValue");
+
+        switch (type) {
+          case "string":
+            Apptimize.setUserAttribute(attributeName, (String) attributeValue);
+            break;
+          case "int":
+            Apptimize.setUserAttribute(attributeName, (int) attributeValue);
+            break;
+          case "double":
+            Apptimize.setUserAttribute(attributeName, (double) attributeValue);
+            break;
+          case "bool":
+            Apptimize.setUserAttribute(attributeName, (Boolean) attributeValue);
+            break;
+          default:
+            throw new InvalidPluginArgumentException("type", type);
+        }
+        writtenUserAttributes.record(attributeName, attributeValue);
+        break;
+      }
 
-          Object variantId = call.argument("variantId");
-          if (variantId instanceof Integer) {
-            Integer v = (Integer) variantId;
-            Apptimize.forceVariant(v.longValue());
-          } else if (variantId instanceof Long) {
-            Long v = (Long) variantId;
-            Apptimize.forceVariant(v.longValue());
-          }
-          break;
+      case "setUserAttributes":
+        resultValue = setUserAttributes(call);
+        break;
+
+      case "removeUserAttribute": {
+        guardArgumentPresent(call, "attributeName");
+        String attributeName = call.argument("attributeName");
+        Apptimize.clearUserAttribute(attributeName);
+        writtenUserAttributes.record(attributeName, null);
+        break;
+      }
+
+      case "removeAllUserAttributes":
+        Apptimize.clearAllUserAttributes();
+        writtenUserAttributes.clear();
+        break;
+
+      case "getUserAttribute": {
+        guardArgumentPresent(call, "type");
+        guardArgumentPresent(call, "attributeName");
+        String type = call.argument("type");
+        String attributeName = call.argument("attributeName");
+        resultValue = getUserAttribute(type, attributeName);
+        break;
+      }
+
+      case "forceVariant": {
+        guardArgumentPresent(call, "variantId");
+
+        Object variantId = call.argument("variantId");
+        if (variantId instanceof Integer) {
+          Integer v = (Integer) variantId;
+          Apptimize.forceVariant(v.longValue());
+        } else if (variantId instanceof Long) {
+          Long v = (Long) variantId;
+          Apptimize.forceVariant(v.longValue());
         }
+        break;
+      }
 
-        case "clearForcedVariant":{
-          guardArgumentPresent(call, "variantId");
-          Long variantId = call.argument("variantId");
-          Apptimize.clearForcedVariant(variantId);
+      case "clearForcedVariant":{
+        guardArgumentPresent(call, "variantId");
+        Long variantId = call.argument("variantId");
+        Apptimize.clearForcedVariant(variantId);
+        break;
+      }
+
+      case "clearAllForcedVariants":
+        Apptimize.clearAllForcedVariants();
+        break;
+
+      case "getVariants": {
+        Map<Long, Map<String, Object>> variants = Apptimize.getVariants();
+        if (variants != null && isCompactFormatRequested(call)) {
+          resultValue = encodeVariants(variants);
           break;
         }
+        ArrayList<Object> variantResult = new ArrayList<Object>();
+        for (Map.Entry<Long, Map<String, Object>> entry : variants.entrySet()) {
+          variantResult.add(entry.getValue());
+        }
+        resultValue = variantResult;
+        break;
+      }
 
-        case "clearAllForcedVariants":
-          Apptimize.clearAllForcedVariants();
-          break;
+      case "declareDynamicVariable":
+        resultValue = declareDynamicVariable(call);
+        break;
 
-        case "getVariants": {
-          Map<Long, Map<String, Object>> variants = Apptimize.getVariants();
-          ArrayList<Object> variantResult = new ArrayList<Object>();
-          for (Map.Entry<Long, Map<String, Object>> entry : variants.entrySet()) {
-            variantResult.add(entry.getValue());
+      case "isDynamicVariableDeclared":
+        resultValue = isDynamicVariableDeclared(call);
+        break;
+
+      case "getDynamicVariableValue":
+        resultValue = getDynamicVariableValue(call);
+        break;
+
+      case "getManifestDynamicVariables":
+        resultValue = dynamicVariableManifest.getDeclarations();
+        break;
+
+      case "executeBatch":
+        resultValue = executeBatch(call);
+        break;
+
+      case "setDynamicVariableCacheEnabled": {
+        guardArgumentPresent(call, "enabled");
+        Boolean enabled = call.argument("enabled");
+        setDynamicVariableCacheEnabled(engine, enabled != null && enabled);
+        resultValue = true;
+        break;
+      }
+
+      case "setEventSubscribed": {
+        guardArgumentPresent(call, "event");
+        guardArgumentPresent(call, "subscribed");
+        String event = call.argument("event");
+        Boolean subscribed = call.argument("subscribed");
+        if (subscribed != null && subscribed) {
+          long replaySequence = eventReplay.subscribe(engine, event);
+          updateTestRunListener();
+          if (engine.markReplayed(event)) {
+            replayEvents(engine, event, replaySequence);
           }
-          resultValue = variantResult;
-          break;
+        } else {
+          engine.setSubscribed(event, false);
+          updateTestRunListener();
         }
+        break;
+      }
 
-        case "declareDynamicVariable":
-          resultValue = declareDynamicVariable(call);
-          break;
+      case "getStartupTiming":
+        resultValue = startupPipeline.getTimestamps();
+        break;
 
-        case "isDynamicVariableDeclared":
-          resultValue = isDynamicVariableDeclared(call);
-          break;
+      case "getEventDispatchStats":
+        resultValue = getEventDispatchStats();
+        break;
 
-        case "getDynamicVariableValue":
-          resultValue = getDynamicVariableValue(call);
-          break;
+      case "getPluginMetrics": {
+        HashMap<String, Object> metrics = pluginMetrics.getMetrics();
+        metrics.put("eventDispatch", getEventDispatchStats());
+        resultValue = metrics;
+        break;
+      }
+
+      case "registerFastPathName":
+        guardArgumentPresent(call, "name");
+        resultValue = FastPathChannel.registerName((String) call.argument("name"));
+        break;
 
-        default:
-          result.notImplemented();
-          return;
+      case "setPluginMetricsLogInterval": {
+        guardArgumentPresent(call, "intervalMillis");
+        Number intervalMillis = asNumber(call.argument("intervalMillis"));
+        if (intervalMillis == null) throw new InvalidPluginArgumentException("intervalMillis", String.valueOf(call.argument("intervalMillis")));
+        pluginMetrics.setLogInterval(intervalMillis.longValue());
+        break;
       }
 
-      result.success(resultValue);
-    }
-    catch (InvalidPluginArgumentException e) {
-      result.error("INVALID_ARGUMENT", e.getMessage(), e);
+      case "setBackgroundDispatchEnabled":
+        guardArgumentPresent(call, "enabled");
+        Boolean enabled = call.argument("enabled");
+        isBackgroundDispatchEnabled = enabled != null && enabled;
+        break;
+
+      default:
+        throw new UnknownPluginMethodException(call.method);
     }
-    catch (MissingPluginArgumentException e) {
-      result.error("ARGUMENT_MISSING", e.getMessage(), e);
+
+    // After the change, so that a refresh racing with it cannot mark the test info up to date.
+    if (TEST_INFO_CHANGING_METHODS.contains(call.method)) {
+      testInfoTracker.invalidate();
     }
-    catch (Exception e) {
-      result.error("UNKNOWN", e.getMessage(), e);
+    return resultValue;
+  }
+
+  /// Runs each entry of the `calls` argument through `handleMethodCall` in order and returns a
+  /// result per entry, so that many operations only cost a single platform channel round trip.
+  ///
+  /// Each entry of the returned list is a map holding either the `result` of the call or the
+  /// `error` code and `message` that `onMethodCall` would have reported for it.
+  private List<Object> executeBatch(@NonNull MethodCall call) throws MissingPluginArgumentException, InvalidPluginArgumentException {
+    guardArgumentPresent(call, "calls");
+
+    Object calls = call.argument("calls");
+    if (!(calls instanceof List)) throw new InvalidPluginArgumentException("calls", String.valueOf(calls));
+
+    List<?> entries = (List<?>) calls;
+    ArrayList<Object> results = new ArrayList<Object>(entries.size());
+    for (Object entry : entries) {
+      HashMap entryResult = new HashMap();
+      long startNanos = System.nanoTime();
+      try {
+        if (!(entry instanceof Map)) throw new InvalidPluginArgumentException("calls", String.valueOf(entry));
+
+        Object method = ((Map) entry).get("method");
+        if (!(method instanceof String)) throw new InvalidPluginArgumentException("method", String.valueOf(method));
+        if (method.equals(call.method)) throw new InvalidPluginArgumentException("method", (String) method);
+
+        entryResult.put("result", handleMethodCall(new MethodCall((String) method, ((Map) entry).get("arguments"))));
+      }
+      catch (UnknownPluginMethodException e) {
+        entryResult.put("error", "NOT_IMPLEMENTED");
+        entryResult.put("message", e.getMessage());
+      }
+      catch (InvalidPluginArgumentException e) {
+        entryResult.put("error", "INVALID_ARGUMENT");
+        entryResult.put("message", e.getMessage());
+      }
+      catch (MissingPluginArgumentException e) {
+        entryResult.put("error", "ARGUMENT_MISSING");
+        entryResult.put("message", e.getMessage());
+      }
+      catch (Exception e) {
+        entryResult.put("error", "UNKNOWN");
+        entryResult.put("message", e.getMessage());
+      }
+      Object method = entry instanceof Map ? ((Map) entry).get("method") : null;
+      if (method instanceof String) {
+        pluginMetrics.recordCall((String) method, startNanos, (String) entryResult.get("error"));
+      }
+      results.add(entryResult);
     }
+
+    return results;
   }
 
-  private void startApptimize(@NonNull MethodCall call) throws MissingPluginArgumentException, InvalidPluginArgumentException {
+  private ArrayList<String> startApptimize(@NonNull MethodCall call) throws MissingPluginArgumentException, InvalidPluginArgumentException {
     guardArgumentPresent(call, "appKey");
+    return startApptimize(context, (String) call.argument("appKey"), (Map) call.argument("options"));
+  }
 
-    final String appKey = call.argument("appKey");
+  /// Sets Apptimize up with `appKey` and `optionsArgs`, which holds options as Dart's
+  /// `ApptimizeOptions.toMap` produces them. Starting again with the same app key, for example
+  /// from Dart after `ApptimizeFlutterInitializer` started Apptimize natively, only records the
+  /// request and applies the participation options, as the others only take effect during setup.
+  ///
+  /// Returns the names of the options in `optionsArgs` which were ignored.
+  static synchronized ArrayList<String> startApptimize(Context context, String appKey, Map optionsArgs) throws InvalidPluginArgumentException {
+    boolean isStarted = startupPipeline.isStarted(appKey);
     final ApptimizeOptions options = new ApptimizeOptions();
     options.setupInBackground(true);
+    int participationPolicy = isStarted ? participationFilter.getPolicy() : ParticipationFilter.POLICY_ALL;
+    long participationWindow = isStarted ? participationFilter.getWindowMillis() : ParticipationFilter.DEFAULT_WINDOW_MILLIS;
+
+    if (optionsArgs != null) {
+      if (optionsArgs.containsKey("devicePairingEnabled"))
+        options.setIsDevicePairingEnabled(option(optionsArgs, "devicePairingEnabled", Boolean.class));
+
+      if (optionsArgs.containsKey("delayUntilTestsAreAvailable")) {
+        Object delayUntilTestsAreAvailable = optionsArgs.get("delayUntilTestsAreAvailable");
+        if (delayUntilTestsAreAvailable instanceof Long) {
+          options.setUpdateMetadataTimeout(((Long)delayUntilTestsAreAvailable).longValue());
+        } else if (delayUntilTestsAreAvailable instanceof Integer) {
+          options.setUpdateMetadataTimeout(((Integer)delayUntilTestsAreAvailable).longValue());
+        } else {
+          throw new InvalidPluginArgumentException("delayUntilTestsAreAvailable", String.valueOf(delayUntilTestsAreAvailable));
+        }
+      }
 
-    if (call.hasArgument("options")) {
-      HashMap optionsArgs = call.argument("options");
-      if (optionsArgs != null) {
+      if (optionsArgs.containsKey("enableThirdPartyEventImporting"))
+        options.setThirdPartyEventImportingEnabled(option(optionsArgs, "enableThirdPartyEventImporting", Boolean.class));
+
+      if (optionsArgs.containsKey("enableThirdPartyEventExporting"))
+        options.setThirdPartyEventExportingEnabled(option(optionsArgs, "enableThirdPartyEventExporting", Boolean.class));
+
+      if (optionsArgs.containsKey("forceVariantsShowWinnersAndInstantUpdates"))
+        options.setForceVariantsShowWinnersAndInstantUpdates(option(optionsArgs, "forceVariantsShowWinnersAndInstantUpdates", Boolean.class));
+
+      if (optionsArgs.containsKey("refreshMetaDataOnSetup"))
+        options.setIsRefreshingMetadataOnSetup(option(optionsArgs, "refreshMetaDataOnSetup", Boolean.class));
+
+      if (optionsArgs.containsKey("logLevel")) {
+        String logLevel = option(optionsArgs, "logLevel", String.class);
+        switch (logLevel) {
+          case "Verbose":
+            options.setLogLevel(ApptimizeOptions.LogLevel.VERBOSE);
+            break;
+          case "Debug":
+            options.setLogLevel(ApptimizeOptions.LogLevel.DEBUG);
+            break;
+          case "Info":
+            options.setLogLevel(ApptimizeOptions.LogLevel.INFO);
+            break;
+          case "Warn":
+            options.setLogLevel(ApptimizeOptions.LogLevel.WARNING);
+            break;
+          case "Error":
+            options.setLogLevel(ApptimizeOptions.LogLevel.ERROR);
+            break;
+          case "Off":
+            options.setLogLevel(ApptimizeOptions.LogLevel.OFF);
+            break;
+          default:
+            throw new InvalidPluginArgumentException("logLevel", logLevel);
+        }
+      }
 
-        if (optionsArgs.containsKey("devicePairingEnabled"))
-          options.setIsDevicePairingEnabled((boolean) optionsArgs.get("devicePairingEnabled"));
+      if (optionsArgs.containsKey("serverRegion")) {
+        String serverRegion = option(optionsArgs, "serverRegion", String.class);
+        switch (serverRegion) {
+          case "Default":
+            options.setServerRegion(ApptimizeOptions.ServerRegion.DEFAULT);
+            break;
+          case "EUCS":
+            options.setServerRegion(ApptimizeOptions.ServerRegion.EUCS);
+            break;
+          default:
+            throw new InvalidPluginArgumentException("serverRegion",  serverRegion);
+        }
+      }
 
-        if (optionsArgs.containsKey("delayUntilTestsAreAvailable")) {
-          Object delayUntilTestsAreAvailable = optionsArgs.get("delayUntilTestsAreAvailable");
-          if (delayUntilTestsAreAvailable instanceof Long) {
-            options.setUpdateMetadataTimeout(((Long)delayUntilTestsAreAvailable).longValue());
-          } else if (delayUntilTestsAreAvailable instanceof Integer) {
-            options.setUpdateMetadataTimeout(((Integer)delayUntilTestsAreAvailable).longValue());
-          }
+      if (optionsArgs.containsKey("participationPolicy")) {
+        String policy = option(optionsArgs, "participationPolicy", String.class);
+        switch (policy) {
+          case "All":
+            participationPolicy = ParticipationFilter.POLICY_ALL;
+            break;
+          case "First":
+            participationPolicy = ParticipationFilter.POLICY_FIRST;
+            break;
+          case "Windowed":
+            participationPolicy = ParticipationFilter.POLICY_WINDOWED;
+            break;
+          default:
+            throw new InvalidPluginArgumentException("participationPolicy", policy);
         }
+      }
 
-        if (optionsArgs.containsKey("enableThirdPartyEventImporting"))
-          options.setThirdPartyEventImportingEnabled((boolean) optionsArgs.get("enableThirdPartyEventImporting"));
-
-        if (optionsArgs.containsKey("enableThirdPartyEventExporting"))
-          options.setThirdPartyEventExportingEnabled((boolean) optionsArgs.get("enableThirdPartyEventExporting"));
-
-        if (optionsArgs.containsKey("forceVariantsShowWinnersAndInstantUpdates"))
-          options.setForceVariantsShowWinnersAndInstantUpdates((boolean) optionsArgs.get("forceVariantsShowWinnersAndInstantUpdates"));
-
-        if (optionsArgs.containsKey("refreshMetaDataOnSetup"))
-          options.setIsRefreshingMetadataOnSetup((boolean) optionsArgs.get("refreshMetaDataOnSetup"));
-
-        if (optionsArgs.containsKey("logLevel")) {
-          String logLevel = (String) optionsArgs.get("logLevel");
-          switch (logLevel) {
-            case "Verbose":
-              options.setLogLevel(ApptimizeOptions.LogLevel.VERBOSE);
-              break;
-            case "Debug":
-              options.setLogLevel(ApptimizeOptions.LogLevel.DEBUG);
-              break;
-            case "Info":
-              options.setLogLevel(ApptimizeOptions.LogLevel.INFO);
-              break;
-            case "Warn":
-              options.setLogLevel(ApptimizeOptions.LogLevel.WARNING);
-              break;
-            case "Error":
-              options.setLogLevel(ApptimizeOptions.LogLevel.ERROR);
-              break;
-            case "Off":
-              options.setLogLevel(ApptimizeOptions.LogLevel.OFF);
-              break;
-            default:
-              throw new InvalidPluginArgumentException("logLevel", logLevel);
-          }
+      if (optionsArgs.containsKey("participationWindow")) {
+        Object window = optionsArgs.get("participationWindow");
+        if (!(window instanceof Integer || window instanceof Long) || ((Number) window).longValue() < 0) {
+          throw new InvalidPluginArgumentException("participationWindow", String.valueOf(window));
         }
+        participationWindow = ((Number) window).longValue();
+      }
+    }
+
+    participationFilter.setPolicy(participationPolicy, participationWindow);
 
-        if (optionsArgs.containsKey("serverRegion")) {
-          String serverRegion = (String) optionsArgs.get("serverRegion");
-          switch (serverRegion) {
-            case "Default":
-              options.setServerRegion(ApptimizeOptions.ServerRegion.DEFAULT);
-              break;
-            case "EUCS":
-              options.setServerRegion(ApptimizeOptions.ServerRegion.EUCS);
-              break;
-            default:
-              throw new InvalidPluginArgumentException("serverRegion",  serverRegion);
+    ArrayList<String> ignoredOptions = new ArrayList<String>();
+    if (isStarted) {
+      startupPipeline.recordPhase(StartupPipeline.PHASE_SETUP_REQUESTED);
+      if (optionsArgs != null) {
+        for (Object name : optionsArgs.keySet()) {
+          if (!"participationPolicy".equals(name) && !"participationWindow".equals(name)) {
+            ignoredOptions.add(String.valueOf(name));
           }
         }
       }
+      return ignoredOptions;
     }
 
-    final Runnable setupRunnable = new Runnable() {
-      public void run() {
-        Apptimize.setup(context, appKey, options);
+    // Loaded here too in case Apptimize is started before any engine attached.
+    persistedSnapshot.load(context.getFilesDir());
+    persistedSnapshot.setAppKey(appKey);
+    startupPipeline.start(context, appKey, options); // Runs setup on a different thread
+    return ignoredOptions;
+  }
+
+  /// Returns the option `name` of `optionsArgs`, which must be of `type`.
+  private static <T> T option(Map optionsArgs, String name, Class<T> type) throws InvalidPluginArgumentException {
+    Object value = optionsArgs.get(name);
+    if (!type.isInstance(value)) throw new InvalidPluginArgumentException(name, String.valueOf(value));
+    return type.cast(value);
+  }
+
+  /// Sets every attribute in `attributes`, removing those whose value is null. Attributes whose value
+  /// is unchanged since the plugin last wrote them are skipped. Returns the number of skipped writes.
+  private static int setUserAttributes(@NonNull MethodCall call) throws MissingPluginArgumentException, InvalidPluginArgumentException {
+    guardArgumentPresent(call, "attributes");
+    Map<String, Object> attributes = call.argument("attributes");
+    if (attributes == null) throw new MissingPluginArgumentException("attributes");
+
+    // Checked up front so that an invalid value does not leave the attributes half written.
+    for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+      Object value = entry.getValue();
+      boolean isSupported = value == null || value instanceof String || value instanceof Integer || value instanceof Double
+          || value instanceof Boolean;
+      if (!isSupported) throw new InvalidPluginArgumentException(entry.getKey(), String.valueOf(value));
+    }
+
+    int skipped = 0;
+    synchronized (writtenUserAttributes) {
+      for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+        String attributeName = entry.getKey();
+        Object value = entry.getValue();
+        if (writtenUserAttributes.isUnchanged(attributeName, value)) {
+          skipped++;
+          continue;
+        }
+
+        if (value == null) {
+          Apptimize.clearUserAttribute(attributeName);
+        } else if (value instanceof String) {
+          Apptimize.setUserAttribute(attributeName, (String) value);
+        } else if (value instanceof Integer) {
+          Apptimize.setUserAttribute(attributeName, (int) (Integer) value);
+        } else if (value instanceof Double) {
+          Apptimize.setUserAttribute(attributeName, (double) (Double) value);
+        } else {
+          Apptimize.setUserAttribute(attributeName, (Boolean) value);
+        }
+        writtenUserAttributes.record(attributeName, value);
       }
-    };
+    }
+    return skipped;
+  }
+
+  /// Tracks a batch of events buffered in Dart, in order. Event names are sent once in `names` and
+  /// referenced by index from `nameIndexes`, and `values` holds each event's value or NaN for events
+  /// without one.
+  private static int trackBatch(@NonNull MethodCall call) throws MissingPluginArgumentException, InvalidPluginArgumentException {
+    guardArgumentPresent(call, "names");
+    guardArgumentPresent(call, "nameIndexes");
+    guardArgumentPresent(call, "values");
+
+    List<String> names = call.argument("names");
+    int[] nameIndexes = call.argument("nameIndexes");
+    double[] values = call.argument("values");
+    if (names == null) throw new MissingPluginArgumentException("names");
+    if (nameIndexes == null) throw new MissingPluginArgumentException("nameIndexes");
+    if (values == null || values.length != nameIndexes.length) {
+      throw new InvalidPluginArgumentException("values", values != null ? values.length + " values" : null);
+    }
 
-    new Thread(setupRunnable).start(); // Runs setup on a different thread
+    for (int i = 0; i < nameIndexes.length; i++) {
+      int nameIndex = nameIndexes[i];
+      if (nameIndex < 0 || nameIndex >= names.size()) {
+        throw new InvalidPluginArgumentException("nameIndexes", String.valueOf(nameIndex));
+      }
+    }
+
+    for (int i = 0; i < nameIndexes.length; i++) {
+      String eventName = names.get(nameIndexes[i]);
+      if (Double.isNaN(values[i])) {
+        Apptimize.track(eventName);
+      } else {
+        Apptimize.track(eventName, values[i]);
+      }
+    }
+    return nameIndexes.length;
   }
 
-  private String runTest(@NonNull MethodCall call) throws MissingPluginArgumentException {
+  private static String runTest(@NonNull MethodCall call) throws MissingPluginArgumentException {
     guardArgumentPresent(call, "testName");
     guardArgumentPresent(call, "codeBlocks");
 
@@ -504,56 +982,10 @@ public class ApptimizeFlutterPlugin implements FlutterPlugin, MethodCallHandler,
 
     String testName = call.argument("testName");
     List<String> codeBlocks = call.argument("codeBlocks");
-    final int[] result = new int[1];
-    result[0] = -1;
-
-    ApptimizeTest test = new ApptimizeTest() {
-      @Override
-      public void baseline() { result[0] = 0; }
-      @SuppressWarnings("unused")
-      public void variation1() { result[0] = 1; }
-      @SuppressWarnings("unused")
-      public void variation2() { result[0] = 2; }
-      @SuppressWarnings("unused")
-      public void variation3() { result[0] = 3; }
-      @SuppressWarnings("unused")
-      public void variation4() { result[0] = 4; }
-      @SuppressWarnings("unused")
-      public void variation5() { result[0] = 5; }
-      @SuppressWarnings("unused")
-      public void variation6() { result[0] = 6; }
-      @SuppressWarnings("unused")
-      public void variation7() { result[0] = 7; }
-      @SuppressWarnings("unused")
-      public void variation8() { result[0] = 8; }
-      @SuppressWarnings("unused")
-      public void variation9() { result[0] = 9; }
-    };
-
-    if (options != null) {
-      Apptimize.runTest(testName, test, options);
-    } else {
-      Apptimize.runTest(testName, test);
-    }
-
-    if (result[0] < 0) {
-      Log.w(TAG, "Test " + testName + " did not execute");
-      return null; // Baseline
-    }
-
-    if (result[0] == 0) {
-      return null; // Baseline
-    }
-
-    if (result[0] >= codeBlocks.size()) {
-      Log.e(TAG, "Test executed unexpected variation");
-      return null; // Baseline
-    }
-
-    return codeBlocks.get(result[0] - 1);
+    return CodeBlockTest.forLayout(testName, codeBlocks).run(options);
   }
 
-  private static boolean declareDynamicVariable(@NonNull MethodCall call) throws MissingPluginArgumentException, InvalidPluginArgumentException {
+  private static Object declareDynamicVariable(@NonNull MethodCall call) throws MissingPluginArgumentException, InvalidPluginArgumentException {
     guardArgumentPresent(call, "name");
     guardArgumentPresent(call, "type");
     guardArgumentPresent(call, "defaultValue");
@@ -561,67 +993,75 @@ public class ApptimizeFlutterPlugin implements FlutterPlugin, MethodCallHandler,
     String name = call.argument("name");
     String type = call.argument("type");
     Object defaultValue = call.argument("defaultValue");
-    String key = name + "$$" + type;
+    int handle = declareDynamicVariable(name, type, defaultValue);
 
-    if (type == "bool" || type == "integer" || type == "double") {
+    if (handle == DynamicVariableRegistry.NO_HANDLE) return false;
+    return isHandleRequested(call) ? (Object) handle : (Object) true;
+  }
+
+  /// Creates the `ApptimizeVar` for a dynamic variable, with `defaultValue` in the form Dart sends
+  /// it, and registers it. Returns its handle, or `NO_HANDLE` if it was not created.
+  static int declareDynamicVariable(String name, String type, Object defaultValue) throws InvalidPluginArgumentException {
+    int typeTag = DynamicVariableRegistry.typeTagOf(type);
+
+    if (typeTag == DynamicVariableRegistry.TYPE_BOOL || typeTag == DynamicVariableRegistry.TYPE_INTEGER || typeTag == DynamicVariableRegistry.TYPE_DOUBLE) {
       if (defaultValue == null) throw new InvalidPluginArgumentException("defaultValue", "<null>");
     }
 
-    Object apptimizeVar = null;
+    ApptimizeVar<?> apptimizeVar = null;
 
-    switch(type)
+    switch(typeTag)
     {
-      case "string":
+      case DynamicVariableRegistry.TYPE_STRING:
         apptimizeVar = ApptimizeVar.createString(name, (String)defaultValue);
         break;
 
-      case "bool":
+      case DynamicVariableRegistry.TYPE_BOOL:
         apptimizeVar = ApptimizeVar.createBoolean(name, (boolean)defaultValue);
         break;
 
-      case "integer":
-        if (defaultValue instanceof Integer) {
-          apptimizeVar = ApptimizeVar.createInteger(name, ((Integer) defaultValue).intValue());
-          break;
-        } else if (defaultValue instanceof Long) {
-          // Value is out of range - has to be an integer.
+      case DynamicVariableRegistry.TYPE_INTEGER:
+        if (!(defaultValue instanceof Integer)) {
+          // A Long is out of range - has to be an integer.
           throw new InvalidPluginArgumentException("defaultValue", defaultValue.toString());
         }
+        apptimizeVar = ApptimizeVar.createInteger(name, ((Integer) defaultValue).intValue());
+        break;
 
-      case "double":
+      case DynamicVariableRegistry.TYPE_DOUBLE:
         apptimizeVar = ApptimizeVar.createDouble(name, (Double)defaultValue);
         break;
 
-      case "array.string":
+      case DynamicVariableRegistry.TYPE_ARRAY_STRING:
         apptimizeVar = ApptimizeVar.createListOfStrings(name, (List<String>)defaultValue);
         break;
 
-      case "array.bool":
+      case DynamicVariableRegistry.TYPE_ARRAY_BOOL:
         apptimizeVar = ApptimizeVar.createListOfBooleans(name, (List<Boolean>)defaultValue);
         break;
 
-      case "array.integer":
+      case DynamicVariableRegistry.TYPE_ARRAY_INTEGER:
         // Can we test to see if it's a list of Integers?
         apptimizeVar = ApptimizeVar.createListOfIntegers(name, (List<Integer>)defaultValue);
         break;
 
-      case "array.double":
+      case DynamicVariableRegistry.TYPE_ARRAY_DOUBLE:
         apptimizeVar = ApptimizeVar.createListOfDoubles(name, (List<Double>)defaultValue);
         break;
 
-      case "dictionary.string":
+      case DynamicVariableRegistry.TYPE_DICTIONARY_STRING:
         apptimizeVar = ApptimizeVar.createMapOfStrings(name, (HashMap<String, String>)defaultValue);
         break;
 
-      case "dictionary.bool":
+      case DynamicVariableRegistry.TYPE_DICTIONARY_BOOL:
         apptimizeVar = ApptimizeVar.createMapOfBooleans(name, (HashMap<String, Boolean>)defaultValue);
         break;
 
-      case "dictionary.integer":
+      case DynamicVariableRegistry.TYPE_DICTIONARY_INTEGER:
         apptimizeVar = ApptimizeVar.createMapOfIntegers(name, (HashMap<String, Integer>)defaultValue);
         break;
 
-      case "dictionary.double":
+      case DynamicVariableRegistry.TYPE_DICTIONARY_DOUBLE:
         apptimizeVar = ApptimizeVar.createMapOfDoubles(name, (HashMap<String, Double>)defaultValue);
         break;
 
@@ -630,97 +1070,227 @@ public class ApptimizeFlutterPlugin implements FlutterPlugin, MethodCallHandler,
     }
 
     if (apptimizeVar != null) {
-      declaredApptimizeVariables.put(key, apptimizeVar);
-      return true;
+      return declaredApptimizeVariables.register(name, type, typeTag, apptimizeVar);
     }
 
-    return false;
+    return DynamicVariableRegistry.NO_HANDLE;
   }
 
-  private static boolean isDynamicVariableDeclared(@NonNull MethodCall call) throws MissingPluginArgumentException, InvalidPluginArgumentException {
+  private static Object isDynamicVariableDeclared(@NonNull MethodCall call) throws MissingPluginArgumentException, InvalidPluginArgumentException {
     guardArgumentPresent(call, "name");
     guardArgumentPresent(call, "type");
 
     String name = call.argument("name");
     String type = call.argument("type");
-    String key = name + "$$" + type;
+    int handle = declaredApptimizeVariables.find(name, type);
 
-    return declaredApptimizeVariables.containsKey(key);
+    if (handle == DynamicVariableRegistry.NO_HANDLE) return false;
+    return isHandleRequested(call) ? (Object) handle : (Object) true;
   }
 
   private static Object getDynamicVariableValue(@NonNull MethodCall call) throws MissingPluginArgumentException, InvalidPluginArgumentException {
+    // Variables declared with `returnHandle` are read by handle, skipping the name and type lookup.
+    Object handle = call.argument("handle");
+    if (handle instanceof Integer) {
+      return declaredApptimizeVariables.encodedValue((Integer) handle);
+    }
+
     guardArgumentPresent(call, "name");
     guardArgumentPresent(call, "type");
 
     String name = call.argument("name");
     String type = call.argument("type");
-    String key = name + "$$" + type;
 
-    if (!declaredApptimizeVariables.containsKey(key)) return null;
+    return declaredApptimizeVariables.encodedValue(declaredApptimizeVariables.find(name, type));
+  }
 
-    Object dynamicVariable = declaredApptimizeVariables.get(key);
+  /// Declarations and lookups return the variable's integer handle instead of `true` when Dart
+  /// passes `returnHandle`. Older Dart code and the iOS plugin keep using booleans.
+  private static boolean isHandleRequested(@NonNull MethodCall call) {
+    Object returnHandle = call.argument("returnHandle");
+    return returnHandle instanceof Boolean && (Boolean) returnHandle;
+  }
 
-    switch(type)
-    {
-      case "string":
-        ApptimizeVar<String> s = (ApptimizeVar<String>)dynamicVariable;
-        return s.value();
+  /// Returns whether the feature flag `name` is on, answered from the persisted snapshot while the
+  /// SDK is starting.
+  static boolean isFeatureFlagOn(String name) {
+    return persistedSnapshot.isFeatureFlagOn(name);
+  }
 
+  /// Returns the user attribute `attributeName` of `type`, which is one of "string", "int",
+  /// "double" or "bool".
+  static Object getUserAttribute(String type, String attributeName) throws InvalidPluginArgumentException {
+    Object value;
+    switch (type) {
+      case "string":
+        return Apptimize.getUserAttributeString(attributeName);
+      case "int":
+        value = Apptimize.getUserAttributeInteger(attributeName);
+        // To ensure consistent behaviour with iOS, return default values.
+        return value != null ? value : 0;
+      case "double":
+        value = Apptimize.getUserAttributeDouble(attributeName);
+        // To ensure consistent behaviour with iOS, return default values.
+        return value != null ? value : 0.0;
       case "bool":
-        ApptimizeVar<Boolean> b = (ApptimizeVar<Boolean>)dynamicVariable;
-        return b.value();
+        value = Apptimize.getUserAttributeBoolean(attributeName);
+        // To ensure consistent behaviour with iOS, return default values.
+        return value != null ? value : false;
+      default:
+        throw new InvalidPluginArgumentException("type", type);
+    }
+  }
 
-      case "integer":
-        ApptimizeVar<Integer> i = (ApptimizeVar<Integer>)dynamicVariable;
-        return i.value();
+  private static void setDynamicVariableCacheEnabled(EngineConnection engine, boolean enabled) {
+    synchronized (pushedDynamicVariableValues) {
+      if (enabled) {
+        dynamicVariableCacheEngines.addIfAbsent(engine);
+      } else {
+        dynamicVariableCacheEngines.remove(engine);
+      }
+      // Dart discards its mirror whenever the cache is toggled, so the next push must be complete.
+      pushedDynamicVariableValues.clear();
+    }
 
-      case "double":
-        ApptimizeVar<Double> d = (ApptimizeVar<Double>)dynamicVariable;
-        return d.value();
+    pushChangedDynamicVariableValues();
+  }
 
-      case "array.string":
-        ApptimizeVar<List<String>> ls = (ApptimizeVar<List<String>>)dynamicVariable;
-        return ls.value();
+  /// Sends the values of all declared dynamic variables which changed since the last push, so that
+  /// Dart can answer reads from its mirror without a platform channel round trip.
+  ///
+  /// Each push carries an increasing `version`, allowing Dart to detect a missed push and discard
+  /// its mirror.
+  private static void pushChangedDynamicVariableValues() {
+    if (dynamicVariableCacheEngines.isEmpty()) return;
+
+    synchronized (pushedDynamicVariableValues) {
+      ArrayList<Object> changedVariables = new ArrayList<Object>();
+      int count = declaredApptimizeVariables.size();
+      for (int handle = 0; handle < count; handle++) {
+        DynamicVariableRegistry.Entry entry = declaredApptimizeVariables.get(handle);
+        Object value = declaredApptimizeVariables.value(entry);
+
+        if (pushedDynamicVariableValues.containsKey(handle)) {
+          Object pushedValue = pushedDynamicVariableValues.get(handle);
+          if (pushedValue == null ? value == null : pushedValue.equals(value)) continue;
+        }
+        pushedDynamicVariableValues.put(handle, value);
 
-      case "array.bool":
-        ApptimizeVar<List<Boolean>> lb = (ApptimizeVar<List<Boolean>>)dynamicVariable;
-        return lb.value();
+        HashMap changedVariable = new HashMap();
+        changedVariable.put("name", entry.name);
+        changedVariable.put("type", entry.type);
+        changedVariable.put("value", DynamicVariableRegistry.encode(entry.typeTag, value));
+        changedVariables.add(changedVariable);
+      }
 
-      case "array.integer":
-        // Can we test to see if it's a list of Integers?
-        ApptimizeVar<List<Integer>> li = (ApptimizeVar<List<Integer>>)dynamicVariable;
-        return li.value();
+      if (changedVariables.isEmpty()) return;
 
-      case "array.double":
-        ApptimizeVar<List<Double>> ld = (ApptimizeVar<List<Double>>)dynamicVariable;
-        return ld.value();
+      HashMap arguments = new HashMap();
+      arguments.put("version", ++dynamicVariableSnapshotVersion);
+      arguments.put("variables", changedVariables);
+      eventDispatcher.dispatchState("ApptimizeDynamicVariablesChanged", arguments, dynamicVariableCacheEngines);
+    }
+  }
+
+  /// Sends the bitset of every feature flag subscription in which a flag flipped to the engine
+  /// which subscribed.
+  private static void pushChangedFeatureFlags() {
+    for (FeatureFlagSubscriptions.Subscription subscription : featureFlagSubscriptions.refresh()) {
+      HashMap arguments = new HashMap();
+      arguments.put("subscriptionId", subscription.id);
+      arguments.put("bits", subscription.bits);
+      eventDispatcher.dispatchState("ApptimizeFeatureFlagsChanged", arguments, subscription.targets);
+    }
+  }
 
-      case "dictionary.string":
-        ApptimizeVar<Map<String, String>> ds = (ApptimizeVar<Map<String, String>>)dynamicVariable;
-        return ds.value();
+  private static void guardArgumentPresent(@NonNull MethodCall call, String argumentName) throws MissingPluginArgumentException {
+    if (!call.hasArgument(argumentName)) throw new MissingPluginArgumentException(argumentName);
+  }
 
-      case "dictionary.bool":
-        ApptimizeVar<Map<String, Boolean>> db = (ApptimizeVar<Map<String, Boolean>>)dynamicVariable;
-        return db.value();
+  /// Snapshots are sent in the `SnapshotWriter` format rather than as maps when Dart passes
+  /// `format: compact`.
+  private static boolean isCompactFormatRequested(@NonNull MethodCall call) {
+    return "compact".equals(call.argument("format"));
+  }
 
-      case "dictionary.integer":
-        ApptimizeVar<Map<String, Integer>> di = (ApptimizeVar<Map<String, Integer>>)dynamicVariable;
-        return di.value();
+  private static byte[] encodeApptimizeTestInfo(Map<String, ApptimizeTestInfo> testInfo) {
+    SnapshotWriter writer = new SnapshotWriter(SnapshotWriter.KIND_TEST_INFO);
+    for (Map.Entry<String, ApptimizeTestInfo> entry : testInfo.entrySet()) {
+      ApptimizeTestInfo info = entry.getValue();
+      writer.beginRecord(entry.getKey());
+      writer.writeString(SnapshotWriter.TEST_INFO_TEST_NAME, info.getTestName());
+      writer.writeString(SnapshotWriter.TEST_INFO_ENROLLED_VARIANT_NAME, info.getEnrolledVariantName());
+      writer.writeLong(SnapshotWriter.TEST_INFO_TEST_ID, info.getTestId());
+      writer.writeLong(SnapshotWriter.TEST_INFO_ENROLLED_VARIANT_ID, info.getEnrolledVariantId());
+      writer.writeDate(SnapshotWriter.TEST_INFO_TEST_STARTED_DATE, info.getTestStartedDate());
+      writer.writeDate(SnapshotWriter.TEST_INFO_TEST_ENROLLED_DATE, info.getTestEnrolledDate());
+      writer.writeLong(SnapshotWriter.TEST_INFO_CYCLE, info.getCycle());
+      writer.writeLong(SnapshotWriter.TEST_INFO_CURRENT_PHASE, info.getCurrentPhase());
+      writer.writeLong(SnapshotWriter.TEST_INFO_PARTICIPATION_PHASE, info.getParticipationPhase());
+      writer.writeBoolean(SnapshotWriter.TEST_INFO_USER_HAS_PARTICIPATED, info.userHasParticipated());
+      writer.writeString(SnapshotWriter.TEST_INFO_USER_ID, info.getCustomerUserId());
+      writer.writeString(SnapshotWriter.TEST_INFO_ANONYMOUS_USER_ID, info.getAnonymousUserId());
+      writer.writeString(SnapshotWriter.TEST_INFO_EXPERIMENT_TYPE, serializeApptimizeTestType(info.getApptimizeTestType()));
+    }
+    return writer.toByteArray();
+  }
 
-      case "dictionary.double":
-        ApptimizeVar<Map<String, Double>> dd = (ApptimizeVar<Map<String, Double>>)dynamicVariable;
-        return dd.value();
+  private static byte[] encodeApptimizeInstantUpdateOrWinnerInfo(Map<String, ApptimizeInstantUpdateOrWinnerInfo> winnerInfo) {
+    SnapshotWriter writer = new SnapshotWriter(SnapshotWriter.KIND_WINNER_INFO);
+    for (Map.Entry<String, ApptimizeInstantUpdateOrWinnerInfo> entry : winnerInfo.entrySet()) {
+      ApptimizeInstantUpdateOrWinnerInfo info = entry.getValue();
+      writer.beginRecord(entry.getKey());
+      writer.writeBoolean(SnapshotWriter.WINNER_INFO_IS_INSTANT_UPDATE, isInstantUpdate(info));
+      writer.writeString(SnapshotWriter.WINNER_INFO_WINNING_EXPERIMENT_NAME, info.getWinningTestName());
+      writer.writeLong(SnapshotWriter.WINNER_INFO_WINNING_EXPERIMENT_ID, info.getWinningTestId());
+      writer.writeString(SnapshotWriter.WINNER_INFO_INSTANT_UPDATE_NAME, info.getInstantUpdateName());
+      writer.writeLong(SnapshotWriter.WINNER_INFO_INSTANT_UPDATE_ID, info.getInstantUpdateId());
+      writer.writeString(SnapshotWriter.WINNER_INFO_WINNING_VARIANT_NAME, info.getWinningVariantName());
+      writer.writeLong(SnapshotWriter.WINNER_INFO_WINNING_VARIANT_ID, info.getWinningVariantId());
+      writer.writeDate(SnapshotWriter.WINNER_INFO_START_DATE, getStartDate(info));
+      writer.writeString(SnapshotWriter.WINNER_INFO_USER_ID, info.getCustomerUserId());
+      writer.writeString(SnapshotWriter.WINNER_INFO_ANONYMOUS_USER_ID, info.getAnonymousUserId());
+    }
+    return writer.toByteArray();
+  }
 
-      default:
-        throw new InvalidPluginArgumentException("type", type);
+  private static byte[] encodeVariants(Map<Long, Map<String, Object>> variants) {
+    SnapshotWriter writer = new SnapshotWriter(SnapshotWriter.KIND_VARIANTS);
+    for (Map<String, Object> variant : variants.values()) {
+      writer.beginRecord();
+      writer.writeString(SnapshotWriter.VARIANT_EXPERIMENT_NAME, asString(variant.get("experimentName")));
+      writer.writeLong(SnapshotWriter.VARIANT_EXPERIMENT_ID, asNumber(variant.get("experimentId")));
+      writer.writeString(SnapshotWriter.VARIANT_VARIANT_NAME, asString(variant.get("variantName")));
+      writer.writeLong(SnapshotWriter.VARIANT_VARIANT_ID, asNumber(variant.get("variantId")));
     }
+    return writer.toByteArray();
   }
 
-  private static void guardArgumentPresent(@NonNull MethodCall call, String argumentName) throws MissingPluginArgumentException {
-    if (!call.hasArgument(argumentName)) throw new MissingPluginArgumentException(argumentName);
+  private static String asString(Object value) {
+    return value instanceof String ? (String) value : null;
+  }
+
+  private static Number asNumber(Object value) {
+    return value instanceof Number ? (Number) value : null;
+  }
+
+  /// Serializes `testInfo`, reusing the map serialized for an earlier test info with the same
+  /// values. The returned map is shared and must not be modified.
+  static HashMap serializeApptimizeTestInfo(ApptimizeTestInfo testInfo) {
+    TestInfoKey key = new TestInfoKey(testInfo);
+
+    HashMap cached = serializedTestInfoCache.get(key);
+    if (cached != null) return cached;
+
+    HashMap result = createSerializedApptimizeTestInfo(testInfo);
+    if (serializedTestInfoCache.size() >= MAX_SERIALIZED_TEST_INFO_CACHE_SIZE) {
+      serializedTestInfoCache.clear();
+    }
+    serializedTestInfoCache.put(key, result);
+    return result;
   }
 
-  private static HashMap serializeApptimizeTestInfo(ApptimizeTestInfo testInfo) {
+  static HashMap createSerializedApptimizeTestInfo(ApptimizeTestInfo testInfo) {
     HashMap result = new HashMap();
     result.put("testName", testInfo.getTestName());
     result.put("enrolledVariantName", testInfo.getEnrolledVariantName());
@@ -740,27 +1310,86 @@ public class ApptimizeFlutterPlugin implements FlutterPlugin, MethodCallHandler,
 
   private static HashMap serializeApptimizeInstantUpdateOrWinnerInfo(ApptimizeInstantUpdateOrWinnerInfo winnerInfo) {
     HashMap result = new HashMap();
-    result.put("isInstantUpdate", false); // TODO: ApptimizeInstantUpdateOrWinnerInfo.getType() does not return a public type
+    result.put("isInstantUpdate", isInstantUpdate(winnerInfo));
     result.put("winningExperimentName", winnerInfo.getWinningTestName());
     result.put("winningExperimentId", winnerInfo.getWinningTestId());
     result.put("instantUpdateName", winnerInfo.getInstantUpdateName());
     result.put("instantUpdateId", winnerInfo.getInstantUpdateId());
     result.put("winningVariantName", winnerInfo.getWinningVariantName());
     result.put("winningVariantId", winnerInfo.getWinningVariantId());
-    result.put("startDate", toIso8601Date(new Date())); // TODO: Value not supported on android
+    result.put("startDate", toIso8601Date(getStartDate(winnerInfo)));
     result.put("userId", winnerInfo.getCustomerUserId());
     result.put("anonymousUserId", winnerInfo.getAnonymousUserId());
     return result;
   }
 
-  private static String toIso8601Date(Date date) {
+  /// Shared by the map and compact formats.
+  private static boolean isInstantUpdate(ApptimizeInstantUpdateOrWinnerInfo winnerInfo) {
+    return false; // TODO: ApptimizeInstantUpdateOrWinnerInfo.getType() does not return a public type
+  }
+
+  /// Shared by the map and compact formats.
+  private static Date getStartDate(ApptimizeInstantUpdateOrWinnerInfo winnerInfo) {
+    return new Date(); // TODO: Value not supported on android
+  }
+
+  /// Formats `date` as `yyyy-MM-dd'T'HH:mm'Z'` in UTC. This is computed directly from the epoch
+  /// time rather than with a `SimpleDateFormat`, which is not thread safe and is costly to create.
+  /// Dates before 1583 or after 9999 are still formatted with a `SimpleDateFormat`, which uses the
+  /// Julian calendar before the Gregorian reform and more digits for later years.
+  static String toIso8601Date(Date date) {
     if (date == null) return null;
+
+    long minutes = floorDiv(date.getTime(), 60 * 1000);
+    long days = floorDiv(minutes, 24 * 60);
+    int minuteOfDay = (int) (minutes - days * 24 * 60);
+
+    // Converts days since the epoch to a proleptic Gregorian date, see
+    // http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+    long shiftedDays = days + 719468;
+    long era = floorDiv(shiftedDays, 146097);
+    long dayOfEra = shiftedDays - era * 146097;
+    long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    long shiftedMonth = (5 * dayOfYear + 2) / 153;
+    int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+    int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+    long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+    if (year < 1583 || year > 9999) return toIso8601DateWithCalendar(date);
+
+    char[] chars = new char[17];
+    writeDigits(chars, 0, (int) year, 4);
+    chars[4] = '-';
+    writeDigits(chars, 5, month, 2);
+    chars[7] = '-';
+    writeDigits(chars, 8, day, 2);
+    chars[10] = 'T';
+    writeDigits(chars, 11, minuteOfDay / 60, 2);
+    chars[13] = ':';
+    writeDigits(chars, 14, minuteOfDay % 60, 2);
+    chars[16] = 'Z';
+    return new String(chars);
+  }
+
+  private static String toIso8601DateWithCalendar(Date date) {
     TimeZone tz = TimeZone.getTimeZone("UTC");
     DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm'Z'"); // Quoted "Z" to indicate UTC, no timezone offset
     df.setTimeZone(tz);
     return df.format(date);
   }
 
+  private static void writeDigits(char[] chars, int offset, int value, int length) {
+    for (int i = offset + length - 1; i >= offset; i--) {
+      chars[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+  }
+
+  private static long floorDiv(long value, long divisor) {
+    long quotient = value / divisor;
+    return (value % divisor != 0 && (value < 0) != (divisor < 0)) ? quotient - 1 : quotient;
+  }
+
   private static String serializeApptimizeTestType(ApptimizeTestType testType) {
     switch (testType) {
       case VISUAL:
@@ -776,6 +1405,25 @@ public class ApptimizeFlutterPlugin implements FlutterPlugin, MethodCallHandler,
     }
   }
 
+  private static HashMap serializeMetadataState(EnumSet<Apptimize.ApptimizeMetadataStateFlags> metadataState) {
+    HashMap result = new HashMap();
+    result.put("isAvailable", metadataState.contains(Apptimize.ApptimizeMetadataStateFlags.AVAILABLE));
+    result.put("isUpToDate", metadataState.contains(Apptimize.ApptimizeMetadataStateFlags.UP_TO_DATE));
+    result.put("isRefreshing", metadataState.contains(Apptimize.ApptimizeMetadataStateFlags.REFRESHING));
+    return result;
+  }
+
+  /// Returns the arguments of an enrollment event, or of an unenrollment event if
+  /// `unenrollmentReason` is set.
+  private static HashMap enrollmentArguments(ApptimizeTestInfo testInfo, Apptimize.UnenrollmentReason unenrollmentReason) {
+    HashMap arguments = new HashMap();
+    arguments.put("testInfo", serializeApptimizeTestInfo(testInfo));
+    if (unenrollmentReason != null) {
+      arguments.put("unenrollmentReason", serializeUnenrollmentReason(unenrollmentReason));
+    }
+    return arguments;
+  }
+
   private static String serializeUnenrollmentReason(Apptimize.UnenrollmentReason unenrollmentReason) {
     switch (unenrollmentReason) {
       case CUSTOMER_USER_ID_CHANGED:
@@ -0,0 +1,131 @@
+package com.apptimize.apptimize_flutter;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import io.flutter.plugin.common.MethodChannel.Result;
+
+/** Runs plugin method calls off the platform thread when background dispatch is enabled. */
+class BackgroundDispatcher {
+  /// Methods which only read Apptimize state and may run concurrently with each other. Every other
+  /// method is run in order on a single serial thread so that writes such as attribute changes or
+  /// `setCustomerUserId` are applied in the order they were made.
+  private static final Set<String> CONCURRENT_METHODS = new HashSet<String>(Arrays.asList(
+      "getCustomerUserId",
+      "getApptimizeAnonUserId",
+      "getOffline",
+      "getMetadataState",
+      "getLibraryVersion",
+      "getPilotTargetingId",
+      "runTest",
+      "runTestAsync",
+      "isFeatureFlagOn",
+      "areFeatureFlagsOn",
+      "getApptimizeTestInfo",
+      "getApptimizeTestInfoChanges",
+      "getInstantUpdateAndWinnerInfo",
+      "getUserAttribute",
+      "getVariants",
+      "isDynamicVariableDeclared",
+      "getDynamicVariableValue",
+      "getManifestDynamicVariables",
+      "getEventDispatchStats",
+      "getStartupTiming",
+      "getPluginMetrics",
+      "registerFastPathName"
+  ));
+
+  /// Methods which are always run on the serial thread, even when background dispatch is disabled,
+  /// because they may take long enough to stall the platform thread.
+  private static final Set<String> ALWAYS_BACKGROUND_METHODS = new HashSet<String>(Arrays.asList(
+      "trackBatch"
+  ));
+
+  /// Size of the fixed pool running concurrent methods: one thread per core, between 2 and 4.
+  private static final int CONCURRENT_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+  private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+
+  private final ExecutorService serialExecutor;
+  private final ThreadPoolExecutor concurrentExecutor;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+  BackgroundDispatcher() {
+    serialExecutor = Executors.newSingleThreadExecutor(threadFactory("ApptimizeFlutterSerial"));
+    // A fixed pool: a pool with an unbounded queue never grows past its core size, and calls from
+    // Dart must not be rejected, so every thread is a core thread and idle ones time out instead.
+    concurrentExecutor = new ThreadPoolExecutor(
+        CONCURRENT_THREADS,
+        CONCURRENT_THREADS,
+        IDLE_THREAD_TIMEOUT_SECONDS,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        threadFactory("ApptimizeFlutterWorker"));
+    concurrentExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  static boolean isConcurrentMethod(String method) {
+    return CONCURRENT_METHODS.contains(method);
+  }
+
+  static boolean isAlwaysBackgroundMethod(String method) {
+    return ALWAYS_BACKGROUND_METHODS.contains(method);
+  }
+
+  void dispatch(String method, Runnable task) {
+    if (isConcurrentMethod(method)) {
+      concurrentExecutor.execute(task);
+    } else {
+      serialExecutor.execute(task);
+    }
+  }
+
+  /// Wraps `result` so that replies are always delivered on the platform thread.
+  Result onMainThread(@NonNull final Result result) {
+    return new Result() {
+      @Override
+      public void success(final Object value) {
+        mainHandler.post(new Runnable() {
+          public void run() { result.success(value); }
+        });
+      }
+
+      @Override
+      public void error(final String errorCode, final String errorMessage, final Object errorDetails) {
+        mainHandler.post(new Runnable() {
+          public void run() { result.error(errorCode, errorMessage, errorDetails); }
+        });
+      }
+
+      @Override
+      public void notImplemented() {
+        mainHandler.post(new Runnable() {
+          public void run() { result.notImplemented(); }
+        });
+      }
+    };
+  }
+
+  static ThreadFactory threadFactory(final String name) {
+    final AtomicInteger count = new AtomicInteger();
+    return new ThreadFactory() {
+      @Override
+      public Thread newThread(@NonNull Runnable runnable) {
+        Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+}
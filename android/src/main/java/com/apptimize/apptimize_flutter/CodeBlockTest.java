@@ -0,0 +1,98 @@
+package com.apptimize.apptimize_flutter;
+
+import android.util.Log;
+
+import com.apptimize.Apptimize;
+import com.apptimize.ApptimizeOptions;
+import com.apptimize.ApptimizeTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs a code block test on behalf of Dart and reports which code block Apptimize selected.
+ *
+ * Instances are cached per test name and reused as Apptimize's `ApptimizeTest` across runs, so a run
+ * allocates nothing. An instance records the variation Apptimize ran in a field, so runs of the same
+ * test are serialized; Apptimize may call back on any thread, as long as it does before `runTest`
+ * returns. Runs of different tests do not wait for each other.
+ */
+class CodeBlockTest extends ApptimizeTest {
+  private static final String TAG = "ApptimizeFlutterPlugin";
+  private static final int NOT_RUN = -1;
+  private static final int MAX_CACHED_TESTS = 512;
+
+  private static final ConcurrentHashMap<String, CodeBlockTest> cachedTests = new ConcurrentHashMap<String, CodeBlockTest>();
+
+  private final String testName;
+  private final List<String> codeBlocks;
+  private volatile int variation = NOT_RUN;
+
+  private CodeBlockTest(String testName, List<String> codeBlocks) {
+    this.testName = testName;
+    this.codeBlocks = codeBlocks;
+  }
+
+  /// Returns the test for `testName` with variations `codeBlocks`, in order. Only the most recent
+  /// layout of each test is cached, as a test keeps its layout unless the app changes.
+  static CodeBlockTest forLayout(String testName, List<String> codeBlocks) {
+    CodeBlockTest test = cachedTests.get(testName);
+    if (test == null || !test.codeBlocks.equals(codeBlocks)) {
+      if (test == null && cachedTests.size() >= MAX_CACHED_TESTS) {
+        cachedTests.clear();
+      }
+      test = new CodeBlockTest(testName, new ArrayList<String>(codeBlocks));
+      cachedTests.put(testName, test);
+    }
+    return test;
+  }
+
+  @Override
+  public void baseline() { variation = 0; }
+  @SuppressWarnings("unused")
+  public void variation1() { variation = 1; }
+  @SuppressWarnings("unused")
+  public void variation2() { variation = 2; }
+  @SuppressWarnings("unused")
+  public void variation3() { variation = 3; }
+  @SuppressWarnings("unused")
+  public void variation4() { variation = 4; }
+  @SuppressWarnings("unused")
+  public void variation5() { variation = 5; }
+  @SuppressWarnings("unused")
+  public void variation6() { variation = 6; }
+  @SuppressWarnings("unused")
+  public void variation7() { variation = 7; }
+  @SuppressWarnings("unused")
+  public void variation8() { variation = 8; }
+  @SuppressWarnings("unused")
+  public void variation9() { variation = 9; }
+
+  /// Runs the test and returns the name of the code block to run, or null for the baseline.
+  synchronized String run(ApptimizeOptions options) {
+    variation = NOT_RUN;
+    if (options != null) {
+      Apptimize.runTest(testName, this, options);
+    } else {
+      Apptimize.runTest(testName, this);
+    }
+
+    int result = variation;
+    if (result < 0) {
+      Log.w(TAG, "Test " + testName + " did not execute");
+      return null; // Baseline
+    }
+
+    if (result == 0) {
+      return null; // Baseline
+    }
+
+    if (result > codeBlocks.size()) {
+      Log.e(TAG, "Test executed unexpected variation");
+      return null; // Baseline
+    }
+
+    return codeBlocks.get(result - 1);
+  }
+}
@@ -0,0 +1,186 @@
+package com.apptimize.apptimize_flutter;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Declares the dynamic variables listed in a manifest the app bundles as a Flutter asset, so that
+ * apps with many variables do not have to declare each of them from Dart before starting Apptimize.
+ *
+ * The manifest is `apptimize_variables.json`, added to the app's `pubspec.yaml` assets. It is read
+ * when the first engine attaches, before any Dart code runs, and holds an array of variables:
+ *
+ *   [
+ *     { "name": "buttonColor", "type": "string", "defaultValue": "blue" },
+ *     { "name": "retryDelays", "type": "array.integer", "defaultValue": [1, 2, 4] }
+ *   ]
+ *
+ * Types are the type names Dart declares variables with. Invalid entries are logged and skipped.
+ */
+class DynamicVariableManifest {
+  static final String ASSET_NAME = "apptimize_variables.json";
+
+  private static final String TAG = "ApptimizeFlutterPlugin";
+
+  /// Handles of the declared variables, by type and then by name, as sent to Dart.
+  private final HashMap<String, HashMap<String, Integer>> handles = new HashMap<String, HashMap<String, Integer>>();
+  /// Default values of the declared variables, by type and then by name, as sent to Dart.
+  private final HashMap<String, HashMap<String, Object>> defaultValues = new HashMap<String, HashMap<String, Object>>();
+  private boolean isLoaded = false;
+
+  /// Declares the variables of the manifest at `path` in `assets`, unless a manifest was read
+  /// before. A missing manifest is ignored.
+  synchronized void load(AssetManager assets, String path) {
+    if (isLoaded) return;
+    isLoaded = true;
+
+    JSONArray variables;
+    try {
+      InputStream input = assets.open(path);
+      try {
+        variables = new JSONArray(readUtf8(input));
+      } finally {
+        input.close();
+      }
+    } catch (FileNotFoundException e) {
+      return;
+    } catch (Exception e) {
+      Log.w(TAG, "Ignoring unreadable " + ASSET_NAME, e);
+      return;
+    }
+
+    for (int i = 0; i < variables.length(); i++) {
+      try {
+        declare(variables.getJSONObject(i));
+      } catch (Exception e) {
+        Log.w(TAG, "Skipping dynamic variable " + i + " of " + ASSET_NAME, e);
+      }
+    }
+  }
+
+  /// Returns the `handles` and `defaultValues` of the variables the manifest declared, each by type
+  /// and then by name. Dart keeps the default values to report declarations with other defaults.
+  synchronized HashMap<String, Object> getDeclarations() {
+    HashMap<String, Object> declarations = new HashMap<String, Object>();
+    declarations.put("handles", copy(handles));
+    declarations.put("defaultValues", copy(defaultValues));
+    return declarations;
+  }
+
+  private static <T> HashMap<String, HashMap<String, T>> copy(HashMap<String, HashMap<String, T>> byType) {
+    HashMap<String, HashMap<String, T>> result = new HashMap<String, HashMap<String, T>>();
+    for (String type : byType.keySet()) {
+      result.put(type, new HashMap<String, T>(byType.get(type)));
+    }
+    return result;
+  }
+
+  private void declare(JSONObject variable) throws Exception {
+    if (!variable.has("name")) throw new MissingPluginArgumentException("name");
+    if (!variable.has("type")) throw new MissingPluginArgumentException("type");
+    if (!variable.has("defaultValue")) throw new MissingPluginArgumentException("defaultValue");
+
+    String name = variable.getString("name");
+    String type = variable.getString("type");
+    int typeTag = DynamicVariableRegistry.typeTagOf(type);
+    if (typeTag < 0) throw new InvalidPluginArgumentException("type", type);
+
+    Object defaultValue = defaultValue(typeTag, variable.get("defaultValue"));
+    int handle = ApptimizeFlutterPlugin.declareDynamicVariable(name, type, defaultValue);
+    if (handle == DynamicVariableRegistry.NO_HANDLE) return;
+
+    byName(handles, type).put(name, handle);
+    byName(defaultValues, type).put(name, defaultValue);
+  }
+
+  private static <T> HashMap<String, T> byName(HashMap<String, HashMap<String, T>> byType, String type) {
+    HashMap<String, T> byName = byType.get(type);
+    if (byName == null) {
+      byName = new HashMap<String, T>();
+      byType.put(type, byName);
+    }
+    return byName;
+  }
+
+  /// Converts a default value parsed from JSON to the form Dart sends it in for `typeTag`.
+  private static Object defaultValue(int typeTag, Object json) throws JSONException, InvalidPluginArgumentException {
+    if (json == JSONObject.NULL) return null;
+
+    switch (typeTag) {
+      case DynamicVariableRegistry.TYPE_ARRAY_STRING:
+      case DynamicVariableRegistry.TYPE_ARRAY_BOOL:
+      case DynamicVariableRegistry.TYPE_ARRAY_INTEGER:
+      case DynamicVariableRegistry.TYPE_ARRAY_DOUBLE: {
+        if (!(json instanceof JSONArray)) throw new InvalidPluginArgumentException("defaultValue", json.toString());
+
+        JSONArray array = (JSONArray) json;
+        ArrayList<Object> list = new ArrayList<Object>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+          list.add(element(typeTag - DynamicVariableRegistry.TYPE_ARRAY_STRING, array.get(i)));
+        }
+        return list;
+      }
+
+      case DynamicVariableRegistry.TYPE_DICTIONARY_STRING:
+      case DynamicVariableRegistry.TYPE_DICTIONARY_BOOL:
+      case DynamicVariableRegistry.TYPE_DICTIONARY_INTEGER:
+      case DynamicVariableRegistry.TYPE_DICTIONARY_DOUBLE: {
+        if (!(json instanceof JSONObject)) throw new InvalidPluginArgumentException("defaultValue", json.toString());
+
+        JSONObject object = (JSONObject) json;
+        HashMap<String, Object> map = new HashMap<String, Object>();
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+          String key = keys.next();
+          map.put(key, element(typeTag - DynamicVariableRegistry.TYPE_DICTIONARY_STRING, object.get(key)));
+        }
+        return map;
+      }
+
+      default:
+        return element(typeTag, json);
+    }
+  }
+
+  /// Converts a single value parsed from JSON for the scalar `typeTag`. JSON does not tell integers
+  /// and doubles apart, so any number is accepted for doubles.
+  private static Object element(int typeTag, Object json) throws InvalidPluginArgumentException {
+    switch (typeTag) {
+      case DynamicVariableRegistry.TYPE_STRING:
+        if (json instanceof String) return json;
+        break;
+      case DynamicVariableRegistry.TYPE_BOOL:
+        if (json instanceof Boolean) return json;
+        break;
+      case DynamicVariableRegistry.TYPE_INTEGER:
+        if (json instanceof Integer) return json;
+        break;
+      case DynamicVariableRegistry.TYPE_DOUBLE:
+        if (json instanceof Number) return ((Number) json).doubleValue();
+        break;
+    }
+    throw new InvalidPluginArgumentException("defaultValue", String.valueOf(json));
+  }
+
+  private static String readUtf8(InputStream input) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = input.read(buffer)) != -1) {
+      bytes.write(buffer, 0, read);
+    }
+    return bytes.toString("UTF-8");
+  }
+}
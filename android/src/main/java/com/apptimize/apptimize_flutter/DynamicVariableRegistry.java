@@ -0,0 +1,307 @@
+package com.apptimize.apptimize_flutter;
+
+import com.apptimize.ApptimizeVar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Array-indexed registry of declared dynamic variables, addressed by integer handles. */
+class DynamicVariableRegistry {
+  static final int TYPE_STRING = 0;
+  static final int TYPE_BOOL = 1;
+  static final int TYPE_INTEGER = 2;
+  static final int TYPE_DOUBLE = 3;
+  static final int TYPE_ARRAY_STRING = 4;
+  static final int TYPE_ARRAY_BOOL = 5;
+  static final int TYPE_ARRAY_INTEGER = 6;
+  static final int TYPE_ARRAY_DOUBLE = 7;
+  static final int TYPE_DICTIONARY_STRING = 8;
+  static final int TYPE_DICTIONARY_BOOL = 9;
+  static final int TYPE_DICTIONARY_INTEGER = 10;
+  static final int TYPE_DICTIONARY_DOUBLE = 11;
+
+  static final int NO_HANDLE = -1;
+
+  /// Stands for the `readValue` of a variable Dart did not read from the SDK.
+  private static final Object NOT_READ = new Object();
+
+  /// A declared variable. Entries are immutable apart from what reads record in them, so they can
+  /// be read without locking.
+  static final class Entry {
+    final String name;
+    final String type;
+    final String key;
+    final int typeTag;
+    final ApptimizeVar<?> variable;
+    /// The value Dart last read from the SDK in this process, or `NOT_READ`.
+    volatile Object readValue = NOT_READ;
+    /// Whether a read from Dart was answered from the snapshot values since the last
+    /// `takeSnapshotReadEntries`.
+    volatile boolean isSnapshotRead = false;
+
+    Entry(String name, String type, int typeTag, ApptimizeVar<?> variable) {
+      this.name = name;
+      this.type = type;
+      this.key = key(name, type);
+      this.typeTag = typeTag;
+      this.variable = variable;
+    }
+  }
+
+  private volatile Entry[] entries = new Entry[16];
+  private volatile int count = 0;
+  private final ConcurrentHashMap<String, Integer> handlesByKey = new ConcurrentHashMap<String, Integer>();
+  private volatile Map<String, Object> snapshotValues = null;
+
+  /// Resolves a dynamic variable type name as sent from Dart to its type tag, or -1 if the type is
+  /// not supported.
+  static int typeTagOf(String type) {
+    if (type == null) return -1;
+
+    switch (type) {
+      case "string": return TYPE_STRING;
+      case "bool": return TYPE_BOOL;
+      case "integer": return TYPE_INTEGER;
+      case "double": return TYPE_DOUBLE;
+      case "array.string": return TYPE_ARRAY_STRING;
+      case "array.bool": return TYPE_ARRAY_BOOL;
+      case "array.integer": return TYPE_ARRAY_INTEGER;
+      case "array.double": return TYPE_ARRAY_DOUBLE;
+      case "dictionary.string": return TYPE_DICTIONARY_STRING;
+      case "dictionary.bool": return TYPE_DICTIONARY_BOOL;
+      case "dictionary.integer": return TYPE_DICTIONARY_INTEGER;
+      case "dictionary.double": return TYPE_DICTIONARY_DOUBLE;
+      default: return -1;
+    }
+  }
+
+  /// Registers `variable` and returns its handle. Declaring the same name and type again replaces
+  /// the variable but keeps the handle.
+  synchronized int register(String name, String type, int typeTag, ApptimizeVar<?> variable) {
+    Entry entry = new Entry(name, type, typeTag, variable);
+    String key = entry.key;
+
+    Integer existing = handlesByKey.get(key);
+    if (existing != null) {
+      Entry replaced = entries[existing];
+      entry.readValue = replaced.readValue;
+      entry.isSnapshotRead = replaced.isSnapshotRead;
+      entries[existing] = entry;
+      return existing;
+    }
+
+    int handle = count;
+    if (handle == entries.length) {
+      entries = Arrays.copyOf(entries, handle * 2);
+    }
+    entries[handle] = entry;
+    count = handle + 1;
+    handlesByKey.put(key, handle);
+    return handle;
+  }
+
+  /// Looks up the handle of a variable by name and type, or `NO_HANDLE` if it is not declared.
+  int find(String name, String type) {
+    Integer handle = handlesByKey.get(key(name, type));
+    return handle != null ? handle : NO_HANDLE;
+  }
+
+  int size() {
+    return count;
+  }
+
+  /// Returns the entry for `handle`, or null if the handle is unknown.
+  Entry get(int handle) {
+    int size = count;
+    if (handle < 0 || handle >= size) return null;
+    return entries[handle];
+  }
+
+  /// Answers reads of the variables in `values`, keyed by `key`, from `values` instead of the SDK
+  /// until called again with null. Returns the values used before.
+  synchronized Map<String, Object> setSnapshotValues(Map<String, Object> values) {
+    Map<String, Object> previous = snapshotValues;
+    snapshotValues = values;
+    return previous;
+  }
+
+  /// Returns the variables whose reads were answered from the snapshot values since the last call,
+  /// and forgets them.
+  ArrayList<Entry> takeSnapshotReadEntries() {
+    ArrayList<Entry> snapshotReadEntries = new ArrayList<Entry>();
+    for (int handle = 0, size = count; handle < size; handle++) {
+      Entry entry = entries[handle];
+      if (entry.isSnapshotRead) {
+        entry.isSnapshotRead = false;
+        snapshotReadEntries.add(entry);
+      }
+    }
+    return snapshotReadEntries;
+  }
+
+  /// Returns the values Dart last read from the SDK in this process, by `key`.
+  HashMap<String, Object> getReadValues() {
+    HashMap<String, Object> values = new HashMap<String, Object>();
+    for (int handle = 0, size = count; handle < size; handle++) {
+      Entry entry = entries[handle];
+      Object value = entry.readValue;
+      if (value != NOT_READ) {
+        values.put(entry.key, value);
+      }
+    }
+    return values;
+  }
+
+  /// Returns the current value of the variable for `handle` as read from Dart, or null if the handle
+  /// is unknown. See `read`.
+  Object value(int handle) {
+    Entry entry = get(handle);
+    return entry != null ? read(entry) : null;
+  }
+
+  /// Returns the current value of the variable for `handle` as read from Dart, in the form it is
+  /// sent to Dart, or null if the handle is unknown. See `read` and `encode`.
+  Object encodedValue(int handle) {
+    Entry entry = get(handle);
+    return entry != null ? encode(entry.typeTag, read(entry)) : null;
+  }
+
+  /// Returns the value of `entry` for a read from Dart, like `value`, and records it in the entry:
+  /// values read from the SDK are the ones persisted, and reads answered from the snapshot values
+  /// are read from the SDK once it is live. Reading a variable counts as participating in its test,
+  /// so nothing else is read for persisting. The entry is only written when the value changes, so
+  /// repeated reads of the same value stay free of writes to shared memory.
+  Object read(Entry entry) {
+    Map<String, Object> values = snapshotValues;
+    if (values != null) {
+      Object value = values.get(entry.key);
+      if (value != null || values.containsKey(entry.key)) {
+        if (!entry.isSnapshotRead) {
+          entry.isSnapshotRead = true;
+        }
+        return value;
+      }
+    }
+
+    Object value = entry.variable.value();
+    if (entry.readValue != value) {
+      entry.readValue = value;
+    }
+    return value;
+  }
+
+  /// Returns the value of `entry`, from the snapshot values while they are set.
+  Object value(Entry entry) {
+    Map<String, Object> values = snapshotValues;
+    if (values != null) {
+      Object value = values.get(entry.key);
+      if (value != null || values.containsKey(entry.key)) return value;
+    }
+    return entry.variable.value();
+  }
+
+  /// Encodes a value of a variable of `typeTag` so that the codec writes its elements as typed data
+  /// instead of one boxed value at a time:
+  ///
+  ///   - integer lists become an `int[]`, or a `long[]` if an element does not fit into an int,
+  ///   - double lists become a `double[]`,
+  ///   - bool lists become a bitset, see `encodeBits`,
+  ///   - integer, double and bool dictionaries become a list of their keys followed by their
+  ///     values, encoded like a list.
+  ///
+  /// Other values, and values holding unexpected elements, are returned unchanged.
+  static Object encode(int typeTag, Object value) {
+    switch (typeTag) {
+      case TYPE_ARRAY_BOOL:
+      case TYPE_ARRAY_INTEGER:
+      case TYPE_ARRAY_DOUBLE: {
+        if (!(value instanceof Collection)) return value;
+        Object encoded = encodeElements(typeTag, (Collection<?>) value);
+        return encoded != null ? encoded : value;
+      }
+
+      case TYPE_DICTIONARY_BOOL:
+      case TYPE_DICTIONARY_INTEGER:
+      case TYPE_DICTIONARY_DOUBLE: {
+        if (!(value instanceof Map)) return value;
+        Map<?, ?> map = (Map<?, ?>) value;
+        ArrayList<String> keys = new ArrayList<String>(map.size());
+        for (Object key : map.keySet()) {
+          keys.add(String.valueOf(key));
+        }
+        // Elements of arrays and dictionaries share type tags at the same offset.
+        Object values = encodeElements(typeTag - (TYPE_DICTIONARY_STRING - TYPE_ARRAY_STRING), map.values());
+        if (values == null) return value;
+
+        ArrayList<Object> columns = new ArrayList<Object>(2);
+        columns.add(keys);
+        columns.add(values);
+        return columns;
+      }
+
+      default:
+        return value;
+    }
+  }
+
+  /// Encodes `elements` as typed data for an array `typeTag`, or returns null if an element does
+  /// not have the expected type.
+  private static Object encodeElements(int typeTag, Collection<?> elements) {
+    if (typeTag == TYPE_ARRAY_BOOL) {
+      return encodeBits(elements);
+    }
+
+    if (typeTag == TYPE_ARRAY_DOUBLE) {
+      double[] doubles = new double[elements.size()];
+      int i = 0;
+      for (Object element : elements) {
+        if (!(element instanceof Number)) return null;
+        doubles[i++] = ((Number) element).doubleValue();
+      }
+      return doubles;
+    }
+
+    int[] ints = new int[elements.size()];
+    int i = 0;
+    for (Object element : elements) {
+      if (!(element instanceof Integer)) return encodeLongs(elements);
+      ints[i++] = (Integer) element;
+    }
+    return ints;
+  }
+
+  private static long[] encodeLongs(Collection<?> elements) {
+    long[] longs = new long[elements.size()];
+    int i = 0;
+    for (Object element : elements) {
+      if (!(element instanceof Integer || element instanceof Long)) return null;
+      longs[i++] = ((Number) element).longValue();
+    }
+    return longs;
+  }
+
+  /// Packs booleans into a bitset: the first byte holds the number of unused bits of the last byte,
+  /// followed by the booleans from the least significant bit of each byte.
+  private static byte[] encodeBits(Collection<?> elements) {
+    int size = elements.size();
+    byte[] bits = new byte[1 + (size + 7) / 8];
+    bits[0] = (byte) ((8 - size % 8) % 8);
+    int i = 0;
+    for (Object element : elements) {
+      if (!(element instanceof Boolean)) return null;
+      if ((Boolean) element) {
+        bits[1 + (i >> 3)] |= 1 << (i & 7);
+      }
+      i++;
+    }
+    return bits;
+  }
+
+  static String key(String name, String type) {
+    return name + "$$" + type;
+  }
+}
@@ -0,0 +1,82 @@
+package com.apptimize.apptimize_flutter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodChannel;
+
+/** The plugin's connection to a single Flutter engine. */
+class EngineConnection {
+  static final String CHANNEL_NAME = "apptimize_flutter";
+
+  /// Events which are only sent to an engine while its Dart side listens to the matching stream.
+  /// Other events, such as dynamic variable pushes, are always sent.
+  static final Set<String> SUBSCRIBABLE_EVENTS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+      "ApptimizeEnrolledInExperiment",
+      "ApptimizeParticipatedInExperiment",
+      "ApptimizeUnenrolledInExperiment",
+      "ApptimizeInitialized",
+      "ApptimizeTestsProcessed",
+      "ApptimizeResumed",
+      "ApptimizeMetadataStateChanged",
+      "ApptimizeStartupTiming",
+      "ApptimizePersistedValuesChanged"
+  )));
+
+  final BinaryMessenger messenger;
+  final MethodChannel channel;
+  /// Targets only this engine, for events which are not sent to every engine.
+  final List<EngineConnection> singleTarget = Collections.singletonList(this);
+  private final Set<String> subscribedEvents = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final Set<String> replayedEvents = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  EngineConnection(BinaryMessenger messenger) {
+    this.messenger = messenger;
+    this.channel = new MethodChannel(messenger, CHANNEL_NAME);
+  }
+
+  void setSubscribed(String event, boolean subscribed) throws InvalidPluginArgumentException {
+    if (!SUBSCRIBABLE_EVENTS.contains(event)) throw new InvalidPluginArgumentException("event", event);
+
+    if (subscribed) {
+      subscribedEvents.add(event);
+    } else {
+      subscribedEvents.remove(event);
+    }
+  }
+
+  /// Returns true the first time it is called for `event`, when the events fired before the engine
+  /// subscribed to it should be replayed to it.
+  boolean markReplayed(String event) {
+    return replayedEvents.add(event);
+  }
+
+  boolean isSubscribed(String event) {
+    return !SUBSCRIBABLE_EVENTS.contains(event) || subscribedEvents.contains(event);
+  }
+
+  boolean isSubscribedToAny(Collection<String> events) {
+    for (String event : events) {
+      if (isSubscribed(event)) return true;
+    }
+    return false;
+  }
+
+  /// Handles the engine's fast path channel with `handler`, or stops handling it if null.
+  void setFastPathHandler(BinaryMessenger.BinaryMessageHandler handler) {
+    messenger.setMessageHandler(FastPathChannel.CHANNEL_NAME, handler);
+  }
+
+  /// Sends a method call which has already been encoded with the channel's codec. The same buffer
+  /// may be sent to several engines, each send reads it through its own view.
+  void sendEncoded(ByteBuffer encodedMethodCall) {
+    messenger.send(CHANNEL_NAME, encodedMethodCall.duplicate());
+  }
+}
@@ -0,0 +1,259 @@
+package com.apptimize.apptimize_flutter;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodCodec;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+/**
+ * Delivers SDK events to Dart on the main looper.
+ *
+ * SDK listeners may fire on any thread and in bursts, for example when a change of customer user id
+ * unenrolls and re-enrolls the user in every test. Events are queued without locking and drained
+ * once per frame. Consecutive events drained for the same engines are sent as a single
+ * `ApptimizeEventBatch` message, so that every engine receives events in the order they were
+ * queued. Events which only carry the latest state (such as metadata state changes) are coalesced
+ * while they wait to be delivered, and the latest state takes the place of the latest event.
+ *
+ * Events are dropped once `capacity` events are queued, except for events carrying state which the
+ * caller already recorded as delivered, as they would never be sent again.
+ *
+ * Each message is encoded once and the same buffer is sent to every engine which listens to at
+ * least one of the events it contains, so the cost of an event does not grow with the number of
+ * engines. Events nobody listens to are not sent at all, and SDK listeners check `hasSubscribers`
+ * to skip building them in the first place.
+ */
+class EventDispatcher {
+  static final String BATCH_METHOD = "ApptimizeEventBatch";
+
+  private static final int DEFAULT_CAPACITY = 1024;
+  private static final long FRAME_INTERVAL_MS = 16;
+
+  /// Marks a coalescing event whose arguments have already been taken by the drain.
+  private static final Object DRAINED = new Object();
+  /// Marks a coalescing event which was replaced by a later event, and is skipped by the drain.
+  private static final Object SUPERSEDED = new Object();
+
+  private static final class Event {
+    final String method;
+    final List<EngineConnection> targets;
+    final AtomicReference<Object> arguments;
+
+    Event(String method, Object arguments, List<EngineConnection> targets) {
+      this.method = method;
+      this.arguments = new AtomicReference<Object>(arguments);
+      this.targets = targets;
+    }
+  }
+
+  private final ConcurrentLinkedQueue<Event> queue = new ConcurrentLinkedQueue<Event>();
+  private final AtomicInteger queuedCount = new AtomicInteger();
+  private final ConcurrentHashMap<String, Event> pendingLatestEvents = new ConcurrentHashMap<String, Event>();
+  private final AtomicBoolean isDrainScheduled = new AtomicBoolean(false);
+
+  private final AtomicLong dispatchedCount = new AtomicLong();
+  private final AtomicLong coalescedCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+  private final AtomicLong batchCount = new AtomicLong();
+  private final AtomicLong unsubscribedCount = new AtomicLong();
+
+  private final int capacity;
+  private final PluginMetrics metrics;
+  private final MethodCodec codec = StandardMethodCodec.INSTANCE;
+  private final Handler mainHandler;
+  private final Runnable drainRunnable = new Runnable() {
+    public void run() {
+      drain();
+    }
+  };
+
+  EventDispatcher(PluginMetrics metrics) {
+    this(DEFAULT_CAPACITY, metrics);
+  }
+
+  EventDispatcher(int capacity, PluginMetrics metrics) {
+    this.capacity = capacity;
+    this.metrics = metrics;
+    this.mainHandler = new Handler(Looper.getMainLooper());
+  }
+
+  /// Queues `method` for delivery to every engine in `targets`. The event is dropped if the queue
+  /// is full.
+  void dispatch(String method, Object arguments, List<EngineConnection> targets) {
+    metrics.recordEventEmitted(method);
+    if (offer(new Event(method, arguments, targets))) {
+      scheduleDrain();
+    }
+  }
+
+  /// Queues `method` like `dispatch`, except that the event is never dropped. Used for events
+  /// carrying state the caller records as delivered once queued, which would otherwise never be
+  /// sent again. There is at most one such event per state change, so they may exceed the capacity.
+  void dispatchState(String method, Object arguments, List<EngineConnection> targets) {
+    metrics.recordEventEmitted(method);
+    enqueue(new Event(method, arguments, targets));
+    scheduleDrain();
+  }
+
+  /// Queues `method` like `dispatchState`, except that an earlier `method` event for the same
+  /// engines which is still waiting to be delivered is skipped, so only the latest state reaches
+  /// Dart, in the position of the latest event.
+  void dispatchLatest(String method, Object arguments, List<EngineConnection> targets) {
+    metrics.recordEventEmitted(method);
+    Event event = new Event(method, arguments, targets);
+    Event pending = pendingLatestEvents.put(method, event);
+    if (pending != null && pending.targets == targets && supersede(pending)) {
+      coalescedCount.incrementAndGet();
+    }
+
+    enqueue(event);
+    scheduleDrain();
+  }
+
+  /// Returns whether any engine in `targets` listens to `method`, so that SDK listeners can skip
+  /// building the arguments of events nobody listens to. Skipped events are counted as emitted and
+  /// unsubscribed, like the events the drain discards.
+  boolean hasSubscribers(String method, List<EngineConnection> targets) {
+    if (isAnySubscribed(targets, method)) return true;
+
+    metrics.recordEventEmitted(method);
+    unsubscribedCount.incrementAndGet();
+    return false;
+  }
+
+  HashMap<String, Object> getStats() {
+    HashMap<String, Object> stats = new HashMap<String, Object>();
+    stats.put("dispatched", dispatchedCount.get());
+    stats.put("coalesced", coalescedCount.get());
+    stats.put("dropped", droppedCount.get());
+    stats.put("batches", batchCount.get());
+    stats.put("unsubscribed", unsubscribedCount.get());
+    stats.put("queued", (long) queuedCount.get());
+    return stats;
+  }
+
+  private boolean offer(Event event) {
+    if (queuedCount.incrementAndGet() > capacity) {
+      queuedCount.decrementAndGet();
+      droppedCount.incrementAndGet();
+      return false;
+    }
+
+    queue.offer(event);
+    return true;
+  }
+
+  private void enqueue(Event event) {
+    queuedCount.incrementAndGet();
+    queue.offer(event);
+  }
+
+  /// Marks `event` as replaced by a later event, unless the drain already took it.
+  private static boolean supersede(Event event) {
+    Object current = event.arguments.get();
+    while (current != DRAINED && current != SUPERSEDED) {
+      if (event.arguments.compareAndSet(current, SUPERSEDED)) return true;
+      current = event.arguments.get();
+    }
+    return false;
+  }
+
+  private void scheduleDrain() {
+    if (isDrainScheduled.compareAndSet(false, true)) {
+      mainHandler.postDelayed(drainRunnable, FRAME_INTERVAL_MS);
+    }
+  }
+
+  private void drain() {
+    isDrainScheduled.set(false);
+
+    // Consecutive events for the same engines are batched. A batch is sent as soon as an event for
+    // other engines follows, so that no engine receives events out of order.
+    List<EngineConnection> batchTargets = null;
+    ArrayList<HashMap<String, Object>> batch = new ArrayList<HashMap<String, Object>>();
+
+    Event event;
+    while ((event = queue.poll()) != null) {
+      queuedCount.decrementAndGet();
+      pendingLatestEvents.remove(event.method, event);
+      Object arguments = event.arguments.getAndSet(DRAINED);
+      if (arguments == SUPERSEDED) continue;
+
+      if (!isAnySubscribed(event.targets, event.method)) {
+        unsubscribedCount.incrementAndGet();
+        continue;
+      }
+
+      if (batchTargets != null && !batchTargets.equals(event.targets)) {
+        send(batch, batchTargets);
+        batch = new ArrayList<HashMap<String, Object>>();
+      }
+      batchTargets = event.targets;
+
+      HashMap<String, Object> message = new HashMap<String, Object>();
+      message.put("method", event.method);
+      message.put("arguments", arguments);
+      batch.add(message);
+    }
+
+    if (!batch.isEmpty()) {
+      send(batch, batchTargets);
+    }
+  }
+
+  /// Encodes `batch` once and sends it to every engine in `targets` which listens to one of its
+  /// events.
+  private void send(ArrayList<HashMap<String, Object>> batch, List<EngineConnection> targets) {
+    dispatchedCount.addAndGet(batch.size());
+
+    LinkedHashSet<String> methods = new LinkedHashSet<String>();
+    for (HashMap<String, Object> message : batch) {
+      methods.add((String) message.get("method"));
+    }
+
+    String encodedMethod;
+    ByteBuffer encoded;
+    if (batch.size() == 1) {
+      encodedMethod = (String) batch.get(0).get("method");
+      encoded = codec.encodeMethodCall(new MethodCall((String) batch.get(0).get("method"), batch.get(0).get("arguments")));
+    } else {
+      HashMap<String, Object> batchArguments = new HashMap<String, Object>();
+      batchArguments.put("events", batch);
+      encodedMethod = BATCH_METHOD;
+      encoded = codec.encodeMethodCall(new MethodCall(BATCH_METHOD, batchArguments));
+      batchCount.incrementAndGet();
+    }
+
+    // Engines only receive messages holding an event they listen to. A batch can still contain
+    // other events for that engine, which its Dart side ignores as nobody listens to them.
+    int sentEngines = 0;
+    for (EngineConnection engine : targets) {
+      if (engine.isSubscribedToAny(methods)) {
+        engine.sendEncoded(encoded);
+        sentEngines++;
+      }
+    }
+    metrics.recordEventSent(encodedMethod, sentEngines, encoded.position());
+  }
+
+  static boolean isAnySubscribed(List<EngineConnection> targets, String method) {
+    for (EngineConnection engine : targets) {
+      if (engine.isSubscribed(method)) return true;
+    }
+    return false;
+  }
+}
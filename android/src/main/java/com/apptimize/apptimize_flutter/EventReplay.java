@@ -0,0 +1,82 @@
+package com.apptimize.apptimize_flutter;
+
+import com.apptimize.Apptimize;
+import com.apptimize.ApptimizeTestInfo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Remembers SDK events so that engines which attach after they fired can catch up, instead of
+ * polling the SDK's state.
+ *
+ * State events are sticky: only the fact that they fired is kept, as their arguments describe the
+ * current state and are rebuilt when replayed. Enrollment events are kept in a bounded ring of the
+ * most recent ones, holding the SDK's objects so that nothing is serialized unless replayed.
+ *
+ * Every recorded event gets an increasing sequence number. An engine only catches up on the events
+ * recorded before it subscribed to them, as it was sent the later ones.
+ */
+class EventReplay {
+  static final int ENROLLMENT_CAPACITY = 64;
+
+  /// A recorded event. `testInfo` and `unenrollmentReason` are only set for enrollment events.
+  static final class Entry {
+    final long sequence;
+    final String method;
+    final ApptimizeTestInfo testInfo;
+    final Apptimize.UnenrollmentReason unenrollmentReason;
+
+    Entry(long sequence, String method, ApptimizeTestInfo testInfo, Apptimize.UnenrollmentReason unenrollmentReason) {
+      this.sequence = sequence;
+      this.method = method;
+      this.testInfo = testInfo;
+      this.unenrollmentReason = unenrollmentReason;
+    }
+  }
+
+  private long sequence = 0;
+  private final HashMap<String, Entry> stickyEvents = new HashMap<String, Entry>();
+  private final Entry[] enrollments = new Entry[ENROLLMENT_CAPACITY];
+  private int nextEnrollment = 0;
+
+  /// Subscribes `engine` to the `method` events and returns the sequence number below which they are
+  /// replayed to it. Both happen under the lock events are recorded with, and events are sent after
+  /// they are recorded, so every event is either recorded before the returned sequence and replayed,
+  /// or recorded after the subscription and sent. One recorded just before may be sent as well.
+  synchronized long subscribe(EngineConnection engine, String method) throws InvalidPluginArgumentException {
+    engine.setSubscribed(method, true);
+    return sequence;
+  }
+
+  /// Records that the state event `method` fired.
+  synchronized void recordSticky(String method) {
+    stickyEvents.put(method, new Entry(sequence++, method, null, null));
+  }
+
+  /// Records an enrollment event, dropping the oldest one if the ring is full. `unenrollmentReason`
+  /// is null for enrollments.
+  synchronized void recordEnrollment(String method, ApptimizeTestInfo testInfo, Apptimize.UnenrollmentReason unenrollmentReason) {
+    enrollments[nextEnrollment] = new Entry(sequence++, method, testInfo, unenrollmentReason);
+    nextEnrollment = (nextEnrollment + 1) % ENROLLMENT_CAPACITY;
+  }
+
+  /// Returns the recorded `method` events with a sequence number below `sequence`, oldest first.
+  synchronized List<Entry> entriesBefore(String method, long sequence) {
+    ArrayList<Entry> entries = new ArrayList<Entry>();
+
+    Entry sticky = stickyEvents.get(method);
+    if (sticky != null && sticky.sequence < sequence) {
+      entries.add(sticky);
+    }
+
+    for (int i = 0; i < ENROLLMENT_CAPACITY; i++) {
+      Entry entry = enrollments[(nextEnrollment + i) % ENROLLMENT_CAPACITY];
+      if (entry != null && entry.sequence < sequence && entry.method.equals(method)) {
+        entries.add(entry);
+      }
+    }
+    return entries;
+  }
+}
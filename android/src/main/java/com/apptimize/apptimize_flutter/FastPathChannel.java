@@ -0,0 +1,209 @@
+package com.apptimize.apptimize_flutter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * Serves the hottest reads, dynamic variable values, feature flags and user attributes, over a
+ * binary channel next to the method channel. Requests skip the method name, the argument map and
+ * the codec, and replies are encoded into a buffer which is reused for every message.
+ *
+ * Requests are a 1-byte opcode followed by little-endian operands:
+ *
+ *   OP_GET_DYNAMIC_VARIABLE_VALUE  i32 variable handle
+ *   OP_IS_FEATURE_FLAG_ON          i32 name handle
+ *   OP_GET_USER_ATTRIBUTE          u8 attribute type, i32 name handle
+ *
+ * Feature flag and user attribute names are registered once through the method channel in exchange
+ * for a name handle. Replies are a 1-byte tag followed by the value: nothing for `TAG_NULL`,
+ * `TAG_FALSE` and `TAG_TRUE`, an i64 for `TAG_INT`, an f64 for `TAG_DOUBLE`, and an i32 byte length
+ * followed by UTF-8 for `TAG_STRING`. `TAG_UNSUPPORTED` asks Dart to make the call through the
+ * method channel instead, which reports errors as usual.
+ */
+class FastPathChannel implements BinaryMessenger.BinaryMessageHandler {
+  static final String CHANNEL_NAME = "apptimize_flutter/fast_path";
+
+  static final byte OP_GET_DYNAMIC_VARIABLE_VALUE = 1;
+  static final byte OP_IS_FEATURE_FLAG_ON = 2;
+  static final byte OP_GET_USER_ATTRIBUTE = 3;
+
+  static final byte ATTRIBUTE_STRING = 0;
+  static final byte ATTRIBUTE_INT = 1;
+  static final byte ATTRIBUTE_DOUBLE = 2;
+  static final byte ATTRIBUTE_BOOL = 3;
+
+  static final byte TAG_NULL = 0;
+  static final byte TAG_FALSE = 1;
+  static final byte TAG_TRUE = 2;
+  static final byte TAG_INT = 3;
+  static final byte TAG_DOUBLE = 4;
+  static final byte TAG_STRING = 5;
+  static final byte TAG_UNSUPPORTED = 6;
+
+  private static final String[] METRIC_NAMES = {
+      "fastPath",
+      "fastPath.getDynamicVariableValue",
+      "fastPath.isFeatureFlagOn",
+      "fastPath.getUserAttribute"
+  };
+
+  private static final HashMap<String, Integer> nameHandles = new HashMap<String, Integer>();
+  private static volatile String[] names = new String[16];
+  private static int nameCount = 0;
+
+  private final DynamicVariableRegistry variables;
+  private final PluginMetrics metrics;
+
+  // Only used on the platform thread, which handles every message of the channel. Flutter copies a
+  // reply before `reply` returns, so the buffer is free again for the next message.
+  private ByteBuffer reply = ByteBuffer.allocateDirect(256).order(ByteOrder.LITTLE_ENDIAN);
+
+  FastPathChannel(DynamicVariableRegistry variables, PluginMetrics metrics) {
+    this.variables = variables;
+    this.metrics = metrics;
+  }
+
+  /// Returns the handle requests refer to `name` by. Registering the same name again returns the
+  /// same handle.
+  static synchronized int registerName(String name) {
+    Integer existing = nameHandles.get(name);
+    if (existing != null) return existing;
+
+    int handle = nameCount;
+    String[] current = names;
+    if (handle == current.length) {
+      current = Arrays.copyOf(current, handle * 2);
+    }
+    current[handle] = name;
+    names = current;
+    nameCount = handle + 1;
+    nameHandles.put(name, handle);
+    return handle;
+  }
+
+  /// Returns the name registered for `handle`, or null if the handle is unknown.
+  static String name(int handle) {
+    String[] current = names;
+    return handle >= 0 && handle < current.length ? current[handle] : null;
+  }
+
+  @Override
+  public void onMessage(ByteBuffer message, BinaryMessenger.BinaryReply binaryReply) {
+    long startNanos = System.nanoTime();
+    int opcode = 0;
+    String errorCode = null;
+
+    reply.clear();
+    try {
+      message.order(ByteOrder.LITTLE_ENDIAN);
+      int start = message.position();
+      opcode = message.get(start);
+
+      if (opcode == OP_GET_DYNAMIC_VARIABLE_VALUE) {
+        int handle = message.getInt(start + 1);
+        if (variables.get(handle) != null) {
+          writeValue(variables.value(handle));
+        } else {
+          reply.put(TAG_UNSUPPORTED);
+        }
+      } else if (opcode == OP_IS_FEATURE_FLAG_ON) {
+        String name = name(message.getInt(start + 1));
+        if (name != null) {
+          reply.put(ApptimizeFlutterPlugin.isFeatureFlagOn(name) ? TAG_TRUE : TAG_FALSE);
+        } else {
+          reply.put(TAG_UNSUPPORTED);
+        }
+      } else if (opcode == OP_GET_USER_ATTRIBUTE) {
+        String type = attributeTypeName(message.get(start + 1));
+        String name = name(message.getInt(start + 2));
+        if (type != null && name != null) {
+          writeValue(ApptimizeFlutterPlugin.getUserAttribute(type, name));
+        } else {
+          reply.put(TAG_UNSUPPORTED);
+        }
+      } else {
+        opcode = 0;
+        reply.put(TAG_UNSUPPORTED);
+      }
+    }
+    catch (Exception e) {
+      errorCode = "UNKNOWN";
+      reply.clear();
+      reply.put(TAG_UNSUPPORTED);
+    }
+
+    metrics.recordCall(METRIC_NAMES[opcode], startNanos, errorCode);
+    binaryReply.reply(reply);
+  }
+
+  private static String attributeTypeName(byte type) {
+    switch (type) {
+      case ATTRIBUTE_STRING: return "string";
+      case ATTRIBUTE_INT: return "int";
+      case ATTRIBUTE_DOUBLE: return "double";
+      case ATTRIBUTE_BOOL: return "bool";
+      default: return null;
+    }
+  }
+
+  private void writeValue(Object value) {
+    if (value == null) {
+      reply.put(TAG_NULL);
+    } else if (value instanceof Boolean) {
+      reply.put((Boolean) value ? TAG_TRUE : TAG_FALSE);
+    } else if (value instanceof Integer || value instanceof Long) {
+      reply.put(TAG_INT);
+      reply.putLong(((Number) value).longValue());
+    } else if (value instanceof Double) {
+      reply.put(TAG_DOUBLE);
+      reply.putDouble((Double) value);
+    } else if (value instanceof String) {
+      writeString((String) value);
+    } else {
+      // Lists and maps keep going through the method channel's codec.
+      reply.put(TAG_UNSUPPORTED);
+    }
+  }
+
+  /// Writes `value` as UTF-8 straight into the reply, without an intermediate byte array.
+  private void writeString(String value) {
+    int length = value.length();
+    ensureCapacity(1 + 4 + 3 * length);
+
+    reply.put(TAG_STRING);
+    int lengthPosition = reply.position();
+    reply.putInt(0);
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        reply.put((byte) c);
+      } else if (c < 0x800) {
+        reply.put((byte) (0xc0 | (c >> 6)));
+        reply.put((byte) (0x80 | (c & 0x3f)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        reply.put((byte) (0xf0 | (codePoint >> 18)));
+        reply.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+        reply.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+        reply.put((byte) (0x80 | (codePoint & 0x3f)));
+      } else {
+        // Unpaired surrogates are replaced, as `String.getBytes` does.
+        if (Character.isSurrogate(c)) c = '?';
+        reply.put((byte) (0xe0 | (c >> 12)));
+        reply.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+        reply.put((byte) (0x80 | (c & 0x3f)));
+      }
+    }
+    reply.putInt(lengthPosition, reply.position() - lengthPosition - 4);
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (reply.capacity() < capacity) {
+      reply = ByteBuffer.allocateDirect(Math.max(capacity, reply.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+}
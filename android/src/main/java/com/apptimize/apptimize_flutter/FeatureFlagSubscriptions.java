@@ -0,0 +1,86 @@
+package com.apptimize.apptimize_flutter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Evaluates feature flags in bulk as packed bitsets, and keeps the subscriptions whose bitsets are
+ * re-sent to Dart when a flag flips.
+ *
+ * Bit `i` of a bitset, counting from the least significant bit of the first byte, is set if the
+ * `i`th flag name is on.
+ */
+class FeatureFlagSubscriptions {
+  static final class Subscription {
+    final int id;
+    final EngineConnection engine;
+    final List<EngineConnection> targets;
+    final List<String> names;
+    byte[] bits;
+
+    Subscription(int id, EngineConnection engine, List<String> names) {
+      this.id = id;
+      this.engine = engine;
+      this.targets = Collections.singletonList(engine);
+      this.names = names;
+      this.bits = evaluate(names);
+    }
+  }
+
+  private final HashMap<Integer, Subscription> subscriptions = new HashMap<Integer, Subscription>();
+  private int nextId = 1;
+
+  static byte[] evaluate(List<String> names) {
+    byte[] bits = new byte[(names.size() + 7) / 8];
+    for (int i = 0; i < names.size(); i++) {
+      if (ApptimizeFlutterPlugin.isFeatureFlagOn(names.get(i))) {
+        bits[i >> 3] |= 1 << (i & 7);
+      }
+    }
+    return bits;
+  }
+
+  synchronized Subscription subscribe(EngineConnection engine, List<String> names) {
+    Subscription subscription = new Subscription(nextId++, engine, new ArrayList<String>(names));
+    subscriptions.put(subscription.id, subscription);
+    return subscription;
+  }
+
+  /// Returns the subscription `id` of `engine`, or null if there is none.
+  synchronized Subscription get(EngineConnection engine, int id) {
+    Subscription subscription = subscriptions.get(id);
+    return subscription != null && subscription.engine == engine ? subscription : null;
+  }
+
+  synchronized void unsubscribe(EngineConnection engine, int id) {
+    if (get(engine, id) != null) {
+      subscriptions.remove(id);
+    }
+  }
+
+  synchronized void unsubscribeAll(EngineConnection engine) {
+    Iterator<Subscription> iterator = subscriptions.values().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().engine == engine) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /// Re-evaluates every subscription and returns those in which at least one flag flipped.
+  synchronized List<Subscription> refresh() {
+    ArrayList<Subscription> changed = new ArrayList<Subscription>();
+    for (Subscription subscription : subscriptions.values()) {
+      byte[] bits = evaluate(subscription.names);
+      if (!Arrays.equals(bits, subscription.bits)) {
+        subscription.bits = bits;
+        changed.add(subscription);
+      }
+    }
+    return changed;
+  }
+}
@@ -0,0 +1,9 @@
+package com.apptimize.apptimize_flutter;
+
+class InvalidPluginArgumentException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  public InvalidPluginArgumentException(String argument, String value) {
+    super("Invalid ApptimizeFlutterPlugin argument value '" + value + "' for '" + argument + "'");
+  }
+}
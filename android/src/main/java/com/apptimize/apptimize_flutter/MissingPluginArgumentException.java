@@ -0,0 +1,9 @@
+package com.apptimize.apptimize_flutter;
+
+class MissingPluginArgumentException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  public MissingPluginArgumentException(String argument) {
+    super("Missing ApptimizeFlutterPlugin argument '" + argument + "'");
+  }
+}
@@ -0,0 +1,122 @@
+package com.apptimize.apptimize_flutter;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which SDK participations are sent to Dart as `ApptimizeParticipatedInExperiment` events.
+ *
+ * Tests run from list items or animations participate on every frame, and each event carries a
+ * full test info. Depending on the policy set through `startApptimize`'s options, only the first
+ * participation in each test is sent, or at most one per test per window. A test counts as new
+ * again once the user is enrolled in or unenrolled from it.
+ *
+ * When each test was last sent is kept in an open addressing table of primitive longs keyed by test
+ * id, so filtering a participation allocates nothing and happens before its test info is serialized.
+ */
+class ParticipationFilter {
+  static final int POLICY_ALL = 0;
+  static final int POLICY_FIRST = 1;
+  static final int POLICY_WINDOWED = 2;
+
+  static final long DEFAULT_WINDOW_MILLIS = 1000;
+
+  /// Marks a slot which holds no test id.
+  private static final long EMPTY = Long.MIN_VALUE;
+  /// Marks a test whose participations count as new again.
+  private static final long NOT_SENT = Long.MIN_VALUE + 1;
+
+  private int policy = POLICY_ALL;
+  private long windowMillis = DEFAULT_WINDOW_MILLIS;
+  private long windowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_WINDOW_MILLIS);
+  private long[] testIds = new long[16];
+  private long[] sentNanos = newSlots(16);
+  private int size = 0;
+  private long filteredCount = 0;
+
+  /// Sets the policy, one of the `POLICY_` constants, and the window of `POLICY_WINDOWED`. Every
+  /// test counts as new afterwards. Windows too long to count in nanoseconds never end.
+  synchronized void setPolicy(int policy, long windowMillis) {
+    this.policy = policy;
+    this.windowMillis = windowMillis;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    testIds = new long[16];
+    sentNanos = newSlots(16);
+    size = 0;
+  }
+
+  synchronized int getPolicy() {
+    return policy;
+  }
+
+  synchronized long getWindowMillis() {
+    return windowMillis;
+  }
+
+  /// Returns whether a participation in `testId` at `nowNanos` should be sent, and if so records it
+  /// as sent.
+  synchronized boolean shouldSend(long testId, long nowNanos) {
+    if (policy == POLICY_ALL) return true;
+
+    int slot = slot(testId);
+    long lastSent = sentNanos[slot];
+    boolean isNew = lastSent == EMPTY || lastSent == NOT_SENT;
+    if (!isNew && (policy == POLICY_FIRST || nowNanos - lastSent < windowNanos)) {
+      filteredCount++;
+      return false;
+    }
+
+    if (lastSent == EMPTY) {
+      testIds[slot] = testId;
+      size++;
+    }
+    sentNanos[slot] = nowNanos;
+    if (size * 2 > testIds.length) grow();
+    return true;
+  }
+
+  /// Makes the next participation in `testId` count as new, after the user's enrollment changed.
+  synchronized void reset(long testId) {
+    if (policy == POLICY_ALL) return;
+
+    int slot = slot(testId);
+    if (sentNanos[slot] != EMPTY) {
+      sentNanos[slot] = NOT_SENT;
+    }
+  }
+
+  /// Returns the number of participations which were not sent.
+  synchronized long filteredCount() {
+    return filteredCount;
+  }
+
+  /// Returns the slot holding `testId`, or the empty slot it would be stored in.
+  private int slot(long testId) {
+    int mask = testIds.length - 1;
+    int slot = (int) ((testId * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+    while (sentNanos[slot] != EMPTY && testIds[slot] != testId) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void grow() {
+    long[] oldTestIds = testIds;
+    long[] oldSentNanos = sentNanos;
+    testIds = new long[oldTestIds.length * 2];
+    sentNanos = newSlots(oldTestIds.length * 2);
+    for (int i = 0; i < oldTestIds.length; i++) {
+      if (oldSentNanos[i] == EMPTY) continue;
+
+      int slot = slot(oldTestIds[i]);
+      testIds[slot] = oldTestIds[i];
+      sentNanos[slot] = oldSentNanos[i];
+    }
+  }
+
+  private static long[] newSlots(int length) {
+    long[] slots = new long[length];
+    Arrays.fill(slots, EMPTY);
+    return slots;
+  }
+}
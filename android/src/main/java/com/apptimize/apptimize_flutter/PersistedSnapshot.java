@@ -0,0 +1,227 @@
+package com.apptimize.apptimize_flutter;
+
+import android.util.Log;
+
+import com.apptimize.Apptimize;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.flutter.plugin.common.StandardMessageCodec;
+
+/**
+ * Persists feature flag states and dynamic variable values across launches, so that reads made
+ * while the SDK is still starting are answered with the values of the previous launch instead of
+ * defaults.
+ *
+ * Reading a feature flag or dynamic variable counts as participating in its test, so only the
+ * values Dart read from the SDK in this process are persisted, recorded when a read returns a
+ * different value than the last one. Reads answered from the snapshot are read from the SDK once
+ * its live state arrives, at which point `replace` records the participations and reports which
+ * values turned out to differ.
+ *
+ * The snapshot is written on a background thread after experiments are processed and when an engine
+ * detaches, and loaded through a memory mapping when the first engine attaches, before Dart can
+ * read anything.
+ *
+ * The file holds a map encoded with Flutter's standard message codec:
+ *
+ *   version           int, `VERSION`
+ *   appKey            the app key the values were read for
+ *   featureFlags      map of feature flag name to bool
+ *   dynamicVariables  map of `DynamicVariableRegistry.key` to value
+ */
+class PersistedSnapshot {
+  private static final String TAG = "ApptimizeFlutterPlugin";
+  private static final String FILE_NAME = "apptimize_flutter_snapshot.bin";
+  private static final int VERSION = 1;
+  /// Feature flags read beyond this many are not persisted.
+  static final int MAX_FEATURE_FLAGS = 512;
+
+  /// States of the feature flags Dart read from the SDK in this process, by name.
+  private final ConcurrentHashMap<String, Boolean> readFeatureFlags = new ConcurrentHashMap<String, Boolean>();
+  /// Names of the feature flags whose reads were answered from the snapshot.
+  private final ConcurrentHashMap<String, Boolean> snapshotReadFeatureFlags = new ConcurrentHashMap<String, Boolean>();
+  private final DynamicVariableRegistry variables;
+
+  private volatile Map<String, Boolean> featureFlags = null;
+  private String appKey = null;
+  private String persistedAppKey = null;
+  private volatile File file = null;
+  private boolean isLive = false;
+  private ByteBuffer lastWritten = null;
+
+  PersistedSnapshot(DynamicVariableRegistry variables) {
+    this.variables = variables;
+  }
+
+  /// Loads the snapshot persisted in `filesDir`, unless a snapshot was loaded before or the live
+  /// SDK state has already arrived. A missing or unreadable snapshot is ignored, as is one which was
+  /// persisted for a different app key than the SDK was started with.
+  ///
+  /// Called on the platform thread, as the file is small. Only the first call takes the lock, so
+  /// later engines never wait for a snapshot being saved.
+  void load(File filesDir) {
+    if (file != null) return;
+
+    synchronized (this) {
+      if (file == null) {
+        File snapshotFile = new File(filesDir, FILE_NAME);
+        loadFile(snapshotFile);
+        file = snapshotFile;
+      }
+    }
+  }
+
+  private void loadFile(File file) {
+    if (isLive || !file.exists()) return;
+
+    try {
+      FileInputStream input = new FileInputStream(file);
+      try {
+        FileChannel channel = input.getChannel();
+        Object decoded = StandardMessageCodec.INSTANCE.decodeMessage(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        if (!(decoded instanceof Map) || !Integer.valueOf(VERSION).equals(((Map) decoded).get("version"))) return;
+
+        Map snapshot = (Map) decoded;
+        Object flags = snapshot.get("featureFlags");
+        Object values = snapshot.get("dynamicVariables");
+        if (!(flags instanceof Map) || !(values instanceof Map)) return;
+
+        persistedAppKey = (String) snapshot.get("appKey");
+        if (appKey != null && !appKey.equals(persistedAppKey)) return;
+
+        featureFlags = (Map<String, Boolean>) flags;
+        variables.setSnapshotValues((Map<String, Object>) values);
+      } finally {
+        input.close();
+      }
+    } catch (Exception e) {
+      Log.w(TAG, "Ignoring unreadable persisted snapshot", e);
+      featureFlags = null;
+      variables.setSnapshotValues(null);
+    }
+  }
+
+  /// Sets the app key the SDK is started with, which snapshots are persisted for. A loaded snapshot
+  /// which was persisted for a different app key is dropped.
+  synchronized void setAppKey(String appKey) {
+    this.appKey = appKey;
+    if (featureFlags != null && !appKey.equals(persistedAppKey)) {
+      featureFlags = null;
+      variables.setSnapshotValues(null);
+    }
+  }
+
+  /// Returns whether the feature flag `name` is on, as persisted while the SDK is starting and as
+  /// reported by the SDK afterwards.
+  boolean isFeatureFlagOn(String name) {
+    Map<String, Boolean> flags = featureFlags;
+    if (flags != null) {
+      Boolean isOn = flags.get(name);
+      if (isOn != null) {
+        if (!snapshotReadFeatureFlags.containsKey(name)) {
+          snapshotReadFeatureFlags.put(name, Boolean.TRUE);
+        }
+        return isOn;
+      }
+    }
+
+    // Only written when the state changes, so repeated reads only look the flag up.
+    Boolean isOn = Apptimize.isFeatureFlagOn(name);
+    Boolean readIsOn = readFeatureFlags.get(name);
+    if (readIsOn != null ? !readIsOn.equals(isOn) : readFeatureFlags.size() < MAX_FEATURE_FLAGS) {
+      readFeatureFlags.put(name, isOn);
+    }
+    return isOn;
+  }
+
+  /// Stops answering reads from the snapshot now that the live SDK state arrived. Returns the
+  /// arguments of the event listing the feature flags and dynamic variables whose live values
+  /// differ from the snapshot, or null if the snapshot was not in use or nothing differs.
+  synchronized HashMap<String, Object> replace() {
+    isLive = true;
+    Map<String, Boolean> flags = featureFlags;
+    Map<String, Object> values = variables.setSnapshotValues(null);
+    featureFlags = null;
+    if (flags == null && values == null) return null;
+
+    // Only the values Dart read from the snapshot are read from the SDK, as they are the ones it
+    // participated with.
+    ArrayList<String> changedFeatureFlags = new ArrayList<String>();
+    if (flags != null) {
+      for (String name : new ArrayList<String>(snapshotReadFeatureFlags.keySet())) {
+        snapshotReadFeatureFlags.remove(name);
+        if (!flags.get(name).equals(isFeatureFlagOn(name))) {
+          changedFeatureFlags.add(name);
+        }
+      }
+    }
+
+    ArrayList<Object> changedDynamicVariables = new ArrayList<Object>();
+    if (values != null) {
+      for (DynamicVariableRegistry.Entry entry : variables.takeSnapshotReadEntries()) {
+        Object persistedValue = values.get(entry.key);
+        Object value = variables.read(entry);
+        if (persistedValue == null ? value == null : persistedValue.equals(value)) continue;
+
+        HashMap<String, Object> changedVariable = new HashMap<String, Object>();
+        changedVariable.put("name", entry.name);
+        changedVariable.put("type", entry.type);
+        changedDynamicVariables.add(changedVariable);
+      }
+    }
+
+    if (changedFeatureFlags.isEmpty() && changedDynamicVariables.isEmpty()) return null;
+
+    HashMap<String, Object> arguments = new HashMap<String, Object>();
+    arguments.put("featureFlags", changedFeatureFlags);
+    arguments.put("dynamicVariables", changedDynamicVariables);
+    return arguments;
+  }
+
+  /// Persists the feature flag states and dynamic variable values Dart read from the SDK in this
+  /// process, unless they are unchanged since the last write. Does nothing before an engine
+  /// attached and the SDK was started, or while the snapshot is still in use.
+  synchronized void save() {
+    if (file == null || appKey == null || !isLive) return;
+
+    HashMap<String, Boolean> flags = new HashMap<String, Boolean>(readFeatureFlags);
+    HashMap<String, Object> values = variables.getReadValues();
+
+    HashMap<String, Object> snapshot = new HashMap<String, Object>();
+    snapshot.put("version", VERSION);
+    snapshot.put("appKey", appKey);
+    snapshot.put("featureFlags", flags);
+    snapshot.put("dynamicVariables", values);
+
+    ByteBuffer encoded = StandardMessageCodec.INSTANCE.encodeMessage(snapshot);
+    encoded.flip();
+    if (encoded.equals(lastWritten)) return;
+
+    // Written to a temporary file first so that a crash never leaves a partial snapshot behind.
+    File temporaryFile = new File(file.getPath() + ".tmp");
+    try {
+      FileOutputStream output = new FileOutputStream(temporaryFile);
+      try {
+        output.getChannel().write(encoded.duplicate());
+        output.getFD().sync();
+      } finally {
+        output.close();
+      }
+      if (!temporaryFile.renameTo(file)) throw new IOException("Could not rename " + temporaryFile);
+      lastWritten = encoded;
+    } catch (IOException e) {
+      Log.w(TAG, "Could not persist snapshot", e);
+      temporaryFile.delete();
+    }
+  }
+}
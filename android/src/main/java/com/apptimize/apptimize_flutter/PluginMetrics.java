@@ -0,0 +1,208 @@
+package com.apptimize.apptimize_flutter;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts what the plugin does: method calls with their errors and handling latency, and events with
+ * the engines they were sent to and their encoded size.
+ *
+ * Recording never locks. Counters are striped by thread so that threads recording at the same time
+ * rarely update the same cache line, and are only summed up when the metrics are read. Calls of
+ * methods the plugin does not know are counted under `UNKNOWN_METHOD`, so that Dart cannot make the
+ * metrics grow without bound.
+ */
+class PluginMetrics {
+  private static final String TAG = "ApptimizeFlutterPlugin";
+
+  /// Latency bucket `i` counts calls which took less than 2^`i` microseconds, and the last bucket
+  /// counts every slower call.
+  static final int LATENCY_BUCKETS = 24;
+
+  static final String[] ERROR_CODES = { "INVALID_ARGUMENT", "ARGUMENT_MISSING", "UNKNOWN", "NOT_IMPLEMENTED" };
+
+  static final String UNKNOWN_METHOD = "unknown";
+
+  /// A set of counters striped across a fixed number of stripes. Each stripe holds one cell per
+  /// counter, and stripes are padded a cache line apart, so a set of `n` counters takes
+  /// `STRIPES * (n + PADDING)` longs.
+  static final class StripedCounters {
+    private static final int STRIPES = 8;
+    /// Longs in a cache line.
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int stripeLength;
+
+    StripedCounters(int counters) {
+      this.stripeLength = counters + PADDING;
+      this.cells = new AtomicLongArray(STRIPES * stripeLength);
+    }
+
+    void add(int counter, long value) {
+      int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+      cells.addAndGet(stripe * stripeLength + counter, value);
+    }
+
+    long sum(int counter) {
+      long sum = 0;
+      for (int stripe = 0; stripe < STRIPES; stripe++) {
+        sum += cells.get(stripe * stripeLength + counter);
+      }
+      return sum;
+    }
+  }
+
+  private static final int METHOD_CALLS = 0;
+  private static final int METHOD_TOTAL_MICROS = 1;
+  private static final int METHOD_ERRORS = 2;
+  private static final int METHOD_LATENCY_BUCKETS = METHOD_ERRORS + ERROR_CODES.length;
+  private static final int METHOD_COUNTERS = METHOD_LATENCY_BUCKETS + LATENCY_BUCKETS;
+
+  private static final int EVENT_EMITTED = 0;
+  private static final int EVENT_MESSAGES = 1;
+  private static final int EVENT_ENGINES = 2;
+  private static final int EVENT_PAYLOAD_BYTES = 3;
+  private static final int EVENT_COUNTERS = 4;
+
+  private final ConcurrentHashMap<String, StripedCounters> methods = new ConcurrentHashMap<String, StripedCounters>();
+  private final ConcurrentHashMap<String, StripedCounters> events = new ConcurrentHashMap<String, StripedCounters>();
+
+  private ScheduledExecutorService logExecutor = null;
+  private ScheduledFuture<?> logTask = null;
+
+  /// Records a call of `method` which started at `startNanos`, as returned by `System.nanoTime`.
+  /// `errorCode` is one of `ERROR_CODES`, or null if the call succeeded.
+  void recordCall(String method, long startNanos, String errorCode) {
+    long micros = Math.max(0, (System.nanoTime() - startNanos) / 1000);
+    StripedCounters counters = counters(methods, "NOT_IMPLEMENTED".equals(errorCode) ? UNKNOWN_METHOD : method, METHOD_COUNTERS);
+    counters.add(METHOD_CALLS, 1);
+    counters.add(METHOD_TOTAL_MICROS, micros);
+    counters.add(METHOD_LATENCY_BUCKETS + latencyBucket(micros), 1);
+
+    if (errorCode != null) {
+      for (int i = 0; i < ERROR_CODES.length; i++) {
+        if (ERROR_CODES[i].equals(errorCode)) {
+          counters.add(METHOD_ERRORS + i, 1);
+        }
+      }
+    }
+  }
+
+  /// Records that the SDK emitted an `event`.
+  void recordEventEmitted(String event) {
+    counters(events, event, EVENT_COUNTERS).add(EVENT_EMITTED, 1);
+  }
+
+  /// Records that a message for `event`, or a batch of events, of `payloadBytes` was sent to
+  /// `engines` engines.
+  void recordEventSent(String event, int engines, int payloadBytes) {
+    StripedCounters counters = counters(events, event, EVENT_COUNTERS);
+    counters.add(EVENT_MESSAGES, 1);
+    counters.add(EVENT_ENGINES, engines);
+    counters.add(EVENT_PAYLOAD_BYTES, (long) engines * payloadBytes);
+  }
+
+  HashMap<String, Object> getMetrics() {
+    HashMap<String, Object> methodMetrics = new HashMap<String, Object>();
+    for (Map.Entry<String, StripedCounters> entry : methods.entrySet()) {
+      StripedCounters counters = entry.getValue();
+
+      HashMap<String, Object> errors = new HashMap<String, Object>();
+      for (int i = 0; i < ERROR_CODES.length; i++) {
+        errors.put(ERROR_CODES[i], counters.sum(METHOD_ERRORS + i));
+      }
+
+      ArrayList<Long> latencyBuckets = new ArrayList<Long>(LATENCY_BUCKETS);
+      for (int i = 0; i < LATENCY_BUCKETS; i++) {
+        latencyBuckets.add(counters.sum(METHOD_LATENCY_BUCKETS + i));
+      }
+
+      HashMap<String, Object> method = new HashMap<String, Object>();
+      method.put("calls", counters.sum(METHOD_CALLS));
+      method.put("totalMicros", counters.sum(METHOD_TOTAL_MICROS));
+      method.put("errors", errors);
+      method.put("latencyBuckets", latencyBuckets);
+      methodMetrics.put(entry.getKey(), method);
+    }
+
+    HashMap<String, Object> eventMetrics = new HashMap<String, Object>();
+    for (Map.Entry<String, StripedCounters> entry : events.entrySet()) {
+      StripedCounters counters = entry.getValue();
+      HashMap<String, Object> event = new HashMap<String, Object>();
+      event.put("emitted", counters.sum(EVENT_EMITTED));
+      event.put("messages", counters.sum(EVENT_MESSAGES));
+      event.put("engines", counters.sum(EVENT_ENGINES));
+      event.put("payloadBytes", counters.sum(EVENT_PAYLOAD_BYTES));
+      eventMetrics.put(entry.getKey(), event);
+    }
+
+    HashMap<String, Object> metrics = new HashMap<String, Object>();
+    metrics.put("methods", methodMetrics);
+    metrics.put("events", eventMetrics);
+    return metrics;
+  }
+
+  /// Logs a summary of the metrics every `intervalMillis`, or stops logging if it is 0 or less.
+  synchronized void setLogInterval(long intervalMillis) {
+    if (logTask != null) {
+      logTask.cancel(false);
+      logTask = null;
+    }
+    if (intervalMillis <= 0) return;
+
+    if (logExecutor == null) {
+      ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, BackgroundDispatcher.threadFactory("ApptimizeFlutterMetrics"));
+      executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+      logExecutor = executor;
+    }
+    logTask = logExecutor.scheduleAtFixedRate(new Runnable() {
+      public void run() {
+        log();
+      }
+    }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void log() {
+    for (Map.Entry<String, StripedCounters> entry : methods.entrySet()) {
+      StripedCounters counters = entry.getValue();
+      long calls = counters.sum(METHOD_CALLS);
+      long errors = 0;
+      for (int i = 0; i < ERROR_CODES.length; i++) {
+        errors += counters.sum(METHOD_ERRORS + i);
+      }
+      long averageMicros = calls > 0 ? counters.sum(METHOD_TOTAL_MICROS) / calls : 0;
+      Log.i(TAG, "Method " + entry.getKey() + ": " + calls + " calls, " + errors + " errors, " + averageMicros + "us average");
+    }
+
+    for (Map.Entry<String, StripedCounters> entry : events.entrySet()) {
+      StripedCounters counters = entry.getValue();
+      Log.i(TAG, "Event " + entry.getKey() + ": " + counters.sum(EVENT_EMITTED) + " emitted, " + counters.sum(EVENT_MESSAGES)
+          + " messages to " + counters.sum(EVENT_ENGINES) + " engines, " + counters.sum(EVENT_PAYLOAD_BYTES) + " bytes");
+    }
+  }
+
+  private static StripedCounters counters(ConcurrentHashMap<String, StripedCounters> map, String name, int size) {
+    StripedCounters counters = map.get(name);
+    if (counters == null) {
+      StripedCounters created = new StripedCounters(size);
+      counters = map.putIfAbsent(name, created);
+      if (counters == null) counters = created;
+    }
+    return counters;
+  }
+
+  private static int latencyBucket(long micros) {
+    int bucket = 64 - Long.numberOfLeadingZeros(micros);
+    return Math.min(bucket, LATENCY_BUCKETS - 1);
+  }
+}
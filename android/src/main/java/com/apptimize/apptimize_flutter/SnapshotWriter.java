@@ -0,0 +1,167 @@
+package com.apptimize.apptimize_flutter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * Writes bulk snapshots such as `getApptimizeTestInfo` in a compact, schema-based binary format.
+ *
+ * A snapshot is laid out as:
+ *
+ *   u8 version, u8 kind
+ *   varint string count, then each string as varint UTF-8 length and bytes
+ *   varint record count, then each record as
+ *     [varint key string index, for keyed snapshots]
+ *     fields as u8 field id followed by its value, terminated by field id 0
+ *
+ * Strings are written once into the string table and referenced by index, integers are zigzag
+ * varints, dates are zigzag varint milliseconds since the epoch, truncated to the minute like the
+ * map based format's dates, and booleans are a single byte.
+ * Null fields are omitted. The field ids and value types of each kind are fixed by the constants
+ * below and must match the reader in the Dart library.
+ */
+class SnapshotWriter {
+  static final int VERSION = 1;
+
+  static final int KIND_TEST_INFO = 1;
+  static final int KIND_WINNER_INFO = 2;
+  static final int KIND_VARIANTS = 3;
+
+  static final int TEST_INFO_TEST_NAME = 1;
+  static final int TEST_INFO_ENROLLED_VARIANT_NAME = 2;
+  static final int TEST_INFO_TEST_ID = 3;
+  static final int TEST_INFO_ENROLLED_VARIANT_ID = 4;
+  static final int TEST_INFO_TEST_STARTED_DATE = 5;
+  static final int TEST_INFO_TEST_ENROLLED_DATE = 6;
+  static final int TEST_INFO_CYCLE = 7;
+  static final int TEST_INFO_CURRENT_PHASE = 8;
+  static final int TEST_INFO_PARTICIPATION_PHASE = 9;
+  static final int TEST_INFO_USER_HAS_PARTICIPATED = 10;
+  static final int TEST_INFO_USER_ID = 11;
+  static final int TEST_INFO_ANONYMOUS_USER_ID = 12;
+  static final int TEST_INFO_EXPERIMENT_TYPE = 13;
+
+  static final int WINNER_INFO_IS_INSTANT_UPDATE = 1;
+  static final int WINNER_INFO_WINNING_EXPERIMENT_NAME = 2;
+  static final int WINNER_INFO_WINNING_EXPERIMENT_ID = 3;
+  static final int WINNER_INFO_INSTANT_UPDATE_NAME = 4;
+  static final int WINNER_INFO_INSTANT_UPDATE_ID = 5;
+  static final int WINNER_INFO_WINNING_VARIANT_NAME = 6;
+  static final int WINNER_INFO_WINNING_VARIANT_ID = 7;
+  static final int WINNER_INFO_START_DATE = 8;
+  static final int WINNER_INFO_USER_ID = 9;
+  static final int WINNER_INFO_ANONYMOUS_USER_ID = 10;
+
+  static final int VARIANT_EXPERIMENT_NAME = 1;
+  static final int VARIANT_EXPERIMENT_ID = 2;
+  static final int VARIANT_VARIANT_NAME = 3;
+  static final int VARIANT_VARIANT_ID = 4;
+
+  private static final int END_OF_RECORD = 0;
+  private static final long MILLIS_PER_MINUTE = 60 * 1000;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final int kind;
+  private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+  private final ArrayList<String> strings = new ArrayList<String>();
+  private final HashMap<String, Integer> stringIndexes = new HashMap<String, Integer>();
+  private int recordCount = 0;
+  private boolean isInRecord = false;
+
+  SnapshotWriter(int kind) {
+    this.kind = kind;
+  }
+
+  /// Starts a record of a snapshot which is a list, such as variants.
+  void beginRecord() {
+    endRecord();
+    recordCount++;
+    isInRecord = true;
+  }
+
+  /// Starts a record of a snapshot which is keyed by name, such as test info.
+  void beginRecord(String key) {
+    beginRecord();
+    writeVarint(records, stringIndex(key));
+  }
+
+  void writeString(int field, String value) {
+    if (value == null) return;
+    records.write(field);
+    writeVarint(records, stringIndex(value));
+  }
+
+  void writeLong(int field, Number value) {
+    if (value == null) return;
+    records.write(field);
+    writeZigzag(records, value.longValue());
+  }
+
+  void writeBoolean(int field, Boolean value) {
+    if (value == null) return;
+    records.write(field);
+    records.write(value ? 1 : 0);
+  }
+
+  void writeDate(int field, Date value) {
+    if (value == null) return;
+    long millis = value.getTime();
+    long millisOfMinute = millis % MILLIS_PER_MINUTE;
+    if (millisOfMinute < 0) {
+      millisOfMinute += MILLIS_PER_MINUTE;
+    }
+    records.write(field);
+    writeZigzag(records, millis - millisOfMinute);
+  }
+
+  byte[] toByteArray() {
+    endRecord();
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream(records.size() + strings.size() * 16 + 8);
+    output.write(VERSION);
+    output.write(kind);
+
+    writeVarint(output, strings.size());
+    for (String string : strings) {
+      byte[] bytes = string.getBytes(UTF8);
+      writeVarint(output, bytes.length);
+      output.write(bytes, 0, bytes.length);
+    }
+
+    writeVarint(output, recordCount);
+    byte[] body = records.toByteArray();
+    output.write(body, 0, body.length);
+    return output.toByteArray();
+  }
+
+  private void endRecord() {
+    if (!isInRecord) return;
+    records.write(END_OF_RECORD);
+    isInRecord = false;
+  }
+
+  private int stringIndex(String value) {
+    Integer index = stringIndexes.get(value);
+    if (index == null) {
+      index = strings.size();
+      strings.add(value);
+      stringIndexes.put(value, index);
+    }
+    return index;
+  }
+
+  private static void writeZigzag(ByteArrayOutputStream output, long value) {
+    writeVarint(output, (value << 1) ^ (value >> 63));
+  }
+
+  private static void writeVarint(ByteArrayOutputStream output, long value) {
+    while ((value & ~0x7FL) != 0) {
+      output.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    output.write((int) value);
+  }
+}
@@ -0,0 +1,80 @@
+package com.apptimize.apptimize_flutter;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.apptimize.Apptimize;
+import com.apptimize.ApptimizeOptions;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs `Apptimize.setup` off the platform thread, one setup at a time, and records when each phase
+ * of startup was reached.
+ *
+ * Starting again with the app key of a setup which is in flight or has completed joins that setup
+ * instead of running it again, so hot restarts and additional engines do not set Apptimize up twice.
+ * Apptimize can only be set up once per process, so starting with any other app key is rejected.
+ */
+class StartupPipeline {
+  static final String PHASE_SETUP_REQUESTED = "setupRequested";
+  static final String PHASE_SETUP_STARTED = "setupStarted";
+  static final String PHASE_SETUP_COMPLETED = "setupCompleted";
+  static final String PHASE_INITIALIZED = "initialized";
+  static final String PHASE_EXPERIMENTS_PROCESSED = "experimentsProcessed";
+  static final String PHASE_METADATA_UP_TO_DATE = "metadataUpToDate";
+
+  private static final String TAG = "ApptimizeFlutterPlugin";
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(BackgroundDispatcher.threadFactory("ApptimizeFlutterStartup"));
+  private final ConcurrentHashMap<String, Long> timestamps = new ConcurrentHashMap<String, Long>();
+  private final Runnable onPhaseRecorded;
+  private String setupAppKey = null;
+
+  /// `onPhaseRecorded` is run whenever a phase is reached for the first time.
+  StartupPipeline(Runnable onPhaseRecorded) {
+    this.onPhaseRecorded = onPhaseRecorded;
+  }
+
+  /// Sets Apptimize up with `appKey` unless a setup with the same app key was already started.
+  /// Returns true if a new setup was started. See `isStarted`.
+  synchronized boolean start(final Context context, final String appKey, final ApptimizeOptions options) throws InvalidPluginArgumentException {
+    recordPhase(PHASE_SETUP_REQUESTED);
+    if (isStarted(appKey)) return false;
+
+    setupAppKey = appKey;
+    executor.execute(new Runnable() {
+      public void run() {
+        recordPhase(PHASE_SETUP_STARTED);
+        Apptimize.setup(context, appKey, options);
+        recordPhase(PHASE_SETUP_COMPLETED);
+      }
+    });
+    return true;
+  }
+
+  /// Returns whether a setup with `appKey` was already started. Throws if a setup with a different
+  /// app key was started, whether it is still in flight or completed.
+  synchronized boolean isStarted(String appKey) throws InvalidPluginArgumentException {
+    if (setupAppKey == null) return false;
+    if (setupAppKey.equals(appKey)) return true;
+
+    Log.w(TAG, "Apptimize was already started with a different app key, ignoring app key " + appKey);
+    throw new InvalidPluginArgumentException("appKey", appKey);
+  }
+
+  /// Records the time `phase` was first reached. Later calls for the same phase are ignored.
+  void recordPhase(String phase) {
+    if (timestamps.putIfAbsent(phase, System.currentTimeMillis()) == null) {
+      onPhaseRecorded.run();
+    }
+  }
+
+  /// Returns when each phase reached so far was reached, in milliseconds since the epoch.
+  HashMap<String, Object> getTimestamps() {
+    return new HashMap<String, Object>(timestamps);
+  }
+}
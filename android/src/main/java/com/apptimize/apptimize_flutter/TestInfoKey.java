@@ -0,0 +1,93 @@
+package com.apptimize.apptimize_flutter;
+
+import com.apptimize.ApptimizeTestInfo;
+import com.apptimize.ApptimizeTestType;
+
+import java.util.Date;
+
+/**
+ * Every value of an `ApptimizeTestInfo` that goes into its serialized map, so that test infos with
+ * equal keys serialize to equal maps. Used to reuse serialized test info without building a string
+ * key, see `ApptimizeFlutterPlugin.serializeApptimizeTestInfo`.
+ */
+final class TestInfoKey {
+  private final String testName;
+  private final String enrolledVariantName;
+  private final Long testId;
+  private final Long enrolledVariantId;
+  private final long testStartedDate;
+  private final long testEnrolledDate;
+  private final Long cycle;
+  private final Long currentPhase;
+  private final Long participationPhase;
+  private final boolean userHasParticipated;
+  private final String customerUserId;
+  private final String anonymousUserId;
+  private final ApptimizeTestType testType;
+  private final int hash;
+
+  TestInfoKey(ApptimizeTestInfo testInfo) {
+    testName = testInfo.getTestName();
+    enrolledVariantName = testInfo.getEnrolledVariantName();
+    testId = testInfo.getTestId();
+    enrolledVariantId = testInfo.getEnrolledVariantId();
+    testStartedDate = millis(testInfo.getTestStartedDate());
+    testEnrolledDate = millis(testInfo.getTestEnrolledDate());
+    cycle = testInfo.getCycle();
+    currentPhase = testInfo.getCurrentPhase();
+    participationPhase = testInfo.getParticipationPhase();
+    userHasParticipated = testInfo.userHasParticipated();
+    customerUserId = testInfo.getCustomerUserId();
+    anonymousUserId = testInfo.getAnonymousUserId();
+    testType = testInfo.getApptimizeTestType();
+
+    // The ids and dates tell tests and their states apart, the rest only rarely differs.
+    int hash = hashCode(testId);
+    hash = 31 * hash + hashCode(enrolledVariantId);
+    hash = 31 * hash + hashCode(cycle);
+    hash = 31 * hash + hashCode(currentPhase);
+    hash = 31 * hash + hashCode(participationPhase);
+    hash = 31 * hash + (int) (testEnrolledDate ^ (testEnrolledDate >>> 32));
+    this.hash = 31 * hash + (userHasParticipated ? 1 : 0);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) return true;
+    if (!(object instanceof TestInfoKey)) return false;
+
+    TestInfoKey other = (TestInfoKey) object;
+    return hash == other.hash
+        && testStartedDate == other.testStartedDate
+        && testEnrolledDate == other.testEnrolledDate
+        && userHasParticipated == other.userHasParticipated
+        && testType == other.testType
+        && equal(testId, other.testId)
+        && equal(enrolledVariantId, other.enrolledVariantId)
+        && equal(cycle, other.cycle)
+        && equal(currentPhase, other.currentPhase)
+        && equal(participationPhase, other.participationPhase)
+        && equal(testName, other.testName)
+        && equal(enrolledVariantName, other.enrolledVariantName)
+        && equal(customerUserId, other.customerUserId)
+        && equal(anonymousUserId, other.anonymousUserId);
+  }
+
+  /// Null dates become `Long.MIN_VALUE`, which is no date the SDK reports.
+  private static long millis(Date date) {
+    return date != null ? date.getTime() : Long.MIN_VALUE;
+  }
+
+  private static int hashCode(Object value) {
+    return value != null ? value.hashCode() : 0;
+  }
+
+  private static boolean equal(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+}
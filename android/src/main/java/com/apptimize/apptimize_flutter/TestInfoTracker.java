@@ -0,0 +1,110 @@
+package com.apptimize.apptimize_flutter;
+
+import com.apptimize.Apptimize;
+import com.apptimize.ApptimizeTestInfo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Versions the test info snapshot so that callers can ask for only what changed since the version
+ * they last saw.
+ *
+ * The snapshot is only re-read from Apptimize after `invalidate` has been called, which happens
+ * whenever enrollment or participation may have changed. The version is bumped only when the
+ * re-read snapshot actually differs.
+ */
+class TestInfoTracker {
+  /// The entries which changed since a given version.
+  static final class Changes {
+    final long version;
+    final boolean isFullSnapshot;
+    final Map<String, ApptimizeTestInfo> changed;
+    final ArrayList<String> removed;
+
+    Changes(long version, boolean isFullSnapshot, Map<String, ApptimizeTestInfo> changed, ArrayList<String> removed) {
+      this.version = version;
+      this.isFullSnapshot = isFullSnapshot;
+      this.changed = changed;
+      this.removed = removed;
+    }
+  }
+
+  private volatile boolean isDirty = true;
+  private long version = 1;
+  private final HashMap<String, ApptimizeTestInfo> testInfo = new HashMap<String, ApptimizeTestInfo>();
+  private final HashMap<String, HashMap> serializedTestInfo = new HashMap<String, HashMap>();
+  private final HashMap<String, Long> changedVersions = new HashMap<String, Long>();
+  private final HashMap<String, Long> removedVersions = new HashMap<String, Long>();
+
+  void invalidate() {
+    isDirty = true;
+  }
+
+  /// Returns the entries added or changed and the names of the entries removed after
+  /// `sinceVersion`. A full snapshot is returned if `sinceVersion` is not a version this tracker
+  /// handed out. Returns null if Apptimize has not been started.
+  synchronized Changes changesSince(long sinceVersion) {
+    if (isDirty && !refresh()) return null;
+
+    if (sinceVersion <= 0 || sinceVersion > version) {
+      return new Changes(version, true, new HashMap<String, ApptimizeTestInfo>(testInfo), new ArrayList<String>());
+    }
+
+    HashMap<String, ApptimizeTestInfo> changed = new HashMap<String, ApptimizeTestInfo>();
+    for (Map.Entry<String, Long> entry : changedVersions.entrySet()) {
+      if (entry.getValue() > sinceVersion) {
+        changed.put(entry.getKey(), testInfo.get(entry.getKey()));
+      }
+    }
+
+    ArrayList<String> removed = new ArrayList<String>();
+    for (Map.Entry<String, Long> entry : removedVersions.entrySet()) {
+      if (entry.getValue() > sinceVersion) {
+        removed.add(entry.getKey());
+      }
+    }
+
+    return new Changes(version, false, changed, removed);
+  }
+
+  private boolean refresh() {
+    // Cleared before reading so that an invalidation during the read is not lost.
+    isDirty = false;
+    Map<String, ApptimizeTestInfo> latest = Apptimize.getTestInfo();
+    if (latest == null) {
+      isDirty = true;
+      return false;
+    }
+
+    long nextVersion = version + 1;
+    boolean isChanged = false;
+
+    for (Map.Entry<String, ApptimizeTestInfo> entry : latest.entrySet()) {
+      HashMap serialized = ApptimizeFlutterPlugin.serializeApptimizeTestInfo(entry.getValue());
+      if (!serialized.equals(serializedTestInfo.get(entry.getKey()))) {
+        serializedTestInfo.put(entry.getKey(), serialized);
+        changedVersions.put(entry.getKey(), nextVersion);
+        removedVersions.remove(entry.getKey());
+        isChanged = true;
+      }
+    }
+
+    for (String name : new ArrayList<String>(serializedTestInfo.keySet())) {
+      if (!latest.containsKey(name)) {
+        serializedTestInfo.remove(name);
+        changedVersions.remove(name);
+        removedVersions.put(name, nextVersion);
+        isChanged = true;
+      }
+    }
+
+    testInfo.clear();
+    testInfo.putAll(latest);
+    if (isChanged) {
+      version = nextVersion;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,9 @@
+package com.apptimize.apptimize_flutter;
+
+class UnknownPluginMethodException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  public UnknownPluginMethodException(String method) {
+    super("Unknown ApptimizeFlutterPlugin method '" + method + "'");
+  }
+}
@@ -0,0 +1,34 @@
+package com.apptimize.apptimize_flutter;
+
+import java.util.HashMap;
+
+/**
+ * Remembers the user attributes the plugin last wrote to Apptimize, so that writing the same value
+ * again can be skipped.
+ *
+ * Attributes the plugin has not written since launch are unknown and are always written, as
+ * Apptimize may still hold a value from a previous session.
+ */
+class UserAttributeMirror {
+  /// Marks an attribute the plugin has removed.
+  private static final Object REMOVED = new Object();
+
+  private final HashMap<String, Object> values = new HashMap<String, Object>();
+
+  /// Whether `value` is what was last written for `name`. A null `value` means the attribute is
+  /// removed.
+  synchronized boolean isUnchanged(String name, Object value) {
+    Object written = values.get(name);
+    if (written == null) return false;
+    return value == null ? written == REMOVED : value.equals(written);
+  }
+
+  synchronized void record(String name, Object value) {
+    values.put(name, value != null ? value : REMOVED);
+  }
+
+  /// Forgets every attribute, for example after Apptimize cleared them all.
+  synchronized void clear() {
+    values.clear();
+  }
+}
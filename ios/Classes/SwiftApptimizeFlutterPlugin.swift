@@ -103,218 +103,257 @@ public class SwiftApptimizeFlutterPlugin: NSObject, FlutterPlugin {
     }
 
     public func handle(_ call: FlutterMethodCall, result    : @escaping FlutterResult) {
-        let arguments = call.arguments as? [String: Any?]
-        var resultValue: Any? = nil
-        
         do {
-            switch call.method {
-                case "startApptimize":
-                    try startApptimize(arguments: arguments)
-                    
-                case "setCustomerUserId":
-                    guard let arguments = arguments else {
-                        throw PluginError.invalidArgument(msg: "Missing arguments in call")
-                    }
-                    let customerUserId = arguments["customerUserId"] as? String
-                    Apptimize.setCustomerUserID(customerUserId)
+            // You _must_ return some result even if null.
+            result(try handleCall(method: call.method, arguments: call.arguments as? [String: Any?]))
+        } catch let e as PluginError {
+            result(e.toFlutterError())
+        } catch {
+            result(FlutterError(code: "UNKNOWN", message: nil, details: nil))
+        }
+    }
 
-                case "getCustomerUserId":
-                    resultValue = Apptimize.customerUserID()
+    private func handleCall(method: String, arguments: [String: Any?]?) throws -> Any? {
+        var resultValue: Any? = nil
 
-                case "getApptimizeAnonUserId":
-                    resultValue = Apptimize.apptimizeAnonUserID()
-                    
-                case "disable":
-                    Apptimize.disable()
-                    
-                case "setOffline":
-                    guard let arguments = arguments,
-                          let isOffline = arguments["isOffline"] as? Bool else {
-                        throw PluginError.invalidArgument(msg: "Missing arguments in call")
-                    }
-                    Apptimize.setOffline(isOffline)
-                    
-                case "getOffline":
-                    resultValue = Apptimize.isOffline()
-                    
-                case "getMetadataState":
-                    let metadataState = Apptimize.metadataState()
-                    resultValue = [
-                        "isAvailable": metadataState.contains(.available),
-                        "isUpToDate": metadataState.contains(.upToDate),
-                        "isRefreshing": metadataState.contains(.refreshing)
-                    ]
+        switch method {
+            case "startApptimize":
+                try startApptimize(arguments: arguments)
+                
+            case "setCustomerUserId":
+                guard let arguments = arguments else {
+                    throw PluginError.invalidArgument(msg: "Missing arguments in call")
+                }
+                let customerUserId = arguments["customerUserId"] as? String
+                Apptimize.setCustomerUserID(customerUserId)
+
+            case "getCustomerUserId":
+                resultValue = Apptimize.customerUserID()
+
+            case "getApptimizeAnonUserId":
+                resultValue = Apptimize.apptimizeAnonUserID()
+                
+            case "disable":
+                Apptimize.disable()
+                
+            case "setOffline":
+                guard let arguments = arguments,
+                      let isOffline = arguments["isOffline"] as? Bool else {
+                    throw PluginError.invalidArgument(msg: "Missing arguments in call")
+                }
+                Apptimize.setOffline(isOffline)
+                
+            case "getOffline":
+                resultValue = Apptimize.isOffline()
+                
+            case "getMetadataState":
+                let metadataState = Apptimize.metadataState()
+                resultValue = [
+                    "isAvailable": metadataState.contains(.available),
+                    "isUpToDate": metadataState.contains(.upToDate),
+                    "isRefreshing": metadataState.contains(.refreshing)
+                ]
+                
+            case "track":
+                guard let arguments = arguments,
+                      let eventName = arguments["eventName"] as? String else {
+                    throw PluginError.invalidArgument(msg: "Missing arguments in call")
+                }
+                
+                if let value = arguments["value"] as? Double {
+                    Apptimize.track(eventName, value: value)
+                } else {
+                    Apptimize.track(eventName)
+                }
+                
+            case "getLibraryVersion":
+                resultValue = "\(Apptimize.libraryVersion()) (iOS)"
+                
+            case "setPilotTargetingId":
+                guard let arguments = arguments,
+                      let pilotTargetingId = arguments["pilotTargetingId"] as? String else {
+                    throw PluginError.invalidArgument(msg: "Missing arguments in call")
+                }
+                
+                Apptimize.setPilotTargetingID(pilotTargetingId)
+                
+            case "getPilotTargetingId":
+                resultValue = Apptimize.pilotTargetingID()
+                
+            case "runTest", "runTestAsync":
+                resultValue = try runTest(arguments: arguments)
+                
+            case "isFeatureFlagOn":
+                guard let arguments = arguments,
+                      let featureFlagName = arguments["featureFlagName"] as? String else {
+                    throw PluginError.invalidArgument(msg: "Missing arguments in call")
+                }
+                
+                resultValue = Apptimize.isFeatureFlag(on: featureFlagName)
+                
+            case "getApptimizeTestInfo":
+                if let testInfo = Apptimize.testInfo() {
+                    var result: [String: Any?] = [:]
                     
-                case "track":
-                    guard let arguments = arguments,
-                          let eventName = arguments["eventName"] as? String else {
-                        throw PluginError.invalidArgument(msg: "Missing arguments in call")
+                    for (key, value) in testInfo {
+                        result[key] = value.serializeForFlutter()
                     }
                     
-                    if let value = arguments["value"] as? Double {
-                        Apptimize.track(eventName, value: value)
-                    } else {
-                        Apptimize.track(eventName)
+                    resultValue = result
+                }
+                
+            case "getInstantUpdateAndWinnerInfo":
+                if let testInfo = Apptimize.instantUpdateAndWinnerInfo() {
+                    var result: [String: Any?] = [:]
+                    for (key, value) in testInfo {
+                        result[key] = value.serializeForFlutter()
                     }
                     
-                case "getLibraryVersion":
-                    resultValue = "\(Apptimize.libraryVersion()) (iOS)"
-                    
-                case "setPilotTargetingId":
-                    guard let arguments = arguments,
-                          let pilotTargetingId = arguments["pilotTargetingId"] as? String else {
-                        throw PluginError.invalidArgument(msg: "Missing arguments in call")
+                    resultValue = result
+                }
+
+            case "setUserAttribute":
+                guard let arguments = arguments,
+                      let type = arguments["type"] as? String,
+                      let attributeName = arguments["attributeName"] as? String,
+                      let attributeValueAny = arguments["attributeValue"] else {
+                    throw PluginError.invalidArgument(msg: "Missing arguments in call")
+                }
+                
+                switch (type) {
+                case "string":
+                    guard let attributeValue = attributeValueAny as? String else {
+                        throw PluginError.invalidArgument(msg: "Cannot convert attribute value to \(type)")
                     }
-                    
-                    Apptimize.setPilotTargetingID(pilotTargetingId)
-                    
-                case "getPilotTargetingId":
-                    resultValue = Apptimize.pilotTargetingID()
-                    
-                case "runTest":
-                    resultValue = try runTest(arguments: arguments)
-                    
-                case "isFeatureFlagOn":
-                    guard let arguments = arguments,
-                          let featureFlagName = arguments["featureFlagName"] as? String else {
-                        throw PluginError.invalidArgument(msg: "Missing arguments in call")
+                    Apptimize.setUserAttributeString(attributeValue, forKey: attributeName)
+                case "int":
+                    guard let attributeValue = attributeValueAny as? Int else {
+                        throw PluginError.invalidArgument(msg: "Cannot convert attribute value to \(type)")
                     }
-                    
-                    resultValue = Apptimize.isFeatureFlag(on: featureFlagName)
-                    
-                case "getApptimizeTestInfo":
-                    if let testInfo = Apptimize.testInfo() {
-                        var result: [String: Any?] = [:]
-                        
-                        for (key, value) in testInfo {
-                            result[key] = value.serializeForFlutter()
-                        }
-                        
-                        resultValue = result
+                    Apptimize.setUserAttributeInteger(attributeValue, forKey: attributeName)
+                case "double":
+                    guard let attributeValue = attributeValueAny as? Double else {
+                        throw PluginError.invalidArgument(msg: "Cannot convert attribute value to \(type)")
                     }
-                    
-                case "getInstantUpdateAndWinnerInfo":
-                    if let testInfo = Apptimize.instantUpdateAndWinnerInfo() {
-                        var result: [String: Any?] = [:]
-                        for (key, value) in testInfo {
-                            result[key] = value.serializeForFlutter()
-                        }
-                        
-                        resultValue = result
+                    Apptimize.setUserAttributeDouble(attributeValue, forKey: attributeName)
+                case "bool":
+                    guard let attributeValue = attributeValueAny as? Bool else {
+                        throw PluginError.invalidArgument(msg: "Cannot convert attribute value to \(type)")
                     }
+                    Apptimize.setUserAttributeBool(attributeValue, forKey: attributeName)
+                default:
+                    throw PluginError.invalidArgument(msg: "Invalid argument type \(type)")
+                }
+                                    
+            case "removeUserAttribute":
+                guard let arguments = arguments,
+                      let attributeName = arguments["attributeName"] as? String else {
+                    throw PluginError.invalidArgument(msg: "Missing arguments in call")
+                }
+                
+                Apptimize.removeUserAttribute(forKey: attributeName)
+
+            case "removeAllUserAttributes":
+                Apptimize.removeAllUserAttributes()
+                
+            case "getUserAttribute":
+                guard let arguments = arguments,
+                      let type = arguments["type"] as? String,
+                      let attributeName = arguments["attributeName"] as? String else {
+                    throw PluginError.invalidArgument(msg: "Missing arguments in call")
+                }
 
-                case "setUserAttribute":
-                    guard let arguments = arguments,
-                          let type = arguments["type"] as? String,
-                          let attributeName = arguments["attributeName"] as? String,
-                          let attributeValueAny = arguments["attributeValue"] else {
-                        throw PluginError.invalidArgument(msg: "Missing arguments in call")
-                    }
-                    
-                    switch (type) {
-                    case "string":
-                        guard let attributeValue = attributeValueAny as? String else {
-                            throw PluginError.invalidArgument(msg: "Cannot convert attribute value to \(type)")
-                        }
-                        Apptimize.setUserAttributeString(attributeValue, forKey: attributeName)
-                    case "int":
-                        guard let attributeValue = attributeValueAny as? Int else {
-                            throw PluginError.invalidArgument(msg: "Cannot convert attribute value to \(type)")
-                        }
-                        Apptimize.setUserAttributeInteger(attributeValue, forKey: attributeName)
-                    case "double":
-                        guard let attributeValue = attributeValueAny as? Double else {
-                            throw PluginError.invalidArgument(msg: "Cannot convert attribute value to \(type)")
-                        }
-                        Apptimize.setUserAttributeDouble(attributeValue, forKey: attributeName)
-                    case "bool":
-                        guard let attributeValue = attributeValueAny as? Bool else {
-                            throw PluginError.invalidArgument(msg: "Cannot convert attribute value to \(type)")
-                        }
-                        Apptimize.setUserAttributeBool(attributeValue, forKey: attributeName)
-                    default:
-                        throw PluginError.invalidArgument(msg: "Invalid argument type \(type)")
-                    }
-                                        
-                case "removeUserAttribute":
-                    guard let arguments = arguments,
-                          let attributeName = arguments["attributeName"] as? String else {
-                        throw PluginError.invalidArgument(msg: "Missing arguments in call")
-                    }
-                    
-                    Apptimize.removeUserAttribute(forKey: attributeName)
+                switch (type) {
+                case "string":
+                    resultValue = Apptimize.userAttributeString(forKey: attributeName)
+                case "int":
+                    resultValue = Apptimize.userAttributeInteger(forKey: attributeName)
+                case "double":
+                    resultValue = Apptimize.userAttributeDouble(forKey: attributeName)
+                case "bool":
+                    resultValue = Apptimize.userAttributeBool(forKey: attributeName)
+                default:
+                    throw PluginError.invalidArgument(msg: "Invalid argument type \(type)")
+                }
 
-                case "removeAllUserAttributes":
-                    Apptimize.removeAllUserAttributes()
-                    
-                case "getUserAttribute":
-                    guard let arguments = arguments,
-                          let type = arguments["type"] as? String,
-                          let attributeName = arguments["attributeName"] as? String else {
-                        throw PluginError.invalidArgument(msg: "Missing arguments in call")
-                    }
+            case "forceVariant":
+                guard let arguments = arguments,
+                      let variantId = arguments["variantId"] as? Int else {
+                    throw PluginError.invalidArgument(msg: "Missing arguments in call")
+                }
+                Apptimize.forceVariant(variantId)
+                
+            case "clearForcedVariant":
+                guard let arguments = arguments,
+                      let variantId = arguments["variantId"] as? Int else {
+                    throw PluginError.invalidArgument(msg: "Missing arguments in call")
+                }
+                Apptimize.clearForcedVariant(variantId)
+
+            case "clearAllForcedVariants":
+                Apptimize.clearAllForcedVariants()
+                
+            case "getVariants":
+                let variants = Apptimize.getVariants()
+                resultValue = variants?.values.map({v in
+                    return [
+                        "experimentName": v["experimentName"],
+                        "variantName": v["variantName"],
+                        "experimentId": v["experimentID"],
+                        "variantId": v["variantID"]
+                    ]
+                })
+                
+            case "declareDynamicVariable":
+                resultValue = try declareDynamicVariable(arguments: arguments)
+                
+            case "isDynamicVariableDeclared":
+                resultValue = try isDynamicVariableDeclared(arguments: arguments)
+                
+            case "getDynamicVariableValue":
+                resultValue = try getDynamicVariableValue(arguments: arguments)
+
+            case "executeBatch":
+                resultValue = try executeBatch(arguments: arguments)
+
+            case "setBackgroundDispatchEnabled":
+                // Calls are always handled on the main thread on iOS.
+                break
+                
+            default:
+                NSLog("ApptimizeFlutter: Error \(method) unknown.")
+                resultValue = FlutterMethodNotImplemented
+        }
 
-                    switch (type) {
-                    case "string":
-                        resultValue = Apptimize.userAttributeString(forKey: attributeName)
-                    case "int":
-                        resultValue = Apptimize.userAttributeInteger(forKey: attributeName)
-                    case "double":
-                        resultValue = Apptimize.userAttributeDouble(forKey: attributeName)
-                    case "bool":
-                        resultValue = Apptimize.userAttributeBool(forKey: attributeName)
-                    default:
-                        throw PluginError.invalidArgument(msg: "Invalid argument type \(type)")
-                    }
+        return resultValue
+    }
 
-                case "forceVariant":
-                    guard let arguments = arguments,
-                          let variantId = arguments["variantId"] as? Int else {
-                        throw PluginError.invalidArgument(msg: "Missing arguments in call")
-                    }
-                    Apptimize.forceVariant(variantId)
-                    
-                case "clearForcedVariant":
-                    guard let arguments = arguments,
-                          let variantId = arguments["variantId"] as? Int else {
-                        throw PluginError.invalidArgument(msg: "Missing arguments in call")
-                    }
-                    Apptimize.clearForcedVariant(variantId)
+    // Runs each entry of `calls` through handleCall in order, returning a result or error per entry.
+    private func executeBatch(arguments: [String: Any?]?) throws -> [[String: Any?]] {
+        guard let arguments = arguments,
+              let calls = arguments["calls"] as? [Any] else {
+            throw PluginError.invalidArgument(msg: "Missing arguments in call")
+        }
 
-                case "clearAllForcedVariants":
-                    Apptimize.clearAllForcedVariants()
-                    
-                case "getVariants":
-                    let variants = Apptimize.getVariants()
-                    resultValue = variants?.values.map({v in
-                        return [
-                            "experimentName": v["experimentName"],
-                            "variantName": v["variantName"],
-                            "experimentId": v["experimentID"],
-                            "variantId": v["variantID"]
-                        ]
-                    })
-                    
-                case "declareDynamicVariable":
-                    resultValue = try declareDynamicVariable(arguments: arguments)
-                    
-                case "isDynamicVariableDeclared":
-                    resultValue = try isDynamicVariableDeclared(arguments: arguments)
-                    
-                case "getDynamicVariableValue":
-                    resultValue = try getDynamicVariableValue(arguments: arguments)
-                    
-                default:
-                    NSLog("ApptimizeFlutter: Error \(call.method) unknown.")
-                    resultValue = FlutterMethodNotImplemented
+        return calls.map { (entry) -> [String: Any?] in
+            guard let entry = entry as? [String: Any?],
+                  let method = entry["method"] as? String,
+                  method != "executeBatch" else {
+                return ["error": "INVALID_ARGUMENT", "message": "Invalid batch entry"]
             }
 
-            // You _must_ return some result even if null.
-            result(resultValue)
-        } catch let e as PluginError {
-            result(e.toFlutterError())
-        } catch {
-            result(FlutterError(code: "UNKNOWN", message: nil, details: nil))
+            do {
+                let value = try handleCall(method: method, arguments: entry["arguments"] as? [String: Any?])
+                if let value = value as? NSObject, value === FlutterMethodNotImplemented {
+                    return ["error": "NOT_IMPLEMENTED", "message": "Unknown method \(method)"]
+                }
+                return ["result": value]
+            } catch let e as PluginError {
+                let error = e.toFlutterError()
+                return ["error": error.code, "message": error.message]
+            } catch {
+                return ["error": "UNKNOWN", "message": nil]
+            }
         }
     }
     
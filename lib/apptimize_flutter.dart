@@ -1,9 +1,16 @@
 // ignore_for_file: close_sinks
 import 'dart:async';
+import 'dart:collection';
+import 'dart:convert';
 import 'dart:core';
 import 'dart:developer' as developer;
+import 'dart:typed_data';
+import 'dart:ui' show AppLifecycleState;
 
+import 'package:flutter/foundation.dart' show listEquals, mapEquals;
 import 'package:flutter/services.dart';
+import 'package:flutter/widgets.dart'
+    show WidgetsBinding, WidgetsBindingObserver;
 
 /// The Apptimize interface is the main interaction point with the Apptimize SDK
 /// for developers.
@@ -13,6 +20,9 @@ class Apptimize {
   static final String _logTag = "com.apptimize.apptimize";
 
   /// Gets the broadcast stream of [ApptimizeEnrolledInExperimentEvent] events.
+  ///
+  /// On Android, an engine created after the SDK started is sent the most
+  /// recent enrollments when this stream is first listened to.
   static Stream<ApptimizeEnrolledInExperimentEvent>
       get apptimizeEnrolledInExperimentStream =>
           _apptimizeEnrolledInExperimentStreamController.stream;
@@ -28,6 +38,10 @@ class Apptimize {
           _apptimizeUnenrolledInExperimentStreamController.stream;
 
   /// Gets the broadcast stream of [ApptimizeInitializedEvent] events.
+  ///
+  /// On Android, an engine created after Apptimize initialized is sent the
+  /// event when this stream is first listened to. The same applies to the
+  /// tests processed, metadata state, startup timing and unenrollment events.
   static Stream<ApptimizeInitializedEvent> get apptimizeInitializedStream =>
       _apptimizeInitializedStreamController.stream;
 
@@ -45,6 +59,26 @@ class Apptimize {
       get apptimizeMetadataStateChangedStream =>
           _apptimizeMetadataStateChangedStreamController.stream;
 
+  /// Gets the broadcast stream of [ApptimizeStartupTimingEvent] events.
+  ///
+  /// An event is sent whenever a phase of startup is reached for the first
+  /// time. Only supported on Android.
+  static Stream<ApptimizeStartupTimingEvent> get apptimizeStartupTimingStream =>
+      _apptimizeStartupTimingStreamController.stream;
+
+  /// Gets the broadcast stream of [ApptimizePersistedValuesChangedEvent]
+  /// events.
+  ///
+  /// On Android, feature flags and dynamic variables read before Apptimize
+  /// has processed its experiments are answered with the values the app read
+  /// during the previous launch. Only values the app read are persisted, as
+  /// reading a value counts as participating in its test. Once the live values
+  /// arrive, the values answered from the previous launch are read again and
+  /// an event is sent if any of them differ. Only supported on Android.
+  static Stream<ApptimizePersistedValuesChangedEvent>
+      get apptimizePersistedValuesChangedStream =>
+          _apptimizePersistedValuesChangedStreamController.stream;
+
   /// Starts apptimize with the specified [appKey].
   ///
   /// If [options] are not specified, the default options will be used.
@@ -63,9 +97,27 @@ class Apptimize {
   /// the app has been modified to be more secure. In this case, listening for
   /// the [ApptimizeInitializedEvent] event will ensure that apptimize is
   /// available.
+  ///
+  /// ### Android specific
+  /// Calling this again with the same [appKey], for example after a hot
+  /// restart, joins the earlier startup instead of setting Apptimize up again.
+  /// Apptimize can only be set up once, so calling it with a different
+  /// [appKey] fails with a [PlatformException].
+  /// The same applies when `ApptimizeFlutterInitializer` already started
+  /// Apptimize natively, before Dart ran. Only the participation options of
+  /// [options] are then applied, as the others only take effect during setup,
+  /// and the ignored ones are logged. See [startupTiming] for how long each
+  /// phase of startup took.
   static void startApptimize(String appKey, [ApptimizeOptions? options]) {
-    _channel.invokeMethod(
-        'startApptimize', {"appKey": appKey, "options": options?.toMap()});
+    _channel.invokeMethod('startApptimize',
+        {"appKey": appKey, "options": options?.toMap()}).then((ignoredOptions) {
+      if (ignoredOptions is List && ignoredOptions.isNotEmpty) {
+        developer.log(
+            'Apptimize was already started, ignoring options: '
+            '${ignoredOptions.join(', ')}',
+            name: _logTag);
+      }
+    });
   }
 
   /// Sets the current customer-specified user id.
@@ -82,6 +134,8 @@ class Apptimize {
   /// until startup is completed. This means that the change will not be
   /// persisted or available via [customerUserId] until startup is completed.
   static Future<void> setCustomerUserId(String? customerUserId) async {
+    // Buffered events were tracked for the previous user.
+    await flushTrackedEvents();
     await _channel
         .invokeMethod('setCustomerUserId', {'customerUserId': customerUserId});
   }
@@ -117,6 +171,7 @@ class Apptimize {
   ///
   /// _Use with caution_.
   static Future<void> disable() async {
+    await flushTrackedEvents();
     await _channel.invokeMethod('disable');
   }
 
@@ -178,11 +233,46 @@ class Apptimize {
   /// Generate an event with the name [eventName].
   ///
   /// You can optionally associate a numeric [value] with the event.
+  ///
+  /// If track buffering is enabled with [setTrackBufferingEnabled], the event
+  /// is buffered and the returned [Future] completes once it has been sent.
   static Future<void> track(String eventName, [double? value]) async {
+    final buffer = _trackBuffer;
+    if (buffer != null) {
+      return buffer.add(eventName, value);
+    }
+
     await _channel
         .invokeMethod('track', {"eventName": eventName, "value": value});
   }
 
+  /// Enables or disables buffering of [track] calls.
+  ///
+  /// While enabled, tracked events are collected in Dart and sent to the
+  /// native SDK together once [maxEvents] events are buffered, [maxDelay] has
+  /// passed since the first buffered event, or the app leaves the foreground,
+  /// whichever comes first. Events are always tracked in the order they were
+  /// made. Buffered events are also sent before the customer user id changes
+  /// and before Apptimize is disabled; call [flushTrackedEvents] to send them
+  /// at any other point.
+  ///
+  /// Disabling buffering sends any buffered events.
+  static Future<void> setTrackBufferingEnabled(bool enabled,
+      {int maxEvents = 100,
+      Duration maxDelay = const Duration(seconds: 2)}) async {
+    final previous = _trackBuffer;
+    _trackBuffer =
+        enabled ? new _ApptimizeTrackBuffer(maxEvents, maxDelay) : null;
+    if (previous != null) {
+      await previous.close();
+    }
+  }
+
+  /// Sends any events buffered by [track] to the native SDK.
+  static Future<void> flushTrackedEvents() async {
+    await _trackBuffer?.flush();
+  }
+
   /// Get the underlying library version.
   ///
   /// Returns the version number of the underlying Apptimize library as a string
@@ -245,10 +335,13 @@ class Apptimize {
   /// When this method is called, one of the code block variants or the default
   /// code block will be run sychronously in accordance with the A/B test
   /// variant this user/device is enrolled in.
+  ///
+  /// On Android the test is selected without blocking the platform thread:
+  /// if metadata is not available yet, selection completes in the background.
   static Future<void> runTest(
       String testName, Function baseline, Map<String, Function> codeblocks,
       [int? updateMetadataTimeout]) async {
-    final String? codeblock = await _channel.invokeMethod('runTest', {
+    final String? codeblock = await _channel.invokeMethod('runTestAsync', {
       "testName": testName,
       "codeBlocks": codeblocks.keys.toList(),
       "updateMetadataTimeout": updateMetadataTimeout
@@ -273,6 +366,12 @@ class Apptimize {
   ///
   /// Returns `true` if the feature flag is on, `false` if it is not.
   static Future<bool> isFeatureFlagOn(String featureFlagName) async {
+    final fastPathResponse =
+        await _ApptimizeFastPath.isFeatureFlagOn(featureFlagName);
+    if (fastPathResponse is bool) {
+      return fastPathResponse;
+    }
+
     final bool? response = await _channel.invokeMethod<bool>(
         'isFeatureFlagOn', {'featureFlagName': featureFlagName});
     if (response == null) {
@@ -283,6 +382,57 @@ class Apptimize {
     return response ?? false;
   }
 
+  /// Check whether each of the given feature flags is enabled in a single
+  /// call.
+  ///
+  /// The returned [ApptimizeFeatureFlags] answers [ApptimizeFeatureFlags.isOn]
+  /// synchronously for each of [featureFlagNames].
+  static Future<ApptimizeFeatureFlags> areFeatureFlagsOn(
+      List<String> featureFlagNames) async {
+    final names = new List<String>.unmodifiable(featureFlagNames);
+    try {
+      final Uint8List? bits = await _channel
+          .invokeMethod('areFeatureFlagsOn', {'featureFlagNames': names});
+      return new ApptimizeFeatureFlags._(names, bits);
+    } on MissingPluginException {
+      return new ApptimizeFeatureFlags._(
+          names, await _evaluateFeatureFlags(names));
+    }
+  }
+
+  /// Check whether each of the given feature flags is enabled, and keep the
+  /// result up to date.
+  ///
+  /// The returned [ApptimizeFeatureFlagSubscription] is updated whenever
+  /// tests are processed or enrollment changes flip one of the flags, so that
+  /// [ApptimizeFeatureFlags.isOn] can be used synchronously at any time. Call
+  /// [ApptimizeFeatureFlagSubscription.cancel] once it is no longer needed.
+  ///
+  /// **Note** every flag in a subscription is evaluated each time tests are
+  /// processed, which counts as participation in those feature flags.
+  static Future<ApptimizeFeatureFlagSubscription> subscribeToFeatureFlags(
+      List<String> featureFlagNames) async {
+    final names = new List<String>.unmodifiable(featureFlagNames);
+    try {
+      final Map? result = await _channel
+          .invokeMethod('subscribeFeatureFlags', {'featureFlagNames': names});
+      final int subscriptionId = result?['subscriptionId'];
+      final subscription = new ApptimizeFeatureFlagSubscription._(
+          subscriptionId, names, result?['bits']);
+      _featureFlagSubscriptions[subscriptionId] = subscription;
+      return subscription;
+    } on MissingPluginException {
+      // Platforms without subscriptions re-evaluate the flags in Dart.
+      final subscription = new ApptimizeFeatureFlagSubscription._(
+          null, names, await _evaluateFeatureFlags(names));
+      subscription._testsProcessedSubscription =
+          apptimizeTestsProcessedStream.listen((_) async {
+        subscription._update(await _evaluateFeatureFlags(names));
+      });
+      return subscription;
+    }
+  }
+
   /// Get information about all Apptimize A/B tests and Feature Flags that the
   /// device is enrolled in.
   ///
@@ -295,38 +445,44 @@ class Apptimize {
   /// **Note** This does not include information about Apptimize A/B tests or
   /// Feature Flags that are running but that the device is not enrolled in.
   static Future<Map<String, ApptimizeTestInfo?>?> get apptimizeTestInfo async {
-    final Map<dynamic, dynamic>? result =
-        await _channel.invokeMethod('getApptimizeTestInfo');
+    final dynamic response = await _channel
+        .invokeMethod('getApptimizeTestInfo', {'format': 'compact'});
+    return _testInfoFromResponse(response, 'getApptimizeTestInfo');
+  }
+
+  /// Get the changes to [apptimizeTestInfo] since [sinceVersion].
+  ///
+  /// Pass the [ApptimizeTestInfoChanges.version] of the previous call as
+  /// [sinceVersion] to receive only the tests which were added, changed or
+  /// removed since then. If [sinceVersion] is omitted or unknown, or on
+  /// platforms which do not track versions, the full test info is returned
+  /// with [ApptimizeTestInfoChanges.isFullSnapshot] set. If [startApptimize]
+  /// has not been called yet, `null` is returned.
+  static Future<ApptimizeTestInfoChanges?> getApptimizeTestInfoChanges(
+      [int? sinceVersion]) async {
+    final Map<dynamic, dynamic>? result;
+    try {
+      result = await _channel.invokeMethod('getApptimizeTestInfoChanges',
+          {'sinceVersion': sinceVersion, 'format': 'compact'});
+    } on MissingPluginException {
+      final testInfo = await apptimizeTestInfo;
+      return testInfo != null
+          ? new ApptimizeTestInfoChanges._(0, true, testInfo, const [])
+          : null;
+    }
 
     if (result == null) {
       return null;
     }
 
-    final entries = result.entries;
-    Map<String, ApptimizeTestInfo?> apptimizeTestInfos =
-        new Map<String, ApptimizeTestInfo?>();
-
-    for (final e in entries) {
-      final key = e.key;
-      final value = e.value;
-      if (!(key is String)) {
-        developer.log(
-            "Expected `String` key in entries of `getApptimizeTestInfo` response",
-            name: Apptimize._logTag);
-        continue;
-      }
-
-      if (!(value is Map)) {
-        developer.log(
-            "Expected `Map` value in entries of `getApptimizeTestInfo` response",
-            name: Apptimize._logTag);
-        continue;
-      }
-
-      apptimizeTestInfos[key] = ApptimizeTestInfo._fromMap(value);
-    }
-
-    return apptimizeTestInfos;
+    final changed =
+        _testInfoFromResponse(result['changed'], 'getApptimizeTestInfoChanges');
+    final List<dynamic>? removed = result['removed'];
+    return new ApptimizeTestInfoChanges._(
+        result['version'] ?? 0,
+        result['full'] ?? false,
+        changed ?? new Map<String, ApptimizeTestInfo?>(),
+        removed?.whereType<String>().toList() ?? const []);
   }
 
   /// Get information about all winning A/B tests and instant updates that the
@@ -340,8 +496,12 @@ class Apptimize {
   /// yet `null` is returned.
   static Future<Map<String, ApptimizeInstantUpdateOrWinnerInfo?>?>
       get instantUpdateAndWinnerInfo async {
-    final Map<dynamic, dynamic>? result =
-        await _channel.invokeMethod('getInstantUpdateAndWinnerInfo');
+    final dynamic response = await _channel
+        .invokeMethod('getInstantUpdateAndWinnerInfo', {'format': 'compact'});
+    final Map<dynamic, dynamic>? result = response is Uint8List
+        ? _ApptimizeSnapshotReader.readKeyed(
+            response, _ApptimizeSnapshotReader.kindWinnerInfo)
+        : response;
     if (result == null) {
       return null;
     }
@@ -429,6 +589,42 @@ class Apptimize {
     });
   }
 
+  /// Set several user attributes at once.
+  ///
+  /// Each value in [attributes] must be a [String], [int], [double] or [bool],
+  /// or `null` to remove the attribute. Attributes not in [attributes] are left
+  /// unchanged.
+  ///
+  /// On Android, attributes which already have the same value, as last set
+  /// through this plugin, are not written again. Returns the number of
+  /// attributes which were skipped this way.
+  static Future<int> setUserAttributes(Map<String, Object?> attributes) async {
+    try {
+      final int? skipped = await _channel
+          .invokeMethod('setUserAttributes', {'attributes': attributes});
+      return skipped ?? 0;
+    } on MissingPluginException {
+      for (final entry in attributes.entries) {
+        final value = entry.value;
+        if (value == null) {
+          await removeUserAttribute(entry.key);
+        } else if (value is String) {
+          await setUserAttributeString(entry.key, value);
+        } else if (value is int) {
+          await setUserAttributeInteger(entry.key, value);
+        } else if (value is double) {
+          await setUserAttributeDouble(entry.key, value);
+        } else if (value is bool) {
+          await setUserAttributeBool(entry.key, value);
+        } else {
+          throw new ArgumentError.value(
+              value, entry.key, "Unsupported user attribute type");
+        }
+      }
+      return 0;
+    }
+  }
+
   /// Remove the user defined attribute for a given for [attributeName].
   static Future<void> removeUserAttribute(String attributeName) async {
     await _channel
@@ -442,26 +638,35 @@ class Apptimize {
 
   /// Get the currently set [String] value for an attribute.
   static Future<String?> getUserAttributeString(String attributeName) async {
-    return await _channel.invokeMethod(
-        'getUserAttribute', {'type': 'string', 'attributeName': attributeName});
+    return await _getUserAttribute('string', attributeName);
   }
 
   /// Get the currently set [int] value for an attribute.
   static Future<int?> getUserAttributeInteger(String attributeName) async {
-    return await _channel.invokeMethod(
-        'getUserAttribute', {'type': 'int', 'attributeName': attributeName});
+    return await _getUserAttribute('int', attributeName);
   }
 
   /// Get the currently set [double] value for an attribute.
   static Future<double?> getUserAttributeDouble(String attributeName) async {
-    return await _channel.invokeMethod(
-        'getUserAttribute', {'type': 'double', 'attributeName': attributeName});
+    return await _getUserAttribute('double', attributeName);
   }
 
   /// Get the currently set [bool] value for an attribute.
   static Future<bool?> getUserAttributeBool(String attributeName) async {
+    return await _getUserAttribute('bool', attributeName);
+  }
+
+  /// Helper for getting a user attribute of the given `type`.
+  static Future<dynamic> _getUserAttribute(
+      String type, String attributeName) async {
+    final value =
+        await _ApptimizeFastPath.getUserAttribute(type, attributeName);
+    if (!identical(value, _ApptimizeFastPath.unsupported)) {
+      return value;
+    }
+
     return await _channel.invokeMethod(
-        'getUserAttribute', {'type': 'bool', 'attributeName': attributeName});
+        'getUserAttribute', {'type': type, 'attributeName': attributeName});
   }
 
   /// Force a variant with the given id to be enabled.
@@ -495,12 +700,121 @@ class Apptimize {
     await _channel.invokeMethod('clearAllForcedVariants');
   }
 
+  /// Controls whether the plugin handles calls off the platform thread.
+  ///
+  /// When [enabled] is `true`, calls which change Apptimize state (such as
+  /// [setUserAttributeString] or [setCustomerUserId]) are executed in order on
+  /// a single background thread, while read-only calls (such as
+  /// [isFeatureFlagOn], [runTest] or reading dynamic variable values) run
+  /// concurrently on a small thread pool. This prevents calls which can block,
+  /// like [runTest] with an `updateMetadataTimeout`, from dropping frames.
+  ///
+  /// Background dispatch is disabled by default. It is only supported on
+  /// Android; calls are always handled on the main thread on iOS.
+  static Future<void> setBackgroundDispatchEnabled(bool enabled) async {
+    await _channel
+        .invokeMethod('setBackgroundDispatchEnabled', {'enabled': enabled});
+  }
+
+  /// Controls whether dynamic variable values are mirrored in Dart.
+  ///
+  /// When [enabled] is `true`, the plugin pushes the values of all declared
+  /// dynamic variables to Dart whenever they change (after tests are processed
+  /// or the user is enrolled in or unenrolled from a test). Reading
+  /// [ApptimizeValueVariable.value] and the list and map equivalents is then
+  /// answered from that mirror without a platform channel round trip, and
+  /// [ApptimizeValueVariable.cachedValue] can be read synchronously.
+  ///
+  /// **Note** Taking a snapshot reads every declared variable in the native
+  /// SDK, which counts as participation in the tests those variables belong
+  /// to.
+  ///
+  /// Returns `false` if the cache could not be enabled because this platform
+  /// does not support it. It is currently only supported on Android.
+  static Future<bool> setDynamicVariableCacheEnabled(bool enabled) async {
+    _dynamicVariableCache.clear();
+    _dynamicVariableCacheVersion = null;
+    _isDynamicVariableCacheEnabled = false;
+
+    try {
+      final bool? isSupported = await _channel.invokeMethod<bool>(
+          'setDynamicVariableCacheEnabled', {'enabled': enabled});
+      _isDynamicVariableCacheEnabled = enabled && (isSupported ?? false);
+    } on MissingPluginException {
+      developer.log(
+          "`setDynamicVariableCacheEnabled` is not supported on this platform.",
+          name: Apptimize._logTag);
+    }
+    return _isDynamicVariableCacheEnabled || !enabled;
+  }
+
+  /// Gets statistics about the delivery of Apptimize events to Dart.
+  ///
+  /// Returns `null` if the platform does not report these statistics. They
+  /// are currently only available on Android.
+  static Future<ApptimizeEventDispatchStats?> get eventDispatchStats async {
+    try {
+      final Map? stats = await _channel.invokeMethod('getEventDispatchStats');
+      return stats != null ? ApptimizeEventDispatchStats._fromMap(stats) : null;
+    } on MissingPluginException {
+      return null;
+    }
+  }
+
+  /// Gets counters the plugin keeps about its own method calls and events,
+  /// such as how often each method was called, how long it took and how many
+  /// bytes each event sent to Dart.
+  ///
+  /// Returns `null` if the platform does not keep these metrics. They are
+  /// currently only available on Android.
+  static Future<ApptimizePluginMetrics?> get pluginMetrics async {
+    try {
+      final Map? metrics = await _channel.invokeMethod('getPluginMetrics');
+      return metrics != null ? ApptimizePluginMetrics._fromMap(metrics) : null;
+    } on MissingPluginException {
+      return null;
+    }
+  }
+
+  /// Logs a summary of [pluginMetrics] to the platform log every [interval].
+  ///
+  /// Pass [Duration.zero] to stop logging. This is only supported on Android.
+  static Future<void> setPluginMetricsLogInterval(Duration interval) async {
+    try {
+      await _channel.invokeMethod('setPluginMetricsLogInterval',
+          {'intervalMillis': interval.inMilliseconds});
+    } on MissingPluginException {
+      developer.log(
+          "`setPluginMetricsLogInterval` is not supported on this platform.",
+          name: Apptimize._logTag);
+    }
+  }
+
+  /// Gets when each phase of Apptimize startup was reached, to help tune
+  /// [ApptimizeOptions.delayUntilTestsAreAvailable] and
+  /// [ApptimizeOptions.refreshMetaDataOnSetup].
+  ///
+  /// Returns `null` on platforms which do not record startup timing.
+  static Future<ApptimizeStartupTiming?> get startupTiming async {
+    try {
+      final Map? timing = await _channel.invokeMethod('getStartupTiming');
+      return timing != null ? ApptimizeStartupTiming._fromMap(timing) : null;
+    } on MissingPluginException {
+      return null;
+    }
+  }
+
   /// Get information about all available variants.
   ///
   /// The returned map is a mapping of variant ids to an [ApptimizeVariant].
   /// The returned map will be empty if there are no available variants.
   static Future<Map<int, ApptimizeVariant>> getVariants() async {
-    final List<dynamic>? result = await _channel.invokeMethod('getVariants');
+    final dynamic response =
+        await _channel.invokeMethod('getVariants', {'format': 'compact'});
+    final List<dynamic>? result = response is Uint8List
+        ? _ApptimizeSnapshotReader.readList(
+            response, _ApptimizeSnapshotReader.kindVariants)
+        : response;
     if (result == null) {
       return Map();
     }
@@ -536,32 +850,260 @@ class Apptimize {
   static final MethodChannel _channel = MethodChannel('apptimize_flutter')
     ..setMethodCallHandler(_methodCallHandler);
 
-  /// Helper declaring dynamic variables
-  static Future<bool> _declareDynamicVariable(
+  static _ApptimizeTrackBuffer? _trackBuffer;
+
+  static final Map<int, ApptimizeFeatureFlagSubscription>
+      _featureFlagSubscriptions = {};
+
+  /// Helper evaluating feature flags one by one into a bitset.
+  static Future<Uint8List> _evaluateFeatureFlags(List<String> names) async {
+    final bits = new Uint8List((names.length + 7) >> 3);
+    for (var i = 0; i < names.length; i++) {
+      if (await isFeatureFlagOn(names[i])) {
+        bits[i >> 3] |= 1 << (i & 7);
+      }
+    }
+    return bits;
+  }
+
+  /// Helper parsing a test info snapshot, sent either as a map or in the
+  /// compact snapshot format.
+  static Map<String, ApptimizeTestInfo?>? _testInfoFromResponse(
+      dynamic response, String method) {
+    final Map<dynamic, dynamic>? result = response is Uint8List
+        ? _ApptimizeSnapshotReader.readKeyed(
+            response, _ApptimizeSnapshotReader.kindTestInfo)
+        : response;
+
+    if (result == null) {
+      return null;
+    }
+
+    final entries = result.entries;
+    Map<String, ApptimizeTestInfo?> apptimizeTestInfos =
+        new Map<String, ApptimizeTestInfo?>();
+
+    for (final e in entries) {
+      final key = e.key;
+      final value = e.value;
+      if (!(key is String)) {
+        developer.log("Expected `String` key in entries of `$method` response",
+            name: Apptimize._logTag);
+        continue;
+      }
+
+      if (!(value is Map)) {
+        developer.log("Expected `Map` value in entries of `$method` response",
+            name: Apptimize._logTag);
+        continue;
+      }
+
+      apptimizeTestInfos[key] = ApptimizeTestInfo._fromMap(value);
+    }
+
+    return apptimizeTestInfos;
+  }
+
+  /// Helper reading a date sent either as an ISO 8601 string or, in compact
+  /// snapshots, already decoded to a [DateTime].
+  static DateTime? _parseDate(dynamic raw) {
+    if (raw is DateTime) {
+      return raw;
+    }
+    return raw is String ? DateTime.parse(raw) : null;
+  }
+
+  /// Handle of a dynamic variable declared on a platform which does not
+  /// support handles.
+  static const int _noDynamicVariableHandle = -1;
+
+  /// Helper declaring dynamic variables.
+  ///
+  /// Returns the handle of the variable, [_noDynamicVariableHandle] if the
+  /// platform did not provide one, or `null` if it was not declared.
+  static Future<int?> _declareDynamicVariable(
       String name, String type, dynamic defaultValue) async {
-    final variableDeclared = await _channel.invokeMethod(
-        "declareDynamicVariable",
-        {'name': name, 'type': type, 'defaultValue': defaultValue});
-    return variableDeclared ?? false;
+    final manifest = await _getManifestDynamicVariables();
+    final manifestHandle = _manifestDynamicVariableHandle(manifest, name, type);
+    if (manifestHandle != null) {
+      final manifestDefaultValue = manifest['defaultValues']?[type]?[name];
+      if (!_dynamicVariableValuesEqual(manifestDefaultValue, defaultValue)) {
+        developer.log(
+            'Dynamic variable $name was declared from apptimize_variables.json '
+            'with default value $manifestDefaultValue, ignoring $defaultValue',
+            name: _logTag);
+      }
+      return manifestHandle;
+    }
+
+    final variableDeclared =
+        await _channel.invokeMethod("declareDynamicVariable", {
+      'name': name,
+      'type': type,
+      'defaultValue': defaultValue,
+      'returnHandle': true
+    });
+    return _dynamicVariableHandle(variableDeclared);
   }
 
   /// Helper to determine if a dynamic variable is declared or not.
-  static Future<bool> _isDynamicVariableDeclared(
+  ///
+  /// Returns the handle of the variable, [_noDynamicVariableHandle] if the
+  /// platform did not provide one, or `null` if it is not declared.
+  static Future<int?> _isDynamicVariableDeclared(
       String name, String type) async {
+    final manifestHandle = _manifestDynamicVariableHandle(
+        await _getManifestDynamicVariables(), name, type);
+    if (manifestHandle != null) {
+      return manifestHandle;
+    }
+
     var variableDeclared = await _channel.invokeMethod(
-        "isDynamicVariableDeclared", {'name': name, 'type': type});
-    return variableDeclared ?? false;
+        "isDynamicVariableDeclared",
+        {'name': name, 'type': type, 'returnHandle': true});
+    return _dynamicVariableHandle(variableDeclared);
+  }
+
+  /// The dynamic variables declared from the bundled `apptimize_variables.json`
+  /// manifest: their `handles` and `defaultValues`, by type and then by name.
+  static Future<Map>? _manifestDynamicVariables;
+
+  /// Helper fetching the dynamic variables declared from the bundled manifest.
+  ///
+  /// They are fetched in a single call the first time, so that its variables
+  /// are declared and looked up without a round trip each. A failed call is
+  /// not cached, so that the next lookup tries again.
+  static Future<Map> _getManifestDynamicVariables() {
+    final cached = _manifestDynamicVariables;
+    if (cached != null) {
+      return cached;
+    }
+
+    final manifest = _fetchManifestDynamicVariables();
+    _manifestDynamicVariables = manifest;
+    manifest.then((_) {}, onError: (_) {
+      if (identical(_manifestDynamicVariables, manifest)) {
+        _manifestDynamicVariables = null;
+      }
+    });
+    return manifest;
+  }
+
+  static Future<Map> _fetchManifestDynamicVariables() async {
+    try {
+      final manifest =
+          await _channel.invokeMethod('getManifestDynamicVariables');
+      return manifest is Map ? manifest : const {};
+    } on MissingPluginException {
+      return const {};
+    }
+  }
+
+  /// Helper looking up the handle of a dynamic variable in [manifest], or
+  /// `null` if the manifest did not declare it.
+  static int? _manifestDynamicVariableHandle(
+      Map manifest, String name, String type) {
+    final handle = manifest['handles']?[type]?[name];
+    return handle is int ? handle : null;
+  }
+
+  /// Helper comparing dynamic variable values, which may be lists or maps.
+  static bool _dynamicVariableValuesEqual(dynamic a, dynamic b) {
+    if (a is List && b is List) {
+      return listEquals(a, b);
+    }
+    if (a is Map && b is Map) {
+      return mapEquals(a, b);
+    }
+    return a == b;
+  }
+
+  /// Helper parsing the response to a dynamic variable declaration or lookup,
+  /// which is the variable's handle, or a [bool] on platforms without handles.
+  static int? _dynamicVariableHandle(dynamic response) {
+    if (response is int) {
+      return response;
+    }
+    return response == true ? _noDynamicVariableHandle : null;
   }
 
   /// Helper for getting the value of a dynamic variable.
-  static Future<dynamic> _getDynamicVariableValue(
-      String name, String type) async {
-    dynamic value = await _channel
-        .invokeMethod("getDynamicVariableValue", {'name': name, 'type': type});
+  static Future<dynamic> _getDynamicVariableValue(String name, String type,
+      [int handle = _noDynamicVariableHandle]) async {
+    final key = _dynamicVariableKey(name, type);
+    if (_isDynamicVariableCacheEnabled &&
+        _dynamicVariableCache.containsKey(key)) {
+      return _dynamicVariableCache[key];
+    }
+
+    final version = _dynamicVariableCacheVersion;
+    dynamic value = _ApptimizeFastPath.unsupported;
+    // Lists and maps are only sent through the method channel's codec.
+    if (handle != _noDynamicVariableHandle &&
+        !type.startsWith(ApptimizeVariable._DVTypeArray) &&
+        !type.startsWith(ApptimizeVariable._DVTypeDictionary)) {
+      value = await _ApptimizeFastPath.getDynamicVariableValue(handle);
+    }
+    if (identical(value, _ApptimizeFastPath.unsupported)) {
+      value = await _channel.invokeMethod(
+          "getDynamicVariableValue",
+          handle != _noDynamicVariableHandle
+              ? {'handle': handle}
+              : {'name': name, 'type': type});
+    }
+
+    // Only keep the value if no push arrived while it was being fetched, as
+    // it may otherwise be older than the pushed one.
+    if (_isDynamicVariableCacheEnabled &&
+        value != null &&
+        version == _dynamicVariableCacheVersion) {
+      _dynamicVariableCache[key] = value;
+    }
 
     return value;
   }
 
+  /// Helper for synchronously reading the mirrored value of a dynamic
+  /// variable, `null` if it is not available.
+  static dynamic _getCachedDynamicVariableValue(String name, String type) {
+    if (!_isDynamicVariableCacheEnabled) {
+      return null;
+    }
+    return _dynamicVariableCache[_dynamicVariableKey(name, type)];
+  }
+
+  static String _dynamicVariableKey(String name, String type) =>
+      name + "\$\$" + type;
+
+  /// Applies changed dynamic variable values pushed by the plugin.
+  static void _onDynamicVariablesChanged(dynamic arguments) {
+    final int? version = arguments['version'];
+    final List<dynamic>? variables = arguments['variables'];
+    if (version == null || variables == null) {
+      developer.log(
+          "Expected `version` and `variables` in `ApptimizeDynamicVariablesChanged` event args.",
+          name: Apptimize._logTag);
+      return;
+    }
+
+    // A gap in versions means a push was missed so the mirror may be stale.
+    final lastVersion = _dynamicVariableCacheVersion;
+    if (lastVersion != null && version != lastVersion + 1) {
+      _dynamicVariableCache.clear();
+    }
+    _dynamicVariableCacheVersion = version;
+
+    for (final variable in variables) {
+      final String? name = variable['name'];
+      final String? type = variable['type'];
+      if (name == null || type == null) {
+        continue;
+      }
+      _dynamicVariableCache[_dynamicVariableKey(name, type)] =
+          variable['value'];
+    }
+  }
+
   /// Dispatcher for callbacks, fired as streams.
   static Future<void> _methodCallHandler(MethodCall call) async {
     try {
@@ -645,11 +1187,50 @@ class Apptimize {
               .add(new ApptimizeMetadataStateChangedEvent(metaDataState));
           break;
 
+        case 'ApptimizeStartupTiming':
+          _apptimizeStartupTimingStreamController.add(
+              new ApptimizeStartupTimingEvent(
+                  ApptimizeStartupTiming._fromMap(call.arguments ?? {})));
+          break;
+
+        case 'ApptimizePersistedValuesChanged':
+          final List featureFlags = call.arguments['featureFlags'] ?? [];
+          final List dynamicVariables =
+              call.arguments['dynamicVariables'] ?? [];
+          _apptimizePersistedValuesChangedStreamController.add(
+              new ApptimizePersistedValuesChangedEvent(
+                  featureFlags.cast<String>(),
+                  dynamicVariables
+                      .map((variable) => variable['name'] as String)
+                      .toList()));
+          break;
+
         case 'ApptimizeTestsProcessed':
           _apptimizeTestsProcessedStreamController
               .add(new ApptimizeTestsProcessedEvent());
           break;
 
+        case 'ApptimizeDynamicVariablesChanged':
+          _onDynamicVariablesChanged(call.arguments);
+          break;
+
+        case 'ApptimizeFeatureFlagsChanged':
+          final Uint8List? bits = call.arguments['bits'];
+          final subscription =
+              _featureFlagSubscriptions[call.arguments['subscriptionId']];
+          if (subscription != null && bits != null) {
+            subscription._update(bits);
+          }
+          break;
+
+        case 'ApptimizeEventBatch':
+          // Events fired within the same frame are delivered together.
+          for (final event in call.arguments['events']) {
+            await _methodCallHandler(
+                new MethodCall(event['method'], event['arguments']));
+          }
+          break;
+
         default:
           developer.log("Don't know how to handle ${call.method}.",
               name: Apptimize._logTag);
@@ -662,28 +1243,332 @@ class Apptimize {
     }
   }
 
+  // Dynamic variable mirror, see [setDynamicVariableCacheEnabled].
+  static bool _isDynamicVariableCacheEnabled = false;
+  static int? _dynamicVariableCacheVersion;
+  static final Map<String, dynamic> _dynamicVariableCache =
+      new Map<String, dynamic>();
+
+  /// Creates a broadcast stream controller for [event] which tells the native
+  /// plugin when it has listeners, so that events nobody listens to are not
+  /// sent to this engine.
+  static StreamController<T> _eventStreamController<T>(String event) {
+    return new StreamController<T>.broadcast(
+        onListen: () => _setEventSubscribed(event, true),
+        onCancel: () => _setEventSubscribed(event, false));
+  }
+
+  static Future<void> _setEventSubscribed(String event, bool subscribed) async {
+    try {
+      await _channel.invokeMethod(
+          'setEventSubscribed', {'event': event, 'subscribed': subscribed});
+    } on MissingPluginException {
+      // Platforms without subscriptions always send every event.
+    }
+  }
+
   // Stream broadcasters.
   static final StreamController<ApptimizeEnrolledInExperimentEvent>
       _apptimizeEnrolledInExperimentStreamController =
-      new StreamController<ApptimizeEnrolledInExperimentEvent>.broadcast();
+      _eventStreamController('ApptimizeEnrolledInExperiment');
   static final StreamController<ApptimizeParticipatedInExperimentEvent>
       _apptimizeParticipatedInExperimentStreamController =
-      new StreamController<ApptimizeParticipatedInExperimentEvent>.broadcast();
+      _eventStreamController('ApptimizeParticipatedInExperiment');
   static final StreamController<ApptimizeUnenrolledInExperimentEvent>
       _apptimizeUnenrolledInExperimentStreamController =
-      new StreamController<ApptimizeUnenrolledInExperimentEvent>.broadcast();
+      _eventStreamController('ApptimizeUnenrolledInExperiment');
   static final StreamController<ApptimizeInitializedEvent>
       _apptimizeInitializedStreamController =
-      new StreamController<ApptimizeInitializedEvent>.broadcast();
+      _eventStreamController('ApptimizeInitialized');
   static final StreamController<ApptimizeTestsProcessedEvent>
       _apptimizeTestsProcessedStreamController =
-      new StreamController<ApptimizeTestsProcessedEvent>.broadcast();
+      _eventStreamController('ApptimizeTestsProcessed');
   static final StreamController<ApptimizeResumedEvent>
       _apptimizeResumedStreamController =
-      new StreamController<ApptimizeResumedEvent>.broadcast();
+      _eventStreamController('ApptimizeResumed');
   static final StreamController<ApptimizeMetadataStateChangedEvent>
       _apptimizeMetadataStateChangedStreamController =
-      new StreamController<ApptimizeMetadataStateChangedEvent>.broadcast();
+      _eventStreamController('ApptimizeMetadataStateChanged');
+  static final StreamController<ApptimizeStartupTimingEvent>
+      _apptimizeStartupTimingStreamController =
+      _eventStreamController('ApptimizeStartupTiming');
+  static final StreamController<ApptimizePersistedValuesChangedEvent>
+      _apptimizePersistedValuesChangedStreamController =
+      _eventStreamController('ApptimizePersistedValuesChanged');
+}
+
+/// ApptimizeBatch collects Apptimize operations so that they can be executed
+/// natively in a single platform channel round trip.
+///
+/// Each operation returns a [Future] which completes once [commit] has run the
+/// batch. Operations are executed in the order they were added, and an error in
+/// one operation completes only that operation's [Future] with a
+/// [PlatformException]; the remaining operations still run.
+///
+/// ```dart
+/// final batch = ApptimizeBatch();
+/// batch.setUserAttributeString("plan", "premium");
+/// final showBanner = batch.isFeatureFlagOn("show_banner");
+/// await batch.commit();
+/// if (await showBanner) { ... }
+/// ```
+///
+/// A batch can only be committed once.
+class ApptimizeBatch {
+  final List<Map<String, dynamic>> _calls = [];
+  final List<void Function(dynamic, PlatformException?)> _completions = [];
+  bool _isCommitted = false;
+
+  /// The number of operations currently in this batch.
+  int get length => _calls.length;
+
+  /// Batched equivalent of [Apptimize.setCustomerUserId].
+  Future<void> setCustomerUserId(String? customerUserId) {
+    return _add<void>('setCustomerUserId', {'customerUserId': customerUserId},
+        (value) => null);
+  }
+
+  /// Batched equivalent of [Apptimize.track].
+  Future<void> track(String eventName, [double? value]) {
+    return _add<void>(
+        'track', {"eventName": eventName, "value": value}, (value) => null);
+  }
+
+  /// Batched equivalent of [Apptimize.isFeatureFlagOn].
+  Future<bool> isFeatureFlagOn(String featureFlagName) {
+    return _add<bool>('isFeatureFlagOn', {'featureFlagName': featureFlagName},
+        (value) => value ?? false);
+  }
+
+  /// Batched equivalent of [Apptimize.setUserAttributeString].
+  Future<void> setUserAttributeString(
+      String attributeName, String attributeValue) {
+    return _setUserAttribute('string', attributeName, attributeValue);
+  }
+
+  /// Batched equivalent of [Apptimize.setUserAttributeInteger].
+  Future<void> setUserAttributeInteger(
+      String attributeName, int attributeValue) {
+    return _setUserAttribute('int', attributeName, attributeValue);
+  }
+
+  /// Batched equivalent of [Apptimize.setUserAttributeDouble].
+  Future<void> setUserAttributeDouble(
+      String attributeName, double attributeValue) {
+    return _setUserAttribute('double', attributeName, attributeValue);
+  }
+
+  /// Batched equivalent of [Apptimize.setUserAttributeBool].
+  Future<void> setUserAttributeBool(String attributeName, bool attributeValue) {
+    return _setUserAttribute('bool', attributeName, attributeValue);
+  }
+
+  /// Batched equivalent of [Apptimize.removeUserAttribute].
+  Future<void> removeUserAttribute(String attributeName) {
+    return _add<void>('removeUserAttribute', {'attributeName': attributeName},
+        (value) => null);
+  }
+
+  /// Batched equivalent of [ApptimizeVariable.declareString].
+  Future<ApptimizeValueVariable<String>?> declareString(
+      String name, String defaultValue) {
+    return _declare(name, ApptimizeVariable._DVTypeString, defaultValue,
+        (handle) => new ApptimizeValueVariable<String>._(
+            name, ApptimizeVariable._DVTypeString, handle));
+  }
+
+  /// Batched equivalent of [ApptimizeVariable.declareBool].
+  Future<ApptimizeValueVariable<bool>?> declareBool(
+      String name, bool defaultValue) {
+    return _declare(name, ApptimizeVariable._DVTypeBool, defaultValue,
+        (handle) => new ApptimizeValueVariable<bool>._(
+            name, ApptimizeVariable._DVTypeBool, handle));
+  }
+
+  /// Batched equivalent of [ApptimizeVariable.declareInteger].
+  Future<ApptimizeValueVariable<int>?> declareInteger(
+      String name, int defaultValue) {
+    return _declare(name, ApptimizeVariable._DVTypeInt, defaultValue,
+        (handle) => new ApptimizeValueVariable<int>._(
+            name, ApptimizeVariable._DVTypeInt, handle));
+  }
+
+  /// Batched equivalent of [ApptimizeVariable.declareDouble].
+  Future<ApptimizeValueVariable<double>?> declareDouble(
+      String name, double defaultValue) {
+    return _declare(name, ApptimizeVariable._DVTypeDouble, defaultValue,
+        (handle) => new ApptimizeValueVariable<double>._(
+            name, ApptimizeVariable._DVTypeDouble, handle));
+  }
+
+  /// Batched equivalent of [ApptimizeVariable.declareStringArray].
+  Future<ApptimizeListVariable<String>?> declareStringArray(
+      String name, List<String> defaultValue) {
+    final type =
+        ApptimizeVariable._DVTypeArray + ApptimizeVariable._DVTypeString;
+    return _declare(name, type, defaultValue,
+        (handle) => new ApptimizeListVariable<String>._(name, type, handle));
+  }
+
+  /// Batched equivalent of [ApptimizeVariable.declareBoolArray].
+  Future<ApptimizeListVariable<bool>?> declareBoolArray(
+      String name, List<bool> defaultValue) {
+    final type =
+        ApptimizeVariable._DVTypeArray + ApptimizeVariable._DVTypeBool;
+    return _declare(name, type, defaultValue,
+        (handle) => new ApptimizeListVariable<bool>._(name, type, handle));
+  }
+
+  /// Batched equivalent of [ApptimizeVariable.declareIntegerArray].
+  Future<ApptimizeListVariable<int>?> declareIntegerArray(
+      String name, List<int> defaultValue) {
+    final type =
+        ApptimizeVariable._DVTypeArray + ApptimizeVariable._DVTypeInt;
+    return _declare(name, type, defaultValue,
+        (handle) => new ApptimizeListVariable<int>._(name, type, handle));
+  }
+
+  /// Batched equivalent of [ApptimizeVariable.declareDoubleArray].
+  Future<ApptimizeListVariable<double>?> declareDoubleArray(
+      String name, List<double> defaultValue) {
+    final type =
+        ApptimizeVariable._DVTypeArray + ApptimizeVariable._DVTypeDouble;
+    return _declare(name, type, defaultValue,
+        (handle) => new ApptimizeListVariable<double>._(name, type, handle));
+  }
+
+  /// Batched equivalent of [ApptimizeVariable.declareStringDictionary].
+  Future<ApptimizeMapVariable<String>?> declareStringDictionary(
+      String name, Map<String, String> defaultValue) {
+    final type =
+        ApptimizeVariable._DVTypeDictionary + ApptimizeVariable._DVTypeString;
+    return _declare(name, type, defaultValue,
+        (handle) => new ApptimizeMapVariable<String>._(name, type, handle));
+  }
+
+  /// Batched equivalent of [ApptimizeVariable.declareBoolDictionary].
+  Future<ApptimizeMapVariable<bool>?> declareBoolDictionary(
+      String name, Map<String, bool> defaultValue) {
+    final type =
+        ApptimizeVariable._DVTypeDictionary + ApptimizeVariable._DVTypeBool;
+    return _declare(name, type, defaultValue,
+        (handle) => new ApptimizeMapVariable<bool>._(name, type, handle));
+  }
+
+  /// Batched equivalent of [ApptimizeVariable.declareIntegerDictionary].
+  Future<ApptimizeMapVariable<int>?> declareIntegerDictionary(
+      String name, Map<String, int> defaultValue) {
+    final type =
+        ApptimizeVariable._DVTypeDictionary + ApptimizeVariable._DVTypeInt;
+    return _declare(name, type, defaultValue,
+        (handle) => new ApptimizeMapVariable<int>._(name, type, handle));
+  }
+
+  /// Batched equivalent of [ApptimizeVariable.declareDoubleDictionary].
+  Future<ApptimizeMapVariable<double>?> declareDoubleDictionary(
+      String name, Map<String, double> defaultValue) {
+    final type =
+        ApptimizeVariable._DVTypeDictionary + ApptimizeVariable._DVTypeDouble;
+    return _declare(name, type, defaultValue,
+        (handle) => new ApptimizeMapVariable<double>._(name, type, handle));
+  }
+
+  /// Executes all operations in this batch in a single native call.
+  ///
+  /// Completes once every operation's [Future] has been completed. If the
+  /// batch itself could not be delivered, every operation fails with the same
+  /// error and it is rethrown here.
+  Future<void> commit() async {
+    if (_isCommitted) {
+      throw StateError("ApptimizeBatch has already been committed");
+    }
+    _isCommitted = true;
+
+    if (_calls.isEmpty) {
+      return;
+    }
+
+    List<dynamic>? results;
+    try {
+      results = await Apptimize._channel
+          .invokeMethod<List<dynamic>>('executeBatch', {'calls': _calls});
+    } on PlatformException catch (e) {
+      _completions.forEach((complete) => complete(null, e));
+      rethrow;
+    }
+
+    for (var i = 0; i < _completions.length; i++) {
+      final entry = results != null && i < results.length ? results[i] : null;
+      if (!(entry is Map)) {
+        developer.log("Expected `Map` in each entry of `executeBatch` response",
+            name: Apptimize._logTag);
+        _completions[i](
+            null,
+            PlatformException(
+                code: "UNKNOWN", message: "Missing `executeBatch` result"));
+        continue;
+      }
+
+      final String? error = entry['error'];
+      if (error != null) {
+        _completions[i](
+            null, PlatformException(code: error, message: entry['message']));
+      } else {
+        _completions[i](entry['result'], null);
+      }
+    }
+  }
+
+  Future<void> _setUserAttribute(
+      String type, String attributeName, dynamic attributeValue) {
+    return _add<void>(
+        'setUserAttribute',
+        {
+          'type': type,
+          'attributeName': attributeName,
+          'attributeValue': attributeValue
+        },
+        (value) => null);
+  }
+
+  Future<V?> _declare<V>(String name, String type, dynamic defaultValue,
+      V Function(int handle) create) {
+    return _add<V?>('declareDynamicVariable', {
+      'name': name,
+      'type': type,
+      'defaultValue': defaultValue,
+      'returnHandle': true
+    }, (value) {
+      final handle = Apptimize._dynamicVariableHandle(value);
+      return handle != null ? create(handle) : null;
+    });
+  }
+
+  Future<T> _add<T>(String method, Map<String, dynamic> arguments,
+      T Function(dynamic) convert) {
+    if (_isCommitted) {
+      throw StateError("ApptimizeBatch has already been committed");
+    }
+
+    final completer = Completer<T>();
+    _calls.add({'method': method, 'arguments': arguments});
+    _completions.add((value, error) {
+      if (error != null) {
+        completer.completeError(error);
+        return;
+      }
+      try {
+        completer.complete(convert(value));
+      } catch (e) {
+        completer.completeError(e);
+      }
+    });
+
+    // Callers are not required to await every operation, so make sure errors
+    // are not reported as unhandled when they don't.
+    completer.future.then<void>((_) {}, onError: (_) {});
+    return completer.future;
+  }
 }
 
 /// ApptimizeValueVariable is a dynamic variable which contains a specified
@@ -696,7 +1581,9 @@ class Apptimize {
 ///
 /// All dynamic variables must be declared first before using.
 class ApptimizeValueVariable<T> extends ApptimizeVariable<T> {
-  ApptimizeValueVariable._(name, type) : super._(name, type);
+  ApptimizeValueVariable._(name, type,
+      [handle = Apptimize._noDynamicVariableHandle])
+      : super._(name, type, handle);
 
   /// Gets the value of this ApptimizeValueVariable of the specified type.
   ///
@@ -707,7 +1594,20 @@ class ApptimizeValueVariable<T> extends ApptimizeVariable<T> {
   /// Returns the default value if there is an issue with the incoming variant
   /// data.
   Future<T?> get value async {
-    final value = await Apptimize._getDynamicVariableValue(name, _type);
+    return _fromRaw(
+        await Apptimize._getDynamicVariableValue(name, _type, _handle));
+  }
+
+  /// Gets the value of this ApptimizeValueVariable from the Dart mirror of
+  /// dynamic variable values without crossing the platform channel.
+  ///
+  /// Returns `null` if the mirror is disabled or does not hold a value for this
+  /// variable yet. See [Apptimize.setDynamicVariableCacheEnabled].
+  T? get cachedValue {
+    return _fromRaw(Apptimize._getCachedDynamicVariableValue(name, _type));
+  }
+
+  T? _fromRaw(dynamic value) {
     if (value == null) {
       return null;
     }
@@ -734,7 +1634,9 @@ class ApptimizeValueVariable<T> extends ApptimizeVariable<T> {
 ///
 /// All dynamic variables must be declared first before using.
 class ApptimizeListVariable<T> extends ApptimizeVariable<T> {
-  ApptimizeListVariable._(name, type) : super._(name, type);
+  ApptimizeListVariable._(name, type,
+      [handle = Apptimize._noDynamicVariableHandle])
+      : super._(name, type, handle);
 
   /// Gets the value of this ApptimizeListVariable of the specified type.
   ///
@@ -745,7 +1647,28 @@ class ApptimizeListVariable<T> extends ApptimizeVariable<T> {
   /// Returns the default value if there is an issue with the incoming variant
   /// data.
   Future<List<T>> get value async {
-    List<dynamic> list = await Apptimize._getDynamicVariableValue(name, _type);
+    List<dynamic> list =
+        await Apptimize._getDynamicVariableValue(name, _type, _handle);
+    return _fromRaw(list);
+  }
+
+  /// Gets the list of this ApptimizeListVariable from the Dart mirror of
+  /// dynamic variable values without crossing the platform channel.
+  ///
+  /// Returns `null` if the mirror is disabled or does not hold a value for this
+  /// variable yet. See [Apptimize.setDynamicVariableCacheEnabled].
+  List<T>? get cachedValue {
+    final List<dynamic>? list =
+        Apptimize._getCachedDynamicVariableValue(name, _type);
+    return list != null ? _fromRaw(list) : null;
+  }
+
+  List<T> _fromRaw(List<dynamic> list) {
+    final view = ApptimizeVariable._typedDataView<T>(list);
+    if (view != null) {
+      return view;
+    }
+
     if (list.isEmpty) {
       return [];
     }
@@ -764,7 +1687,9 @@ class ApptimizeListVariable<T> extends ApptimizeVariable<T> {
 ///
 /// All dynamic variables must be declared first before using.
 class ApptimizeMapVariable<T> extends ApptimizeVariable<T> {
-  ApptimizeMapVariable._(name, type) : super._(name, type);
+  ApptimizeMapVariable._(name, type,
+      [handle = Apptimize._noDynamicVariableHandle])
+      : super._(name, type, handle);
 
   /// Gets the map of this ApptimizeMapVariable of the specified type.
   ///
@@ -779,8 +1704,29 @@ class ApptimizeMapVariable<T> extends ApptimizeVariable<T> {
   /// Returns the default value if there is an issue with the incoming variant
   /// data.
   Future<Map<String, T>> get value async {
-    Map<dynamic, dynamic> map =
-        await Apptimize._getDynamicVariableValue(name, _type);
+    return _fromRaw(
+        await Apptimize._getDynamicVariableValue(name, _type, _handle));
+  }
+
+  /// Gets the map of this ApptimizeMapVariable from the Dart mirror of dynamic
+  /// variable values without crossing the platform channel.
+  ///
+  /// Returns `null` if the mirror is disabled or does not hold a value for this
+  /// variable yet. See [Apptimize.setDynamicVariableCacheEnabled].
+  Map<String, T>? get cachedValue {
+    final dynamic map = Apptimize._getCachedDynamicVariableValue(name, _type);
+    return map != null ? _fromRaw(map) : null;
+  }
+
+  Map<String, T> _fromRaw(dynamic map) {
+    // Android sends integer, double and bool dictionaries as a list of their
+    // keys followed by their values.
+    if (map is List) {
+      final List<dynamic> keys = map[0];
+      final values = ApptimizeVariable._typedDataView<T>(map[1]) ??
+          List<T>.from(map[1]);
+      return new _ApptimizeColumnarMap<T>(keys.cast<String>(), values);
+    }
 
     if (map.isEmpty) {
       return Map<String, T>();
@@ -808,7 +1754,12 @@ class ApptimizeVariable<T> {
   final String name;
   final String _type;
 
-  ApptimizeVariable._(this.name, this._type);
+  /// Native handle of this dynamic variable, used to read its value without a
+  /// name and type lookup.
+  final int _handle;
+
+  ApptimizeVariable._(this.name, this._type,
+      [this._handle = Apptimize._noDynamicVariableHandle]);
 
   static const String _DVTypeString = 'string';
   static const String _DVTypeBool = 'bool';
@@ -817,6 +1768,19 @@ class ApptimizeVariable<T> {
   static const String _DVTypeArray = 'array.';
   static const String _DVTypeDictionary = 'dictionary.';
 
+  /// Wraps the typed data Android sends for lists of numbers and bools in a
+  /// read-only [List] view instead of copying it, or returns `null` if [list]
+  /// is a plain list.
+  static List<E>? _typedDataView<E>(List<dynamic> list) {
+    if (list is List<E> && list is TypedData) {
+      return new UnmodifiableListView<E>(list);
+    }
+    if (list is Uint8List) {
+      return new _ApptimizeBitList(list) as List<E>;
+    }
+    return null;
+  }
+
   /// Create a string dynamic variable with a specified [name] and [defaultValue].
   ///
   /// Returns a new [ApptimizeVariable] of type [String] if no variable has been
@@ -824,6 +1788,10 @@ class ApptimizeVariable<T> {
   /// with this name it returns the existing [String] variable but does not
   /// update the default value or [null] if it is not a [String].
   ///
+  /// On Android, a variable declared from the bundled
+  /// `apptimize_variables.json` manifest already exists, so the manifest's
+  /// default value is kept and a different [defaultValue] is logged.
+  ///
   /// The [name] must not be `null`.
   static Future<ApptimizeValueVariable<String>?> declareString(
       String name, String defaultValue) async {
@@ -837,6 +1805,10 @@ class ApptimizeVariable<T> {
   /// with this name it returns the existing [bool] variable but does not
   /// update the default value or [null] if it is not a [bool].
   ///
+  /// On Android, a variable declared from the bundled
+  /// `apptimize_variables.json` manifest already exists, so the manifest's
+  /// default value is kept and a different [defaultValue] is logged.
+  ///
   /// The [name] and [defaultValue] must not be `null`.
   static Future<ApptimizeValueVariable<bool>?> declareBool(
       String name, bool defaultValue) async {
@@ -850,6 +1822,10 @@ class ApptimizeVariable<T> {
   /// with this name it returns the existing [int] variable but does not
   /// update the default value or [null] if it is not an [int].
   ///
+  /// On Android, a variable declared from the bundled
+  /// `apptimize_variables.json` manifest already exists, so the manifest's
+  /// default value is kept and a different [defaultValue] is logged.
+  ///
   /// The [name] and [defaultValue] must not be `null`.
   static Future<ApptimizeValueVariable<int>?> declareInteger(
       String name, int defaultValue) async {
@@ -863,6 +1839,10 @@ class ApptimizeVariable<T> {
   /// with this name it returns the existing [double] variable but does not
   /// update the default value or [null] if it is not a [double].
   ///
+  /// On Android, a variable declared from the bundled
+  /// `apptimize_variables.json` manifest already exists, so the manifest's
+  /// default value is kept and a different [defaultValue] is logged.
+  ///
   /// The [name] and [defaultValue] must not be `null`.
   static Future<ApptimizeValueVariable<double>?> declareDouble(
       String name, double defaultValue) async {
@@ -877,6 +1857,10 @@ class ApptimizeVariable<T> {
   /// exists with this name it returns the existing list variable but does not
   /// update the default value or [null] if it is not a list of strings.
   ///
+  /// On Android, a variable declared from the bundled
+  /// `apptimize_variables.json` manifest already exists, so the manifest's
+  /// default value is kept and a different [defaultValue] is logged.
+  ///
   /// The [name] and [defaultValue] must not be `null`.
   static Future<ApptimizeListVariable<String>?> declareStringArray(
       String name, List<String> defaultValue) async {
@@ -892,6 +1876,10 @@ class ApptimizeVariable<T> {
   /// exists with this name it returns the existing list variable but does not
   /// update the default value or [null] if it is not a list of booleans.
   ///
+  /// On Android, a variable declared from the bundled
+  /// `apptimize_variables.json` manifest already exists, so the manifest's
+  /// default value is kept and a different [defaultValue] is logged.
+  ///
   /// The [name] and [defaultValue] must not be `null`.
   static Future<ApptimizeListVariable<bool>?> declareBoolArray(
       String name, List<bool> defaultValue) async {
@@ -907,6 +1895,10 @@ class ApptimizeVariable<T> {
   /// exists with this name it returns the existing list variable but does not
   /// update the default value  or [null] if it is not a list of integers.
   ///
+  /// On Android, a variable declared from the bundled
+  /// `apptimize_variables.json` manifest already exists, so the manifest's
+  /// default value is kept and a different [defaultValue] is logged.
+  ///
   /// The [name] and [defaultValue] must not be null.
   static Future<ApptimizeListVariable<int>?> declareIntegerArray(
       String name, List<int> defaultValue) async {
@@ -922,6 +1914,10 @@ class ApptimizeVariable<T> {
   /// exists with this name it returns the existing list variable but does not
   /// update the default value  or [null] if it is not a list of doubles.
   ///
+  /// On Android, a variable declared from the bundled
+  /// `apptimize_variables.json` manifest already exists, so the manifest's
+  /// default value is kept and a different [defaultValue] is logged.
+  ///
   /// The [name] and [defaultValue] must not be null.
   static Future<ApptimizeListVariable<double>?> declareDoubleArray(
       String name, List<double> defaultValue) async {
@@ -937,6 +1933,10 @@ class ApptimizeVariable<T> {
   /// exists with this name it returns the existing map variable but does not
   /// update the default value  or [null] if it is not a string dictionary.
   ///
+  /// On Android, a variable declared from the bundled
+  /// `apptimize_variables.json` manifest already exists, so the manifest's
+  /// default value is kept and a different [defaultValue] is logged.
+  ///
   /// The [name] and [defaultValue] must not be `null`.
   static Future<ApptimizeMapVariable<String>?> declareStringDictionary(
       String name, Map<String, String> defaultValue) async {
@@ -952,6 +1952,10 @@ class ApptimizeVariable<T> {
   /// exists with this name it returns the existing map variable but does not
   /// update the default value  or [null] if it is not a boolean dictionary.
   ///
+  /// On Android, a variable declared from the bundled
+  /// `apptimize_variables.json` manifest already exists, so the manifest's
+  /// default value is kept and a different [defaultValue] is logged.
+  ///
   /// The [name] and [defaultValue] must not be `null`.
   static Future<ApptimizeMapVariable<bool>?> declareBoolDictionary(
       String name, Map<String, bool> defaultValue) async {
@@ -967,6 +1971,10 @@ class ApptimizeVariable<T> {
   /// exists with this name it returns the existing map variable but does not
   /// update the default value or [null] if it is not an integer dictionary.
   ///
+  /// On Android, a variable declared from the bundled
+  /// `apptimize_variables.json` manifest already exists, so the manifest's
+  /// default value is kept and a different [defaultValue] is logged.
+  ///
   /// The [name] and [defaultValue] must not be `null`.
   static Future<ApptimizeMapVariable<int>?> declareIntegerDictionary(
       String name, Map<String, int> defaultValue) async {
@@ -982,6 +1990,10 @@ class ApptimizeVariable<T> {
   /// exists with this name it returns the existing map variable but does not
   /// update the default value or [null] if it is not a double dictionary.
   ///
+  /// On Android, a variable declared from the bundled
+  /// `apptimize_variables.json` manifest already exists, so the manifest's
+  /// default value is kept and a different [defaultValue] is logged.
+  ///
   /// The [name] and [defaultValue] must not be `null`.
   static Future<ApptimizeMapVariable<double>?> declareDoubleDictionary(
       String name, Map<String, double> defaultValue) async {
@@ -1110,10 +2122,10 @@ class ApptimizeVariable<T> {
 
   static Future<ApptimizeValueVariable<T>?> _declareDynamicVariable<T>(
       String name, String type, T defaultValue) async {
-    final bool isDeclared =
+    final int? handle =
         await Apptimize._declareDynamicVariable(name, type, defaultValue);
-    if (isDeclared) {
-      return new ApptimizeValueVariable<T>._(name, type);
+    if (handle != null) {
+      return new ApptimizeValueVariable<T>._(name, type, handle);
     }
 
     return null;
@@ -1121,10 +2133,10 @@ class ApptimizeVariable<T> {
 
   static Future<ApptimizeListVariable<T>?> _declareDynamicListVariable<T>(
       String name, String type, List<T> defaultValue) async {
-    final bool isDeclared =
+    final int? handle =
         await Apptimize._declareDynamicVariable(name, type, defaultValue);
-    if (isDeclared) {
-      return new ApptimizeListVariable<T>._(name, type);
+    if (handle != null) {
+      return new ApptimizeListVariable<T>._(name, type, handle);
     }
 
     return null;
@@ -1132,10 +2144,10 @@ class ApptimizeVariable<T> {
 
   static Future<ApptimizeMapVariable<T>?> _declareDynamicMapVariable<T>(
       String name, String type, Map<String, T> defaultValue) async {
-    final bool isDeclared =
+    final int? handle =
         await Apptimize._declareDynamicVariable(name, type, defaultValue);
-    if (isDeclared) {
-      return new ApptimizeMapVariable<T>._(name, type);
+    if (handle != null) {
+      return new ApptimizeMapVariable<T>._(name, type, handle);
     }
 
     return null;
@@ -1143,10 +2155,9 @@ class ApptimizeVariable<T> {
 
   static Future<ApptimizeValueVariable<T>?> _getDynamicVariable<T>(
       String name, String type) async {
-    final bool isDeclared =
-        await Apptimize._isDynamicVariableDeclared(name, type);
-    if (isDeclared) {
-      return new ApptimizeValueVariable<T>._(name, type);
+    final int? handle = await Apptimize._isDynamicVariableDeclared(name, type);
+    if (handle != null) {
+      return new ApptimizeValueVariable<T>._(name, type, handle);
     }
 
     return null;
@@ -1154,10 +2165,9 @@ class ApptimizeVariable<T> {
 
   static Future<ApptimizeListVariable<T>?> _getDynamicListVariable<T>(
       String name, String type) async {
-    final bool isDeclared =
-        await Apptimize._isDynamicVariableDeclared(name, type);
-    if (isDeclared) {
-      return new ApptimizeListVariable<T>._(name, type);
+    final int? handle = await Apptimize._isDynamicVariableDeclared(name, type);
+    if (handle != null) {
+      return new ApptimizeListVariable<T>._(name, type, handle);
     }
 
     return null;
@@ -1165,16 +2175,81 @@ class ApptimizeVariable<T> {
 
   static Future<ApptimizeMapVariable<T>?> _getDynamicMapVariable<T>(
       String name, String type) async {
-    final bool isDeclared =
-        await Apptimize._isDynamicVariableDeclared(name, type);
-    if (isDeclared) {
-      return new ApptimizeMapVariable<T>._(name, type);
+    final int? handle = await Apptimize._isDynamicVariableDeclared(name, type);
+    if (handle != null) {
+      return new ApptimizeMapVariable<T>._(name, type, handle);
     }
 
     return null;
   }
 }
 
+/// The state of a set of feature flags evaluated together.
+///
+/// See [Apptimize.areFeatureFlagsOn].
+class ApptimizeFeatureFlags {
+  /// The names of the feature flags in this set.
+  final List<String> featureFlagNames;
+
+  final Map<String, int> _indexes = {};
+  Uint8List _bits;
+
+  ApptimizeFeatureFlags._(this.featureFlagNames, Uint8List? bits)
+      : _bits = bits ?? new Uint8List(0) {
+    for (var i = 0; i < featureFlagNames.length; i++) {
+      _indexes[featureFlagNames[i]] = i;
+    }
+  }
+
+  /// Whether the feature flag [featureFlagName] is on.
+  ///
+  /// Returns `false` for flags which are not in [featureFlagNames].
+  bool isOn(String featureFlagName) {
+    final index = _indexes[featureFlagName];
+    if (index == null || index >> 3 >= _bits.length) {
+      return false;
+    }
+    return (_bits[index >> 3] & (1 << (index & 7))) != 0;
+  }
+}
+
+/// A set of feature flags which is kept up to date as tests are processed.
+///
+/// See [Apptimize.subscribeToFeatureFlags].
+class ApptimizeFeatureFlagSubscription extends ApptimizeFeatureFlags {
+  final int? _subscriptionId;
+  final StreamController<ApptimizeFeatureFlagSubscription> _changes =
+      new StreamController<ApptimizeFeatureFlagSubscription>.broadcast();
+  StreamSubscription? _testsProcessedSubscription;
+
+  ApptimizeFeatureFlagSubscription._(
+      this._subscriptionId, List<String> featureFlagNames, Uint8List? bits)
+      : super._(featureFlagNames, bits);
+
+  /// A broadcast stream which fires whenever one of the flags flips.
+  Stream<ApptimizeFeatureFlagSubscription> get changes => _changes.stream;
+
+  /// Stops updating this subscription.
+  Future<void> cancel() async {
+    await _testsProcessedSubscription?.cancel();
+    final subscriptionId = _subscriptionId;
+    if (subscriptionId != null) {
+      Apptimize._featureFlagSubscriptions.remove(subscriptionId);
+      await Apptimize._channel.invokeMethod(
+          'unsubscribeFeatureFlags', {'subscriptionId': subscriptionId});
+    }
+    await _changes.close();
+  }
+
+  void _update(Uint8List bits) {
+    if (_changes.isClosed || listEquals(bits, _bits)) {
+      return;
+    }
+    _bits = bits;
+    _changes.add(this);
+  }
+}
+
 /// Information about a single available variant.
 class ApptimizeVariant {
   /// The name of the experiment associated with this variant
@@ -1316,13 +2391,10 @@ class ApptimizeTestInfo {
     final String? enrolledVariantName = map['enrolledVariantName'];
     final int? testId = map['testId'];
     final int? enrolledVariantId = map['enrolledVariantId'];
-    final String? testStartedDateRaw = map['testStartedDate'];
     final DateTime? testStartedDate =
-        testStartedDateRaw != null ? DateTime.parse(testStartedDateRaw) : null;
-    final String? testEnrolledDateRaw = map['testEnrolledDate'];
-    final DateTime? testEnrolledDate = testEnrolledDateRaw != null
-        ? DateTime.parse(testEnrolledDateRaw)
-        : null;
+        Apptimize._parseDate(map['testStartedDate']);
+    final DateTime? testEnrolledDate =
+        Apptimize._parseDate(map['testEnrolledDate']);
     final int? cycle = map['cycle'];
     final int? currentPhase = map['currentPhase'];
     final int? participationPhase = map['participationPhase'];
@@ -1449,6 +2521,18 @@ class ApptimizeOptions {
   /// set this option unless your account is configured to use a different value.
   ApptimizeServerRegion? serverRegion;
 
+  /// This option controls which participations are sent to
+  /// [Apptimize.apptimizeParticipatedInExperimentStream]. If not specified,
+  /// the default value is [ApptimizeParticipationPolicy.All]. Only supported
+  /// on Android.
+  ApptimizeParticipationPolicy? participationPolicy;
+
+  /// This option controls how long (in milliseconds) further participations in
+  /// a test are not sent after one was, when [participationPolicy] is
+  /// [ApptimizeParticipationPolicy.Windowed]. If not specified, the default
+  /// value is 1000.
+  int? participationWindow;
+
   Map<String, dynamic> toMap() {
     Map<String, dynamic> result = new Map<String, dynamic>();
     if (devicePairingEnabled != null)
@@ -1469,10 +2553,43 @@ class ApptimizeOptions {
     if (refreshMetaDataOnSetup != null) {
       result['refreshMetaDataOnSetup'] = refreshMetaDataOnSetup;
     }
+    if (participationPolicy != null)
+      result['participationPolicy'] =
+          participationPolicy.toString().split('.').last;
+    if (participationWindow != null)
+      result['participationWindow'] = participationWindow;
     return result;
   }
 }
 
+/// The changes to [Apptimize.apptimizeTestInfo] since a previous version.
+///
+/// See [Apptimize.getApptimizeTestInfoChanges].
+class ApptimizeTestInfoChanges {
+  /// The version of the test info these changes bring the caller up to. Pass
+  /// this to the next [Apptimize.getApptimizeTestInfoChanges] call.
+  final int version;
+
+  /// Whether [changed] contains every test the device is enrolled in rather
+  /// than only the changed ones.
+  ///
+  /// If `true`, any previously known test which is not in [changed] has been
+  /// removed.
+  final bool isFullSnapshot;
+
+  /// The tests which were added or changed, keyed by name.
+  final Map<String, ApptimizeTestInfo?> changed;
+
+  /// The names of the tests the device is no longer enrolled in.
+  final List<String> removed;
+
+  const ApptimizeTestInfoChanges._(
+      this.version, this.isFullSnapshot, this.changed, this.removed);
+
+  /// Whether nothing changed since the requested version.
+  bool get isUnchanged => !isFullSnapshot && changed.isEmpty && removed.isEmpty;
+}
+
 /// This type is used to determine the state of the metadata.
 class ApptimizeMetaDataState {
   /// Metadata is available, you can use Apptimize even though you may wish
@@ -1491,6 +2608,226 @@ class ApptimizeMetaDataState {
       this.isAvailable, this.isUpToDate, this.isRefreshing);
 }
 
+/// When each phase of Apptimize startup was reached.
+///
+/// Phases which have not been reached yet are `null`. See
+/// [Apptimize.startupTiming].
+class ApptimizeStartupTiming {
+  /// When [Apptimize.startApptimize] was first called.
+  final DateTime? setupRequested;
+
+  /// When Apptimize setup started running.
+  final DateTime? setupStarted;
+
+  /// When Apptimize setup returned.
+  final DateTime? setupCompleted;
+
+  /// When Apptimize sent the first [ApptimizeInitializedEvent].
+  final DateTime? initialized;
+
+  /// When Apptimize sent the first [ApptimizeTestsProcessedEvent].
+  final DateTime? experimentsProcessed;
+
+  /// When the metadata was first reported as up to date.
+  final DateTime? metadataUpToDate;
+
+  const ApptimizeStartupTiming(
+      this.setupRequested,
+      this.setupStarted,
+      this.setupCompleted,
+      this.initialized,
+      this.experimentsProcessed,
+      this.metadataUpToDate);
+
+  /// The time from [setupRequested] until Apptimize was initialized.
+  Duration? get timeToInitialized => _sinceSetupRequested(initialized);
+
+  /// The time from [setupRequested] until experiments were first processed.
+  Duration? get timeToExperimentsProcessed =>
+      _sinceSetupRequested(experimentsProcessed);
+
+  /// The time from [setupRequested] until the metadata was up to date.
+  Duration? get timeToMetadataUpToDate =>
+      _sinceSetupRequested(metadataUpToDate);
+
+  Duration? _sinceSetupRequested(DateTime? phase) {
+    final requested = setupRequested;
+    return requested != null && phase != null
+        ? phase.difference(requested)
+        : null;
+  }
+
+  static ApptimizeStartupTiming _fromMap(Map<dynamic, dynamic> map) {
+    DateTime? phase(String name) {
+      final int? millis = map[name];
+      return millis != null
+          ? new DateTime.fromMillisecondsSinceEpoch(millis, isUtc: true)
+          : null;
+    }
+
+    return new ApptimizeStartupTiming(
+        phase('setupRequested'),
+        phase('setupStarted'),
+        phase('setupCompleted'),
+        phase('initialized'),
+        phase('experimentsProcessed'),
+        phase('metadataUpToDate'));
+  }
+}
+
+/// Statistics about the delivery of Apptimize events to Dart.
+///
+/// Events fired by the native SDK are queued and delivered to Dart once per
+/// frame. See [Apptimize.eventDispatchStats].
+class ApptimizeEventDispatchStats {
+  /// The number of events delivered to Dart.
+  final int dispatched;
+
+  /// The number of events which were merged into a newer event of the same
+  /// kind before they were delivered, such as repeated metadata state changes.
+  final int coalesced;
+
+  /// The number of events which were dropped because too many events were
+  /// waiting to be delivered.
+  final int dropped;
+
+  /// The number of batched messages used to deliver several events at once.
+  final int batches;
+
+  /// The number of events which were not sent because no stream was listened
+  /// to for them.
+  final int unsubscribed;
+
+  /// The number of events currently waiting to be delivered.
+  final int queued;
+
+  /// The number of participations which were not sent because of
+  /// [ApptimizeOptions.participationPolicy].
+  final int filteredParticipations;
+
+  const ApptimizeEventDispatchStats(this.dispatched, this.coalesced,
+      this.dropped, this.batches, this.unsubscribed, this.queued,
+      [this.filteredParticipations = 0]);
+
+  static ApptimizeEventDispatchStats _fromMap(Map<dynamic, dynamic> map) {
+    return new ApptimizeEventDispatchStats(
+        map['dispatched'] ?? 0,
+        map['coalesced'] ?? 0,
+        map['dropped'] ?? 0,
+        map['batches'] ?? 0,
+        map['unsubscribed'] ?? 0,
+        map['queued'] ?? 0,
+        map['filteredParticipations'] ?? 0);
+  }
+}
+
+/// Counters the plugin keeps about its own method calls and events. See
+/// [Apptimize.pluginMetrics].
+class ApptimizePluginMetrics {
+  /// The metrics of each method called on the plugin, by method name. Calls
+  /// of methods the plugin does not implement are counted under `unknown`.
+  final Map<String, ApptimizeMethodMetrics> methods;
+
+  /// The metrics of each event sent by the plugin, by event name.
+  ///
+  /// Several events delivered together are counted as a message of the
+  /// `ApptimizeEventBatch` event.
+  final Map<String, ApptimizeEventMetrics> events;
+
+  /// Statistics about the delivery of events to Dart.
+  final ApptimizeEventDispatchStats? eventDispatch;
+
+  const ApptimizePluginMetrics(this.methods, this.events, this.eventDispatch);
+
+  static ApptimizePluginMetrics _fromMap(Map<dynamic, dynamic> map) {
+    final Map methods = map['methods'] ?? {};
+    final Map events = map['events'] ?? {};
+    final Map? eventDispatch = map['eventDispatch'];
+    return new ApptimizePluginMetrics(
+        methods.map((name, metrics) => new MapEntry(
+            name as String, ApptimizeMethodMetrics._fromMap(metrics))),
+        events.map((name, metrics) => new MapEntry(
+            name as String, ApptimizeEventMetrics._fromMap(metrics))),
+        eventDispatch != null
+            ? ApptimizeEventDispatchStats._fromMap(eventDispatch)
+            : null);
+  }
+}
+
+/// Metrics of calls to a single plugin method.
+class ApptimizeMethodMetrics {
+  /// The number of times the method was called.
+  final int calls;
+
+  /// The total time spent handling the method, in microseconds.
+  final int totalMicros;
+
+  /// The number of calls which failed, by error code such as
+  /// `INVALID_ARGUMENT`, `ARGUMENT_MISSING` or `UNKNOWN`.
+  final Map<String, int> errors;
+
+  /// A histogram of the time spent handling each call. Bucket `i` counts the
+  /// calls which took less than 2^`i` microseconds and more than the previous
+  /// bucket, and the last bucket also counts every slower call.
+  final List<int> latencyBuckets;
+
+  const ApptimizeMethodMetrics(
+      this.calls, this.totalMicros, this.errors, this.latencyBuckets);
+
+  /// The average time spent handling a call.
+  Duration get averageLatency =>
+      new Duration(microseconds: calls > 0 ? totalMicros ~/ calls : 0);
+
+  /// An upper bound of the time within which [percentile] percent of the
+  /// calls were handled, as precise as the [latencyBuckets] allow.
+  Duration latencyPercentile(double percentile) {
+    final int target = (calls * percentile / 100).ceil();
+    int count = 0;
+    for (int i = 0; i < latencyBuckets.length; i++) {
+      count += latencyBuckets[i];
+      if (count >= target) {
+        return new Duration(microseconds: 1 << i);
+      }
+    }
+    return new Duration(microseconds: 1 << latencyBuckets.length);
+  }
+
+  static ApptimizeMethodMetrics _fromMap(Map<dynamic, dynamic> map) {
+    final Map errors = map['errors'] ?? {};
+    final List latencyBuckets = map['latencyBuckets'] ?? [];
+    return new ApptimizeMethodMetrics(
+        map['calls'] ?? 0,
+        map['totalMicros'] ?? 0,
+        errors.map((code, count) => new MapEntry(code as String, count as int)),
+        latencyBuckets.cast<int>());
+  }
+}
+
+/// Metrics of a single event sent by the plugin.
+class ApptimizeEventMetrics {
+  /// The number of times the native SDK emitted the event.
+  final int emitted;
+
+  /// The number of messages which carried the event to Dart.
+  final int messages;
+
+  /// The number of engines the messages were sent to, summed over all
+  /// messages.
+  final int engines;
+
+  /// The encoded size of the messages, summed over every engine they were
+  /// sent to.
+  final int payloadBytes;
+
+  const ApptimizeEventMetrics(
+      this.emitted, this.messages, this.engines, this.payloadBytes);
+
+  static ApptimizeEventMetrics _fromMap(Map<dynamic, dynamic> map) {
+    return new ApptimizeEventMetrics(map['emitted'] ?? 0,
+        map['messages'] ?? 0, map['engines'] ?? 0, map['payloadBytes'] ?? 0);
+  }
+}
+
 /// Base class for information about a single winning A/B test or instant update
 /// this device will display.
 ///
@@ -1527,9 +2864,7 @@ class ApptimizeInstantUpdateOrWinnerInfo {
     final int? instantUpdateId = map['instantUpdateId'];
     final String? winningVariantName = map['winningVariantName'];
     final int? winningVariantId = map['winningVariantId'];
-    final String? startDateRaw = map['startDate'];
-    final DateTime? startDate =
-        startDateRaw != null ? DateTime.parse(startDateRaw) : null;
+    final DateTime? startDate = Apptimize._parseDate(map['startDate']);
     final String? userId = map['userId'];
     final String? anonymousUserId = map['anonymousUserId'];
 
@@ -1725,6 +3060,21 @@ enum ApptimizeServerRegion {
   EUCS
 }
 
+/// This enumerated type is used to specify which participations are sent to
+/// [Apptimize.apptimizeParticipatedInExperimentStream].
+enum ApptimizeParticipationPolicy {
+  /// Send every participation. This is the default option.
+  All,
+
+  /// Send only the first participation in each test since the app started or
+  /// the user's enrollment in the test changed.
+  First,
+
+  /// Send at most one participation in each test per
+  /// [ApptimizeOptions.participationWindow].
+  Windowed
+}
+
 extension _ApptimizeEnumSerialization on String? {
   ApptimizeUnenrollmentReason parseApptimizeUnenrollmentReason() {
     return ApptimizeUnenrollmentReason.values.firstWhere(
@@ -1741,6 +3091,498 @@ extension _ApptimizeEnumSerialization on String? {
   }
 }
 
+/// Buffers [Apptimize.track] calls and sends them to the native SDK in bulk
+/// through `trackBatch`.
+class _ApptimizeTrackBuffer extends WidgetsBindingObserver {
+  final int maxEvents;
+  final Duration maxDelay;
+
+  final List<String> _names = [];
+  final Map<String, int> _nameIndexes = {};
+  final List<int> _eventNameIndexes = [];
+  final List<double> _values = [];
+  Completer<void>? _pendingFlush;
+  Future<void> _lastFlush = new Future.value();
+  Timer? _timer;
+
+  _ApptimizeTrackBuffer(this.maxEvents, this.maxDelay) {
+    WidgetsBinding.instance?.addObserver(this);
+  }
+
+  Future<void> add(String eventName, double? value) {
+    final nameIndex = _nameIndexes.putIfAbsent(eventName, () {
+      _names.add(eventName);
+      return _names.length - 1;
+    });
+    _eventNameIndexes.add(nameIndex);
+    // NaN marks events without a value.
+    _values.add(value ?? double.nan);
+
+    final pendingFlush = _pendingFlush ??= new Completer<void>();
+    if (_eventNameIndexes.length >= maxEvents) {
+      flush();
+    } else {
+      _timer ??= new Timer(maxDelay, flush);
+    }
+    return pendingFlush.future;
+  }
+
+  Future<void> flush() {
+    _timer?.cancel();
+    _timer = null;
+
+    final pendingFlush = _pendingFlush;
+    if (pendingFlush == null) {
+      return _lastFlush;
+    }
+    _pendingFlush = null;
+
+    final names = new List<String>.from(_names);
+    final nameIndexes = new Int32List.fromList(_eventNameIndexes);
+    final values = new Float64List.fromList(_values);
+    _names.clear();
+    _nameIndexes.clear();
+    _eventNameIndexes.clear();
+    _values.clear();
+
+    _lastFlush = _send(names, nameIndexes, values);
+    pendingFlush.complete(_lastFlush);
+    return _lastFlush;
+  }
+
+  Future<void> close() {
+    WidgetsBinding.instance?.removeObserver(this);
+    return flush();
+  }
+
+  @override
+  void didChangeAppLifecycleState(AppLifecycleState state) {
+    if (state != AppLifecycleState.resumed) {
+      flush();
+    }
+  }
+
+  static bool _isTrackBatchSupported = true;
+
+  static Future<void> _send(
+      List<String> names, Int32List nameIndexes, Float64List values) async {
+    if (_isTrackBatchSupported) {
+      try {
+        await Apptimize._channel.invokeMethod('trackBatch',
+            {'names': names, 'nameIndexes': nameIndexes, 'values': values});
+        return;
+      } on MissingPluginException {
+        _isTrackBatchSupported = false;
+      }
+    }
+
+    // Platforms without `trackBatch` track each event separately.
+    for (var i = 0; i < nameIndexes.length; i++) {
+      final value = values[i];
+      await Apptimize._channel.invokeMethod('track', {
+        "eventName": names[nameIndexes[i]],
+        "value": value.isNaN ? null : value
+      });
+    }
+  }
+}
+
+/// A read-only [List] view of the bools of a bitset sent by the Android
+/// plugin. The first byte holds the number of unused bits in the last byte,
+/// the following bytes hold the bools from their least significant bit.
+class _ApptimizeBitList extends ListBase<bool> {
+  final Uint8List _bits;
+
+  _ApptimizeBitList(this._bits);
+
+  @override
+  int get length => _bits.isEmpty ? 0 : (_bits.length - 1) * 8 - _bits[0];
+
+  @override
+  set length(int newLength) {
+    throw new UnsupportedError('Cannot change the length of a read-only list');
+  }
+
+  @override
+  bool operator [](int index) {
+    RangeError.checkValidIndex(index, this);
+    return (_bits[1 + (index >> 3)] & (1 << (index & 7))) != 0;
+  }
+
+  @override
+  void operator []=(int index, bool value) {
+    throw new UnsupportedError('Cannot modify a read-only list');
+  }
+}
+
+/// A read-only [Map] view of a dictionary sent by the Android plugin as a list
+/// of keys and a list of values. Keys are only indexed once looked up.
+class _ApptimizeColumnarMap<T> extends UnmodifiableMapBase<String, T> {
+  final List<String> _keys;
+  final List<T> _values;
+  Map<String, int>? _indexes;
+
+  _ApptimizeColumnarMap(this._keys, this._values);
+
+  @override
+  Iterable<String> get keys => _keys;
+
+  @override
+  Iterable<T> get values => _values;
+
+  @override
+  int get length => _keys.length;
+
+  @override
+  bool containsKey(Object? key) => _index().containsKey(key);
+
+  @override
+  T? operator [](Object? key) {
+    final index = _index()[key];
+    return index != null ? _values[index] : null;
+  }
+
+  @override
+  void forEach(void action(String key, T value)) {
+    for (var i = 0; i < _keys.length; i++) {
+      action(_keys[i], _values[i]);
+    }
+  }
+
+  Map<String, int> _index() {
+    return _indexes ??= {
+      for (var i = 0; i < _keys.length; i++) _keys[i]: i,
+    };
+  }
+}
+
+/// Reads dynamic variable values, feature flags and user attributes through
+/// the Android plugin's binary fast path channel, skipping the method
+/// channel's codec.
+///
+/// Requests are an opcode followed by little-endian operands, and replies a
+/// tag followed by the value. Feature flag and user attribute names are
+/// registered once through the method channel in exchange for a handle.
+/// [unsupported] is returned whenever a read has to go through the method
+/// channel instead, such as for list and map values, on errors or on
+/// platforms without the fast path.
+class _ApptimizeFastPath {
+  static const int _opGetDynamicVariableValue = 1;
+  static const int _opIsFeatureFlagOn = 2;
+  static const int _opGetUserAttribute = 3;
+
+  static const Map<String, int> _attributeTypes = {
+    'string': 0,
+    'int': 1,
+    'double': 2,
+    'bool': 3
+  };
+
+  static const int _tagNull = 0;
+  static const int _tagFalse = 1;
+  static const int _tagTrue = 2;
+  static const int _tagInt = 3;
+  static const int _tagDouble = 4;
+  static const int _tagString = 5;
+
+  static final Object unsupported = new Object();
+
+  static const BasicMessageChannel<ByteData> _channel =
+      const BasicMessageChannel<ByteData>(
+          'apptimize_flutter/fast_path', const BinaryCodec());
+
+  static bool _isAvailable = true;
+  static final Map<String, int> _nameHandles = {};
+
+  static Future<Object?> getDynamicVariableValue(int handle) async {
+    if (!_isAvailable) {
+      return unsupported;
+    }
+
+    final request = new ByteData(5)
+      ..setUint8(0, _opGetDynamicVariableValue)
+      ..setInt32(1, handle, Endian.little);
+    return await _send(request);
+  }
+
+  static Future<Object?> isFeatureFlagOn(String featureFlagName) async {
+    final nameHandle = await _nameHandle(featureFlagName);
+    if (nameHandle == null) {
+      return unsupported;
+    }
+
+    final request = new ByteData(5)
+      ..setUint8(0, _opIsFeatureFlagOn)
+      ..setInt32(1, nameHandle, Endian.little);
+    return await _send(request);
+  }
+
+  static Future<Object?> getUserAttribute(
+      String type, String attributeName) async {
+    final attributeType = _attributeTypes[type];
+    final nameHandle =
+        attributeType != null ? await _nameHandle(attributeName) : null;
+    if (attributeType == null || nameHandle == null) {
+      return unsupported;
+    }
+
+    final request = new ByteData(6)
+      ..setUint8(0, _opGetUserAttribute)
+      ..setUint8(1, attributeType)
+      ..setInt32(2, nameHandle, Endian.little);
+    return await _send(request);
+  }
+
+  static Future<int?> _nameHandle(String name) async {
+    if (!_isAvailable) {
+      return null;
+    }
+
+    final handle = _nameHandles[name];
+    if (handle != null) {
+      return handle;
+    }
+
+    try {
+      final response = await Apptimize._channel
+          .invokeMethod('registerFastPathName', {'name': name});
+      if (response is int) {
+        return _nameHandles[name] = response;
+      }
+    } on MissingPluginException {
+      // Only the Android plugin has the fast path.
+    }
+    _isAvailable = false;
+    return null;
+  }
+
+  static Future<Object?> _send(ByteData request) async {
+    final reply = await _channel.send(request);
+    if (reply == null) {
+      // Nothing handles the channel on this platform.
+      _isAvailable = false;
+      return unsupported;
+    }
+
+    switch (reply.getUint8(0)) {
+      case _tagNull:
+        return null;
+      case _tagFalse:
+        return false;
+      case _tagTrue:
+        return true;
+      case _tagInt:
+        return reply.getInt64(1, Endian.little);
+      case _tagDouble:
+        return reply.getFloat64(1, Endian.little);
+      case _tagString:
+        final length = reply.getUint32(1, Endian.little);
+        return utf8.decode(
+            reply.buffer.asUint8List(reply.offsetInBytes + 5, length));
+      default:
+        return unsupported;
+    }
+  }
+}
+
+/// Reads bulk snapshots sent by the Android plugin in its compact binary
+/// format.
+///
+/// Records are returned as maps with the same keys as the map based format,
+/// except that dates are [DateTime] values, so both formats share the same
+/// `_fromMap` validation.
+class _ApptimizeSnapshotReader {
+  static const int _version = 1;
+
+  static const int kindTestInfo = 1;
+  static const int kindWinnerInfo = 2;
+  static const int kindVariants = 3;
+
+  static const int _string = 0;
+  static const int _integer = 1;
+  static const int _date = 2;
+  static const int _bool = 3;
+
+  /// Field names and types of each kind, indexed by field id.
+  static const Map<int, List<String>> _fieldNames = {
+    kindTestInfo: [
+      '',
+      'testName',
+      'enrolledVariantName',
+      'testId',
+      'enrolledVariantId',
+      'testStartedDate',
+      'testEnrolledDate',
+      'cycle',
+      'currentPhase',
+      'participationPhase',
+      'userHasParticipated',
+      'userId',
+      'anonymousUserId',
+      'experimentType'
+    ],
+    kindWinnerInfo: [
+      '',
+      'isInstantUpdate',
+      'winningExperimentName',
+      'winningExperimentId',
+      'instantUpdateName',
+      'instantUpdateId',
+      'winningVariantName',
+      'winningVariantId',
+      'startDate',
+      'userId',
+      'anonymousUserId'
+    ],
+    kindVariants: [
+      '',
+      'experimentName',
+      'experimentId',
+      'variantName',
+      'variantId'
+    ]
+  };
+  static const Map<int, List<int>> _fieldTypes = {
+    kindTestInfo: [
+      -1,
+      _string,
+      _string,
+      _integer,
+      _integer,
+      _date,
+      _date,
+      _integer,
+      _integer,
+      _integer,
+      _bool,
+      _string,
+      _string,
+      _string
+    ],
+    kindWinnerInfo: [
+      -1,
+      _bool,
+      _string,
+      _integer,
+      _string,
+      _integer,
+      _string,
+      _integer,
+      _date,
+      _string,
+      _string
+    ],
+    kindVariants: [-1, _string, _integer, _string, _integer]
+  };
+
+  final Uint8List _bytes;
+  int _offset = 0;
+
+  _ApptimizeSnapshotReader(this._bytes);
+
+  /// Reads a snapshot of [kind] whose records are keyed by name.
+  static Map<String, Map<String, dynamic>>? readKeyed(
+      Uint8List bytes, int kind) {
+    final records = <String, Map<String, dynamic>>{};
+    final reader = new _ApptimizeSnapshotReader(bytes);
+    final isRead = reader._read(kind, (strings) {
+      final key = strings[reader._readVarint()];
+      records[key] = reader._readRecord(kind, strings);
+    });
+    return isRead ? records : null;
+  }
+
+  /// Reads a snapshot of [kind] whose records are a list.
+  static List<Map<String, dynamic>>? readList(Uint8List bytes, int kind) {
+    final records = <Map<String, dynamic>>[];
+    final reader = new _ApptimizeSnapshotReader(bytes);
+    final isRead = reader._read(kind, (strings) {
+      records.add(reader._readRecord(kind, strings));
+    });
+    return isRead ? records : null;
+  }
+
+  bool _read(int kind, void readRecord(List<String> strings)) {
+    try {
+      final version = _bytes[_offset++];
+      final actualKind = _bytes[_offset++];
+      if (version != _version || actualKind != kind) {
+        developer.log(
+            "Unsupported snapshot version $version or kind $actualKind",
+            name: Apptimize._logTag);
+        return false;
+      }
+
+      final strings = new List<String>.generate(_readVarint(), (_) {
+        final length = _readVarint();
+        final string = utf8.decode(
+            new Uint8List.view(
+                _bytes.buffer, _bytes.offsetInBytes + _offset, length));
+        _offset += length;
+        return string;
+      });
+
+      final count = _readVarint();
+      for (var i = 0; i < count; i++) {
+        readRecord(strings);
+      }
+      return true;
+    } on RangeError {
+      developer.log("Truncated snapshot", name: Apptimize._logTag);
+      return false;
+    }
+  }
+
+  Map<String, dynamic> _readRecord(int kind, List<String> strings) {
+    final names = _fieldNames[kind]!;
+    final types = _fieldTypes[kind]!;
+    final record = new Map<String, dynamic>();
+
+    for (var field = _bytes[_offset++];
+        field != 0;
+        field = _bytes[_offset++]) {
+      if (field >= types.length) {
+        throw new RangeError.index(field, types, "field");
+      }
+      switch (types[field]) {
+        case _string:
+          record[names[field]] = strings[_readVarint()];
+          break;
+        case _integer:
+          record[names[field]] = _readZigzag();
+          break;
+        case _date:
+          record[names[field]] = new DateTime.fromMillisecondsSinceEpoch(
+              _readZigzag(),
+              isUtc: true);
+          break;
+        case _bool:
+          record[names[field]] = _bytes[_offset++] != 0;
+          break;
+      }
+    }
+    return record;
+  }
+
+  int _readZigzag() {
+    final value = _readVarint();
+    return (value >> 1) ^ -(value & 1);
+  }
+
+  int _readVarint() {
+    var result = 0;
+    var shift = 0;
+    while (true) {
+      final byte = _bytes[_offset++];
+      result |= (byte & 0x7f) << shift;
+      if ((byte & 0x80) == 0) {
+        return result;
+      }
+      shift += 7;
+    }
+  }
+}
+
 // Callback definitions
 
 /// Base class for all Apptimize events.
@@ -1809,3 +3651,23 @@ class ApptimizeMetadataStateChangedEvent extends ApptimizeEvent {
   final ApptimizeMetaDataState metaDataState;
   ApptimizeMetadataStateChangedEvent(this.metaDataState);
 }
+
+/// An event sent when a phase of Apptimize startup is reached.
+///
+/// See [ApptimizeStartupTiming] for the timestamps in [timing].
+class ApptimizeStartupTimingEvent extends ApptimizeEvent {
+  final ApptimizeStartupTiming timing;
+  ApptimizeStartupTimingEvent(this.timing);
+}
+
+/// An event sent when the live values of feature flags or dynamic variables
+/// which were read from the values persisted by the previous launch differ
+/// from them.
+///
+/// Reading the flags and variables again returns their live values.
+class ApptimizePersistedValuesChangedEvent extends ApptimizeEvent {
+  final List<String> featureFlagNames;
+  final List<String> dynamicVariableNames;
+  ApptimizePersistedValuesChangedEvent(
+      this.featureFlagNames, this.dynamicVariableNames);
+}
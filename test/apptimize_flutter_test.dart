@@ -1,3 +1,5 @@
+import 'dart:typed_data';
+
 import 'package:flutter/services.dart';
 import 'package:flutter_test/flutter_test.dart';
 import 'package:apptimize_flutter/apptimize_flutter.dart';
@@ -20,4 +22,170 @@ void main() {
   test('getLibraryVersion', () async {
     expect(await Apptimize.libraryVersion, '42');
   });
+
+  test('ApptimizeBatch', () async {
+    channel.setMockMethodCallHandler((MethodCall methodCall) async {
+      expect(methodCall.method, 'executeBatch');
+      final List calls = methodCall.arguments['calls'];
+      expect(calls.map((c) => c['method']),
+          ['isFeatureFlagOn', 'declareDynamicVariable', 'track']);
+      return [
+        {'result': true},
+        {'result': true},
+        {'error': 'ARGUMENT_MISSING', 'message': 'eventName'}
+      ];
+    });
+
+    final batch = ApptimizeBatch();
+    final isOn = batch.isFeatureFlagOn('flag');
+    final variable = batch.declareString('name', 'default');
+    final track = batch.track('event');
+    await batch.commit();
+
+    expect(await isOn, true);
+    expect((await variable)?.name, 'name');
+    expect(track, throwsA(isA<PlatformException>()));
+  });
+
+  test('getVariants compact snapshot', () async {
+    channel.setMockMethodCallHandler((MethodCall methodCall) async {
+      expect(methodCall.arguments['format'], 'compact');
+      return Uint8List.fromList([
+        1, 3, // version, kind
+        2, 3, 0x65, 0x78, 0x70, 1, 0x76, // strings "exp", "v"
+        1, // record count
+        1, 0, 2, 14, 3, 1, 4, 18, 0 // experiment 7 "exp", variant 9 "v"
+      ]);
+    });
+
+    final variants = await Apptimize.getVariants();
+    expect(variants.keys, [9]);
+    expect(variants[9]?.experimentName, 'exp');
+    expect(variants[9]?.experimentId, 7);
+    expect(variants[9]?.variantName, 'v');
+  });
+
+  test('compact and map snapshot dates agree', () async {
+    dynamic response = {
+      'k': {
+        'isInstantUpdate': true,
+        'instantUpdateName': 'iu',
+        'instantUpdateId': 5,
+        'startDate': '2024-03-05T10:42Z',
+        'anonymousUserId': 'a'
+      }
+    };
+    channel.setMockMethodCallHandler((MethodCall methodCall) async {
+      return response;
+    });
+    final fromMap = await Apptimize.instantUpdateAndWinnerInfo;
+
+    response = Uint8List.fromList([
+      1, 2, // version, kind
+      3, 1, 0x6b, 2, 0x69, 0x75, 1, 0x61, // strings "k", "iu", "a"
+      1, // record count
+      0, // key "k"
+      1, 1, 4, 1, 5, 10, 10, 2, // instant update 5 "iu", anonymous user "a"
+      8, 0x80, 0xe3, 0xa5, 0xe3, 0xc1, 0x63, 0 // 2024-03-05T10:42Z in millis
+    ]);
+    final fromCompact = await Apptimize.instantUpdateAndWinnerInfo;
+
+    expect(fromMap?['k']?.startDate, DateTime.utc(2024, 3, 5, 10, 42));
+    expect(fromCompact?['k']?.startDate, fromMap?['k']?.startDate);
+    expect(fromCompact?['k']?.anonymousUserId, 'a');
+  });
+
+  test('fast path reads', () async {
+    const fastPath = BasicMessageChannel<ByteData>(
+        'apptimize_flutter/fast_path', BinaryCodec());
+    channel.setMockMethodCallHandler((MethodCall methodCall) async {
+      expect(methodCall.method, 'registerFastPathName');
+      return methodCall.arguments['name'] == 'flag' ? 3 : 4;
+    });
+    fastPath.setMockMessageHandler((ByteData? request) async {
+      final bytes = request!.buffer
+          .asUint8List(request.offsetInBytes, request.lengthInBytes);
+      if (bytes[0] == 2) {
+        expect(bytes, [2, 3, 0, 0, 0]); // isFeatureFlagOn, name handle 3
+        return ByteData.sublistView(Uint8List.fromList([2])); // true
+      }
+      expect(bytes, [3, 0, 4, 0, 0, 0]); // getUserAttribute, string, 4
+      return ByteData.sublistView(
+          Uint8List.fromList([5, 2, 0, 0, 0, 0x68, 0x69])); // "hi"
+    });
+
+    expect(await Apptimize.isFeatureFlagOn('flag'), true);
+    expect(await Apptimize.getUserAttributeString('attribute'), 'hi');
+    fastPath.setMockMessageHandler(null);
+  });
+
+  test('manifest dynamic variables', () async {
+    final methods = <String>[];
+    channel.setMockMethodCallHandler((MethodCall methodCall) async {
+      methods.add(methodCall.method);
+      if (methods.length == 1) {
+        throw PlatformException(code: 'UNKNOWN');
+      }
+      return {
+        'handles': {
+          'string': {'color': 5}
+        },
+        'defaultValues': {
+          'string': {'color': 'blue'}
+        }
+      };
+    });
+
+    await expectLater(ApptimizeVariable.getString('color'),
+        throwsA(isA<PlatformException>()));
+    expect(await ApptimizeVariable.getString('color'), isNotNull);
+    expect(await ApptimizeVariable.declareString('color', 'red'), isNotNull);
+    expect(await ApptimizeVariable.getInteger('color'), isNull);
+    expect(methods, [
+      'getManifestDynamicVariables',
+      'getManifestDynamicVariables',
+      'isDynamicVariableDeclared'
+    ]);
+  });
+
+  test('typed data dynamic variable values', () async {
+    channel.setMockMethodCallHandler((MethodCall methodCall) async {
+      const names = ['ints', 'bools', 'doubles'];
+      if (methodCall.method == 'getManifestDynamicVariables') {
+        return null;
+      }
+      if (methodCall.method == 'declareDynamicVariable') {
+        return names.indexOf(methodCall.arguments['name']);
+      }
+      switch (names[methodCall.arguments['handle']]) {
+        case 'ints':
+          return Int32List.fromList([1, 2, 3]);
+        case 'bools':
+          return Uint8List.fromList([6, 0x01]); // 6 unused bits, then 1 0
+        default:
+          return [
+            ['a', 'b'],
+            Float64List.fromList([0.5, 1.5])
+          ];
+      }
+    });
+
+    final ints = await ApptimizeVariable.declareIntegerArray('ints', []);
+    final bools = await ApptimizeVariable.declareBoolArray('bools', []);
+    final doubles =
+        await ApptimizeVariable.declareDoubleDictionary('doubles', {});
+
+    expect(await ints!.value, [1, 2, 3]);
+    expect(await bools!.value, [true, false]);
+    expect(await doubles!.value, {'a': 0.5, 'b': 1.5});
+  });
+
+  test('participation policy options', () {
+    final options = ApptimizeOptions()
+      ..participationPolicy = ApptimizeParticipationPolicy.Windowed
+      ..participationWindow = 250;
+
+    expect(options.toMap(),
+        {'participationPolicy': 'Windowed', 'participationWindow': 250});
+  });
 }